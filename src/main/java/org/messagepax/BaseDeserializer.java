@@ -1,5 +1,7 @@
 package org.messagepax;
 
+import java.io.IOException;
+
 /**
  * Base class of deserializers provides NIL and basic INTEGER decoding. It works
  * on an internal buffer (simple byte array) and provides a simple stream based
@@ -30,17 +32,33 @@ public class BaseDeserializer {
 	 * position forward to the next byte.
 	 * 
 	 * @return Read byte
+	 * @throws IOException
+	 *             If the data could not be read
 	 */
-	protected int readByte() {
+	protected int readByte() throws IOException {
 		return b[pos++] & 0xff;
 	}
 
+	/**
+	 * Returns one unsigned byte from the actual position without moving
+	 * position forward.
+	 * 
+	 * @return Next byte
+	 * @throws IOException
+	 *             If the data could not be read
+	 */
+	protected int peekByte() throws IOException {
+		return b[pos] & 0xff;
+	}
+
 	/**
 	 * Reads two bytes and interprets them as 16 bit signed integer.
 	 * 
 	 * @return Signed integer (16bit)
+	 * @throws IOException
+	 *             If the data could not be read
 	 */
-	protected int readInt16() {
+	protected int readInt16() throws IOException {
 		int ret = 0;
 		ret |= b[pos++] << 8;
 		ret |= (b[pos++] & 0xff);
@@ -51,8 +69,10 @@ public class BaseDeserializer {
 	 * Reads four bytes and interprets them as 32 bit signed integer.
 	 * 
 	 * @return Signed integer (32bit)
+	 * @throws IOException
+	 *             If the data could not be read
 	 */
-	protected int readInt32() {
+	protected int readInt32() throws IOException {
 		int ret = 0;
 		ret |= b[pos++] << 24;
 		ret |= (b[pos++] & 0xff) << 16;
@@ -65,8 +85,10 @@ public class BaseDeserializer {
 	 * Reads eight bytes and interprets them as 64 bit signed integer.
 	 * 
 	 * @return Signed integer (64bit)
+	 * @throws IOException
+	 *             If the data could not be read
 	 */
-	protected long readInt64() {
+	protected long readInt64() throws IOException {
 		long ret = 0;
 		ret |= (long) b[pos++] << 56;
 		ret |= ((long) b[pos++] & 0xff) << 48;
@@ -79,6 +101,40 @@ public class BaseDeserializer {
 		return ret;
 	}
 
+	/**
+	 * Copies bytes from the actual position into the given array and moves
+	 * position forward behind them.
+	 * 
+	 * @param dst
+	 *            Destination array
+	 * @param off
+	 *            Offset in destination array
+	 * @param len
+	 *            Number of bytes to copy
+	 * @throws IOException
+	 *             If the data could not be read
+	 */
+	protected void readBytes(byte[] dst, int off, int len) throws IOException {
+		System.arraycopy(b, pos, dst, off, len);
+		pos += len;
+	}
+
+	/**
+	 * Moves position forward over the given number of bytes without reading
+	 * them.
+	 * 
+	 * @param len
+	 *            Number of bytes to skip
+	 * @throws IOException
+	 *             If the data could not be read
+	 */
+	protected void skipBytes(int len) throws IOException {
+		if (len > b.length - pos) {
+			throw new ArrayIndexOutOfBoundsException(pos + len);
+		}
+		pos += len;
+	}
+
 	/**
 	 * Returns true if given byte is NIL (0xC0). NIL is used for null object
 	 * values.
@@ -1,5 +1,7 @@
 package org.messagepax;
 
+import java.io.IOException;
+
 /**
  * Base serializer class provides basic integer encoding providing some stream
  * based API on a simple byte array.
@@ -32,6 +34,9 @@ public class BaseSerializer {
 	 *            Unsigned byte to write
 	 */
 	public void addByte(int x) {
+		if (pos == b.length) {
+			overflow(1);
+		}
 		b[pos++] = (byte) (x & 0xff);
 	}
 
@@ -42,6 +47,9 @@ public class BaseSerializer {
 	 *            Signed 16 bit Integer
 	 */
 	public void addInt16(int x) {
+		if (b.length - pos < 2) {
+			overflow(2);
+		}
 		b[pos++] = (byte) ((x >>> 8) & 0xff);
 		b[pos++] = (byte) ((x) & 0xff);
 	}
@@ -53,6 +61,9 @@ public class BaseSerializer {
 	 *            Signed 32 bit Integer
 	 */
 	public void addInt32(int x) {
+		if (b.length - pos < 4) {
+			overflow(4);
+		}
 		b[pos++] = (byte) ((x >>> 24) & 0xff);
 		b[pos++] = (byte) ((x >>> 16) & 0xff);
 		b[pos++] = (byte) ((x >>> 8) & 0xff);
@@ -66,6 +77,9 @@ public class BaseSerializer {
 	 *            Signed 64 bit Integer
 	 */
 	public void addInt64(long x) {
+		if (b.length - pos < 8) {
+			overflow(8);
+		}
 		b[pos++] = (byte) ((x >>> 56) & 0xff);
 		b[pos++] = (byte) ((x >>> 48) & 0xff);
 		b[pos++] = (byte) ((x >>> 40) & 0xff);
@@ -85,12 +99,68 @@ public class BaseSerializer {
 	 *            Offset to start copying
 	 * @param len
 	 *            Number of bytes to copy
+	 * @throws IOException
+	 *             If data could not be written
 	 */
-	protected void addBytes(byte[] buffer, int offset, int len) {
+	protected void addBytes(byte[] buffer, int offset, int len)
+			throws IOException {
+		if (b.length - pos < len) {
+			overflow(len);
+		}
 		System.arraycopy(buffer, offset, this.b, pos, len);
 		pos += len;
 	}
 
+	/**
+	 * Adds a string encoded in UTF-8 without allocating a temporary buffer.
+	 * 
+	 * @param s
+	 *            String to encode
+	 * @param len
+	 *            Number of bytes of the encoded string, see
+	 *            {@link Utils#utf8Length(CharSequence)}
+	 * @throws IOException
+	 *             If data could not be written
+	 */
+	protected void addUtf8(String s, int len) throws IOException {
+		if (b.length - pos >= len) {
+			pos = Utils.encodeUtf8(s, 0, s.length(), b, pos);
+			return;
+		}
+		// Encode in parts which fit into the buffer. A char needs up to 3
+		// bytes, surrogate pairs are never split.
+		int n = s.length();
+		int i = 0;
+		while (i < n) {
+			if (b.length - pos < 6) {
+				overflow(6);
+			}
+			int end = Math.min(n, i + (b.length - pos) / 3);
+			if (end < n && Character.isHighSurrogate(s.charAt(end - 1))) {
+				end--;
+			}
+			pos = Utils.encodeUtf8(s, i, end, b, pos);
+			i = end;
+		}
+	}
+
+	/**
+	 * Called whenever less than the required number of bytes are left in the
+	 * buffer. The default implementation works on a fixed buffer and throws an
+	 * {@link ArrayIndexOutOfBoundsException}. Subclasses can override it to
+	 * provide a new buffer or to drain the buffer into a sink, so that at least
+	 * <code>len</code> bytes are free at <code>pos</code> afterwards. Only
+	 * unchecked exceptions can be thrown, as the public add methods do not
+	 * declare any.
+	 * 
+	 * @param len
+	 *            Number of bytes which need to be written next
+	 */
+	protected void overflow(int len) {
+		throw new ArrayIndexOutOfBoundsException("Buffer too small, " + len
+				+ " bytes required at position " + pos);
+	}
+
 	/**
 	 * Resets position. This method can be used to reuse the serializer after
 	 * usage for another serialization operation.
@@ -0,0 +1,33 @@
+package org.messagepax;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a class which is serialized as MSGPACK map. The annotation processor
+ * {@link org.messagepax.processor.MessagePaxProcessor} generates a
+ * {@link MessagePaxCodec} named <code>&lt;Class&gt;MessagePaxCodec</code> in
+ * the same package at compile time.
+ * <p/>
+ * All non-static, non-transient fields are serialized with their name as
+ * key. Private fields need a getter and a setter, the class needs a
+ * constructor without arguments.
+ * 
+ * <pre>
+ * &#064;MessagePax
+ * public class Person {
+ * 	String name;
+ * 	int age;
+ * }
+ * 
+ * PersonMessagePaxCodec.INSTANCE.write(s, person);
+ * </pre>
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface MessagePax {
+}
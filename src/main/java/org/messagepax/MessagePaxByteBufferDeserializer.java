@@ -0,0 +1,244 @@
+package org.messagepax;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Deserializer reading directly from a {@link ByteBuffer}. Heap and direct
+ * (off-heap) buffers are supported, so data received from a NIO channel can
+ * be decoded in place without copying it into a byte array first.
+ * <p/>
+ * Reading starts at the actual position of the given buffer. The position of
+ * the given buffer is not changed.
+ */
+public class MessagePaxByteBufferDeserializer extends MessagePaxDeserializer {
+
+	/** Source buffer, big endian view of the given buffer */
+	protected ByteBuffer buf;
+
+	/**
+	 * Creates a deserializer reading from the given buffer.
+	 * 
+	 * @param buffer
+	 *            Buffer containing serialized data, heap or direct
+	 */
+	public MessagePaxByteBufferDeserializer(ByteBuffer buffer) {
+		// The byte array of the base class is left empty. All read
+		// operations are redirected to the byte buffer.
+		super(new byte[0]);
+		this.buf = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+		this.pos = buffer.position();
+	}
+
+	/**
+	 * Returns the actual read position in the buffer
+	 * 
+	 * @return Read position
+	 */
+	public int getPosition() {
+		return pos;
+	}
+
+	/**
+	 * Returns true if there are bytes left to read
+	 * 
+	 * @return true if position is before the limit of the buffer
+	 */
+	public boolean hasRemaining() {
+		return pos < buf.limit();
+	}
+
+	/**
+	 * Returns the number of bytes left to read
+	 * 
+	 * @return Number of bytes before the limit of the buffer
+	 */
+	protected long getRemaining() {
+		return buf.limit() - pos;
+	}
+
+	/**
+	 * Reads one unsigned byte from the actual position.
+	 * 
+	 * @return Read byte
+	 * @throws IOException
+	 *             If the data could not be read
+	 */
+	protected int readByte() throws IOException {
+		return buf.get(pos++) & 0xff;
+	}
+
+	/**
+	 * Returns one unsigned byte from the actual position without moving
+	 * position forward.
+	 * 
+	 * @return Next byte
+	 * @throws IOException
+	 *             If the data could not be read
+	 */
+	protected int peekByte() throws IOException {
+		return buf.get(pos) & 0xff;
+	}
+
+	/**
+	 * Reads two bytes and interprets them as 16 bit signed integer.
+	 * 
+	 * @return Signed integer (16bit)
+	 * @throws IOException
+	 *             If the data could not be read
+	 */
+	protected int readInt16() throws IOException {
+		int ret = buf.getShort(pos);
+		pos += 2;
+		return ret;
+	}
+
+	/**
+	 * Reads four bytes and interprets them as 32 bit signed integer.
+	 * 
+	 * @return Signed integer (32bit)
+	 * @throws IOException
+	 *             If the data could not be read
+	 */
+	protected int readInt32() throws IOException {
+		int ret = buf.getInt(pos);
+		pos += 4;
+		return ret;
+	}
+
+	/**
+	 * Reads eight bytes and interprets them as 64 bit signed integer.
+	 * 
+	 * @return Signed integer (64bit)
+	 * @throws IOException
+	 *             If the data could not be read
+	 */
+	protected long readInt64() throws IOException {
+		long ret = buf.getLong(pos);
+		pos += 8;
+		return ret;
+	}
+
+	/**
+	 * Copies bytes from the actual position into the given array.
+	 * 
+	 * @param dst
+	 *            Destination array
+	 * @param off
+	 *            Offset in destination array
+	 * @param len
+	 *            Number of bytes to copy
+	 * @throws IOException
+	 *             If the data could not be read
+	 */
+	protected void readBytes(byte[] dst, int off, int len) throws IOException {
+		if (buf.limit() - pos < len) {
+			throw new BufferUnderflowException();
+		}
+		if (buf.hasArray()) {
+			System.arraycopy(buf.array(), buf.arrayOffset() + pos, dst, off,
+					len);
+		} else {
+			buf.position(pos);
+			buf.get(dst, off, len);
+		}
+		pos += len;
+	}
+
+	/**
+	 * Moves position forward over the given number of bytes without reading
+	 * them.
+	 * 
+	 * @param len
+	 *            Number of bytes to skip
+	 * @throws IOException
+	 *             If the data could not be read
+	 */
+	protected void skipBytes(int len) throws IOException {
+		if (buf.limit() - pos < len) {
+			throw new BufferUnderflowException();
+		}
+		pos += len;
+	}
+
+	/**
+	 * Decodes an UTF-8 string from the actual position. Heap buffers are
+	 * decoded in place, direct buffers need a temporary copy.
+	 * 
+	 * @param len
+	 *            Number of bytes to decode
+	 * @return Decoded string
+	 * @throws IOException
+	 *             If value could not be decoded correctly
+	 */
+	protected String readUtf8(int len) throws IOException {
+		if (buf.limit() - pos < len) {
+			throw new BufferUnderflowException();
+		}
+		if (stringCache != null) {
+			String s = stringCache.get(buf, pos, len);
+			pos += len;
+			return s;
+		} else if (buf.hasArray()) {
+			String s = new String(buf.array(), buf.arrayOffset() + pos, len,
+					MessagePaxSerializer.STRING_ENCODING);
+			pos += len;
+			return s;
+		} else {
+			byte[] tmp = new byte[len];
+			readBytes(tmp, 0, len);
+			return new String(tmp, 0, len,
+					MessagePaxSerializer.STRING_ENCODING);
+		}
+	}
+
+	/**
+	 * Returns a read-only view on the given number of bytes at the actual
+	 * position.
+	 * 
+	 * @param len
+	 *            Number of bytes
+	 * @return Read-only byte buffer
+	 * @throws IOException
+	 *             If the data could not be read
+	 */
+	protected ByteBuffer readByteBuffer(int len) throws IOException {
+		if (buf.limit() - pos < len) {
+			throw new BufferUnderflowException();
+		}
+		ByteBuffer view = buf.duplicate();
+		view.limit(pos + len);
+		view.position(pos);
+		pos += len;
+		return view.slice().asReadOnlyBuffer();
+	}
+
+	/**
+	 * Sets the slice to the given number of bytes at the actual position. Heap
+	 * buffers are referenced directly, data of direct buffers is copied into
+	 * an array owned by the slice.
+	 * 
+	 * @param slice
+	 *            Slice to set
+	 * @param len
+	 *            Number of bytes
+	 * @throws IOException
+	 *             If the data could not be read
+	 */
+	protected void readSlice(MessagePaxSlice slice, int len)
+			throws IOException {
+		if (buf.limit() - pos < len) {
+			throw new BufferUnderflowException();
+		}
+		if (buf.hasArray()) {
+			slice.set(buf.array(), buf.arrayOffset() + pos, len);
+			pos += len;
+		} else {
+			byte[] own = slice.ownArray(len);
+			readBytes(own, 0, len);
+			slice.set(own, 0, len);
+		}
+	}
+}
@@ -0,0 +1,277 @@
+package org.messagepax;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Messagepack serializer writing directly into a {@link ByteBuffer}. Heap and
+ * direct (off-heap) buffers are supported, so data can be encoded in place
+ * into a buffer which is passed to a NIO channel afterwards.
+ * <p/>
+ * Writing starts at the actual position of the given buffer and ends at its
+ * limit. The position of the given buffer is not changed, use
+ * {@link #getByteBuffer()} to get a view on the serialized data.
+ * 
+ * <pre>
+ * ByteBuffer buf = ByteBuffer.allocateDirect(1024);
+ * MessagePaxByteBufferSerializer s = new MessagePaxByteBufferSerializer(buf);
+ * s.writeString(&quot;Hello World&quot;);
+ * channel.write(s.getByteBuffer());
+ * </pre>
+ */
+public class MessagePaxByteBufferSerializer extends MessagePaxSerializer {
+
+	/** Destination buffer, big endian view of the given buffer */
+	protected final ByteBuffer buf;
+
+	/** Position where writing started */
+	protected final int start;
+
+	/** Limit of the destination buffer */
+	protected final int limit;
+
+	/** Size of the scratch buffer used to encode strings */
+	private static final int SCRATCH_SIZE = 256;
+
+	/** Scratch buffer used to encode strings into direct buffers */
+	private byte[] scratch;
+
+	/** Deserializer counting the values of open lists and maps */
+	private MessagePaxByteBufferDeserializer counter;
+
+	/**
+	 * Creates a serializer writing into the given buffer.
+	 * 
+	 * @param buffer
+	 *            Destination buffer, heap or direct
+	 */
+	public MessagePaxByteBufferSerializer(ByteBuffer buffer) {
+		// The byte array of the base class is left empty. All write
+		// operations are redirected to the byte buffer.
+		super(new byte[0]);
+		this.buf = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+		this.start = buffer.position();
+		this.limit = buffer.limit();
+		this.pos = start;
+	}
+
+	/**
+	 * Throws a {@link BufferOverflowException}, the byte buffer can not grow.
+	 * 
+	 * @param len
+	 *            Number of bytes which need to be written next
+	 */
+	protected void overflow(int len) {
+		throw new BufferOverflowException();
+	}
+
+	/**
+	 * Adds an unsigned byte to actual position.
+	 * 
+	 * @param x
+	 *            Unsigned byte to write
+	 */
+	public void addByte(int x) {
+		if (pos == limit) {
+			overflow(1);
+		}
+		buf.put(pos++, (byte) x);
+	}
+
+	/**
+	 * Writes a signed 16 bit integer.
+	 * 
+	 * @param x
+	 *            Signed 16 bit Integer
+	 */
+	public void addInt16(int x) {
+		if (limit - pos < 2) {
+			overflow(2);
+		}
+		buf.putShort(pos, (short) x);
+		pos += 2;
+	}
+
+	/**
+	 * Writes a signed 32 bit integer.
+	 * 
+	 * @param x
+	 *            Signed 32 bit Integer
+	 */
+	public void addInt32(int x) {
+		if (limit - pos < 4) {
+			overflow(4);
+		}
+		buf.putInt(pos, x);
+		pos += 4;
+	}
+
+	/**
+	 * Writes a signed 64 bit integer.
+	 * 
+	 * @param x
+	 *            Signed 64 bit Integer
+	 */
+	public void addInt64(long x) {
+		if (limit - pos < 8) {
+			overflow(8);
+		}
+		buf.putLong(pos, x);
+		pos += 8;
+	}
+
+	/**
+	 * Adds bytes from given buffer starting at offset and using length.
+	 * 
+	 * @param buffer
+	 *            Source buffer
+	 * @param offset
+	 *            Offset to start copying
+	 * @param len
+	 *            Number of bytes to copy
+	 */
+	protected void addBytes(byte[] buffer, int offset, int len) {
+		if (limit - pos < len) {
+			overflow(len);
+		}
+		if (buf.hasArray()) {
+			System.arraycopy(buffer, offset, buf.array(), buf.arrayOffset()
+					+ pos, len);
+		} else {
+			buf.position(pos);
+			buf.put(buffer, offset, len);
+		}
+		pos += len;
+	}
+
+	/**
+	 * Adds a string encoded in UTF-8. Heap buffers are encoded in place, for
+	 * direct buffers a small scratch buffer is used.
+	 * 
+	 * @param s
+	 *            String to encode
+	 * @param len
+	 *            Number of bytes of the encoded string
+	 */
+	protected void addUtf8(String s, int len) {
+		if (limit - pos < len) {
+			overflow(len);
+		}
+		if (buf.hasArray()) {
+			Utils.encodeUtf8(s, 0, s.length(), buf.array(), buf.arrayOffset()
+					+ pos);
+		} else {
+			if (scratch == null) {
+				scratch = new byte[SCRATCH_SIZE];
+			}
+			buf.position(pos);
+			int n = s.length();
+			int i = 0;
+			while (i < n) {
+				int end = Math.min(n, i + SCRATCH_SIZE / 3);
+				if (end < n && Character.isHighSurrogate(s.charAt(end - 1))) {
+					end--;
+				}
+				buf.put(scratch, 0, Utils.encodeUtf8(s, i, end, scratch, 0));
+				i = end;
+			}
+		}
+		pos += len;
+	}
+
+	/**
+	 * Counts the values written into a range of the buffer.
+	 * 
+	 * @param from
+	 *            Position of the first value
+	 * @param to
+	 *            Position behind the last value
+	 * @return Number of values or -1 if the last value does not end at the
+	 *         end of the range
+	 * @throws IOException
+	 *             If the values could not be decoded
+	 */
+	protected int countValues(int from, int to) throws IOException {
+		if (counter == null) {
+			counter = new MessagePaxByteBufferDeserializer(buf);
+		}
+		return counter.countValues(from, to);
+	}
+
+	/**
+	 * Replaces a reserved header. Heap buffers get the smallest header like
+	 * all other serializers. Direct buffers keep the reserved 32 bit header
+	 * with the size filled in, which is valid but not the shortest form.
+	 * 
+	 * @param header
+	 *            Position of the reserved header
+	 * @param format
+	 *            Reserved header format, array 32 or map 32
+	 * @param count
+	 *            Number of elements or entries
+	 */
+	protected void patchHeader(int header, int format, int count) {
+		if (buf.hasArray()) {
+			int offset = buf.arrayOffset();
+			pos -= patchHeader(buf.array(), offset + header, offset + pos,
+					format, count);
+		} else {
+			buf.putInt(header + 1, count);
+		}
+	}
+
+	/**
+	 * Resets position to the position of the buffer passed in the
+	 * constructor.
+	 */
+	public void reset() {
+		super.reset();
+		pos = start;
+	}
+
+	/**
+	 * Returns number of bytes which were written into the buffer
+	 * 
+	 * @return Number of bytes which were written into the buffer
+	 */
+	public int getLength() {
+		return pos - start;
+	}
+
+	/**
+	 * Returns a copy of the serialized data. Use {@link #getByteBuffer()} to
+	 * access the data without copying.
+	 * 
+	 * @return New array containing the serialized data
+	 */
+	public byte[] getBuffer() {
+		byte[] ret = new byte[pos - start];
+		ByteBuffer view = getByteBuffer();
+		view.get(ret);
+		return ret;
+	}
+
+	/**
+	 * Returns a view on the serialized data. Position and limit of the
+	 * returned buffer mark the written bytes.
+	 * 
+	 * @return Byte buffer containing the serialized data
+	 */
+	public ByteBuffer getByteBuffer() {
+		ByteBuffer view = buf.duplicate();
+		view.limit(pos);
+		view.position(start);
+		return view;
+	}
+
+	/**
+	 * Returns the buffer as HEX string, used for unit tests.
+	 * 
+	 * @return Buffer as HEX string
+	 */
+	public String toHexString() {
+		return Utils.hex(getBuffer());
+	}
+}
@@ -0,0 +1,235 @@
+package org.messagepax;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Messagepack serializer which grows on demand. Instead of one large buffer it
+ * keeps a list of chunks. Whenever a chunk is full a new one is allocated, so
+ * already written data is never copied while growing. Only while a list or
+ * map with deferred size is open, the actual chunk grows by copying to keep
+ * the open header and its values together.
+ * <p/>
+ * The chunks can be handed over to an output sink without copying by using
+ * {@link #getChunks()} or {@link #writeTo(OutputStream)}. Use
+ * {@link #toByteArray()} only if you really need one single array.
+ * 
+ * <pre>
+ * MessagePaxChunkedSerializer s = new MessagePaxChunkedSerializer(512);
+ * s.writeString(&quot;Hello World&quot;);
+ * channel.write(s.getChunks());
+ * </pre>
+ */
+public class MessagePaxChunkedSerializer extends MessagePaxSerializer {
+
+	/** Size of newly allocated chunks */
+	private final int chunkSize;
+
+	/** First chunk, kept for reuse after reset */
+	private final byte[] first;
+
+	/** Completed chunks, the actual chunk is not part of it */
+	private byte[][] chunks = new byte[4][];
+
+	/** Number of bytes used in completed chunks */
+	private int[] lengths = new int[4];
+
+	/** Number of completed chunks */
+	private int count;
+
+	/** Number of bytes in completed chunks */
+	private int completed;
+
+	/**
+	 * Creates a growing serializer.
+	 * 
+	 * @param chunkSize
+	 *            Size of each chunk. Choose it large enough to keep a typical
+	 *            message in one chunk.
+	 */
+	public MessagePaxChunkedSerializer(int chunkSize) {
+		super(new byte[chunkSize]);
+		if (chunkSize < 16) {
+			throw new IllegalArgumentException("Chunk size too small "
+					+ chunkSize);
+		}
+		this.chunkSize = chunkSize;
+		this.first = b;
+	}
+
+	/**
+	 * Completes the actual chunk and continues with a new one.
+	 * 
+	 * @param len
+	 *            Number of bytes which need to be written next
+	 */
+	protected void overflow(int len) {
+		if (hasOpenContainers()) {
+			// keep open headers and their values in one chunk
+			growBuffer(len);
+			return;
+		}
+		if (count == chunks.length) {
+			byte[][] c = new byte[count * 2][];
+			System.arraycopy(chunks, 0, c, 0, count);
+			chunks = c;
+			int[] l = new int[count * 2];
+			System.arraycopy(lengths, 0, l, 0, count);
+			lengths = l;
+		}
+		chunks[count] = b;
+		lengths[count] = pos;
+		count++;
+		completed += pos;
+		b = new byte[Math.max(chunkSize, len)];
+		pos = 0;
+	}
+
+	/**
+	 * Adds bytes from given buffer. Large arrays are split over several chunks.
+	 * 
+	 * @param buffer
+	 *            Source buffer
+	 * @param offset
+	 *            Offset to start copying
+	 * @param len
+	 *            Number of bytes to copy
+	 */
+	protected void addBytes(byte[] buffer, int offset, int len) {
+		int free = b.length - pos;
+		while (len > free) {
+			System.arraycopy(buffer, offset, b, pos, free);
+			pos += free;
+			offset += free;
+			len -= free;
+			overflow(1);
+			free = b.length - pos;
+		}
+		System.arraycopy(buffer, offset, b, pos, len);
+		pos += len;
+	}
+
+	/**
+	 * Resets the serializer. Only the first chunk is kept, all others are
+	 * released.
+	 */
+	public void reset() {
+		super.reset();
+		for (int i = 0; i < count; i++) {
+			chunks[i] = null;
+		}
+		count = 0;
+		completed = 0;
+		b = first;
+		pos = 0;
+	}
+
+	/**
+	 * Returns number of bytes which were written into all chunks
+	 * 
+	 * @return Number of bytes which were written
+	 */
+	public int getLength() {
+		return completed + pos;
+	}
+
+	/**
+	 * Returns the buffer. As long as all data fits into the first chunk this
+	 * chunk is returned, otherwise all chunks are copied into a new array.
+	 * 
+	 * @return Buffer containing {@link #getLength()} bytes of serialized data
+	 */
+	public byte[] getBuffer() {
+		return count == 0 ? b : toByteArray();
+	}
+
+	/**
+	 * Returns the size of newly allocated chunks
+	 * 
+	 * @return Chunk size
+	 */
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	/**
+	 * Returns the number of chunks in use
+	 * 
+	 * @return Number of chunks
+	 */
+	public int getChunkCount() {
+		return count + 1;
+	}
+
+	/**
+	 * Returns all chunks wrapped in byte buffers. Position and limit of each
+	 * buffer mark the used part of the chunk. The result can directly be passed
+	 * to a {@link java.nio.channels.GatheringByteChannel}.
+	 * 
+	 * @return Byte buffers wrapping the chunks
+	 */
+	public ByteBuffer[] getChunks() {
+		ByteBuffer[] ret = new ByteBuffer[count + 1];
+		for (int i = 0; i < count; i++) {
+			ret[i] = ByteBuffer.wrap(chunks[i], 0, lengths[i]);
+		}
+		ret[count] = ByteBuffer.wrap(b, 0, pos);
+		return ret;
+	}
+
+	/**
+	 * Writes all chunks to the given stream.
+	 * 
+	 * @param out
+	 *            Stream to write to
+	 * @throws IOException
+	 *             If writing failed
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+		for (int i = 0; i < count; i++) {
+			out.write(chunks[i], 0, lengths[i]);
+		}
+		out.write(b, 0, pos);
+	}
+
+	/**
+	 * Copies all chunks into another serializer.
+	 * 
+	 * @param s
+	 *            Serializer to write to
+	 * @throws IOException
+	 *             If writing failed
+	 */
+	public void writeTo(MessagePaxSerializer s) throws IOException {
+		for (int i = 0; i < count; i++) {
+			s.addBytes(chunks[i], 0, lengths[i]);
+		}
+		s.addBytes(b, 0, pos);
+	}
+
+	/**
+	 * Copies all chunks into one new array.
+	 * 
+	 * @return Array containing exactly the serialized data
+	 */
+	public byte[] toByteArray() {
+		byte[] ret = new byte[getLength()];
+		int off = 0;
+		for (int i = 0; i < count; i++) {
+			System.arraycopy(chunks[i], 0, ret, off, lengths[i]);
+			off += lengths[i];
+		}
+		System.arraycopy(b, 0, ret, off, pos);
+		return ret;
+	}
+
+	/**
+	 * Returns the serialized data as HEX string, used for unit tests.
+	 * 
+	 * @return Serialized data as HEX string
+	 */
+	public String toHexString() {
+		return Utils.hex(getBuffer(), 0, getLength());
+	}
+}
@@ -0,0 +1,36 @@
+package org.messagepax;
+
+import java.io.IOException;
+
+/**
+ * Writes and reads objects of a type. Codecs are stateless and can be shared
+ * by several threads.
+ * 
+ * @param <T>
+ *            Type of the objects
+ */
+public interface MessagePaxCodec<T> {
+
+	/**
+	 * Writes an object
+	 * 
+	 * @param s
+	 *            Serializer
+	 * @param value
+	 *            Object or null
+	 * @throws IOException
+	 *             If object could not be serialized
+	 */
+	void write(MessagePaxSerializer s, T value) throws IOException;
+
+	/**
+	 * Reads an object
+	 * 
+	 * @param d
+	 *            Deserializer
+	 * @return Object or null
+	 * @throws IOException
+	 *             If value could not be decoded correctly
+	 */
+	T read(MessagePaxDeserializer d) throws IOException;
+}
@@ -2,10 +2,13 @@ package org.messagepax;
 
 import java.io.IOException;
 import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 
 /**
  * Deserializer class used to unpack a byte array containing MSGPACK formatted
@@ -18,6 +21,9 @@ import java.util.Map;
  */
 public class MessagePaxDeserializer extends BaseDeserializer {
 
+	/** Optional cache for short strings */
+	protected MessagePaxStringCache stringCache;
+
 	/**
 	 * Creates a deserializer object with buffer containing objects serialized
 	 * according to the MSGPACK format specification.
@@ -29,6 +35,124 @@ public class MessagePaxDeserializer extends BaseDeserializer {
 		super(b);
 	}
 
+	/**
+	 * Creates a deserializer object reading from the given offset of the
+	 * buffer.
+	 * 
+	 * @param b
+	 *            Buffer containing serialized data
+	 * @param offset
+	 *            Read position of the first object
+	 */
+	public MessagePaxDeserializer(byte[] b, int offset) {
+		super(b);
+		this.pos = offset;
+	}
+
+	/**
+	 * Returns the actual read position in the buffer
+	 * 
+	 * @return Read position
+	 */
+	public int getPosition() {
+		return pos;
+	}
+
+	/**
+	 * Returns true if there are bytes left to read
+	 * 
+	 * @return true if position is before the end of the buffer
+	 */
+	public boolean hasRemaining() {
+		return pos < b.length;
+	}
+
+	/**
+	 * Returns the number of bytes left to read
+	 * 
+	 * @return Number of bytes behind the position
+	 */
+	protected long getRemaining() {
+		return b.length - pos;
+	}
+
+	/**
+	 * Sets a cache for short strings. Strings read by {@link #readString()}
+	 * are taken from the cache if they were decoded before. This is useful for
+	 * map keys which occur again and again.
+	 * 
+	 * @param stringCache
+	 *            String cache, shared with other deserializers, or null to
+	 *            disable caching
+	 */
+	public void setStringCache(MessagePaxStringCache stringCache) {
+		this.stringCache = stringCache;
+	}
+
+	/**
+	 * Returns true if the next object in the buffer is NIL. The position is
+	 * not changed.
+	 * 
+	 * @return true if next object is NIL
+	 * @throws IOException
+	 *             If the data could not be read
+	 */
+	public boolean isNextNil() throws IOException {
+		return isNil(peekByte());
+	}
+
+	/**
+	 * Returns the format of the next object in the buffer. The position is not
+	 * changed.
+	 * 
+	 * @return Format of the next object
+	 * @throws IOException
+	 *             If the data could not be read
+	 */
+	public MessagePaxFormat nextFormat() throws IOException {
+		return MessagePaxFormat.of(peekByte());
+	}
+
+	/**
+	 * Returns the type of the next object in the buffer. The position is not
+	 * changed. This allows to decode data without knowing its layout.
+	 * 
+	 * @return Type of the next object
+	 * @throws IOException
+	 *             If the data could not be read or the next byte is not a
+	 *             valid header
+	 */
+	public MessagePaxType peekType() throws IOException {
+		int x = peekByte();
+		MessagePaxType type = MessagePaxFormat.of(x).getType();
+		if (type == null) {
+			throw illegalType(x, "value");
+		}
+		return type;
+	}
+
+	/**
+	 * Skips the next object if it is NIL. Use it together with the primitive
+	 * readers, like {@link #readInt()}, to handle null values without boxing.
+	 * 
+	 * <pre>
+	 * if (!d.tryReadNil()) {
+	 * 	int i = d.readInt();
+	 * }
+	 * </pre>
+	 * 
+	 * @return true if NIL was read, false if next object is not NIL
+	 * @throws IOException
+	 *             If the data could not be read
+	 */
+	public boolean tryReadNil() throws IOException {
+		if (isNil(peekByte())) {
+			pos++;
+			return true;
+		}
+		return false;
+	}
+
 	/**
 	 * Reads a Boolean object from buffer
 	 * 
@@ -41,16 +165,37 @@ public class MessagePaxDeserializer extends BaseDeserializer {
 		if (isNil(x)) {
 			return null;
 		} else {
-			if (x == 0xc3)
-				return true;
-			else if (x == 0xc2)
-				return false;
-			else
-				throw new IOException(
-						"Illegal byte could not be interpreted as boolean");
+			return readBooleanValue(x);
 		}
 	}
 
+	/**
+	 * Reads a boolean value from buffer without boxing. NIL is not allowed.
+	 * 
+	 * @return boolean value
+	 * @throws IOException
+	 *             If value could not be decoded correctly or is NIL
+	 */
+	public boolean readBooleanValue() throws IOException {
+		return readBooleanValue(readByte());
+	}
+
+	/**
+	 * Decodes a boolean value
+	 * 
+	 * @param x
+	 *            First byte
+	 * @return boolean value
+	 * @throws IOException
+	 *             If value could not be decoded correctly
+	 */
+	private boolean readBooleanValue(int x) throws IOException {
+		if (MessagePaxFormat.of(x) != MessagePaxFormat.BOOLEAN) {
+			throw illegalType(x, "boolean");
+		}
+		return x == 0xc3;
+	}
+
 	/**
 	 * Reads an Integer object from buffer. Could be 8, 16 or 32 signed integer
 	 * in Java.
@@ -64,63 +209,82 @@ public class MessagePaxDeserializer extends BaseDeserializer {
 		if (isNil(x)) {
 			return null;
 		} else {
-			int ret;
-			if ((x & (1 << 7)) == 0) {
-				// positive fixnum stores 7-bit positive integer
-				// +--------+
-				// |0XXXXXXX|
-				// +--------+
-				ret = x & 0x7f;
-			} else {
-				if ((x & 0xe0) == 0xe0) {
-					// negative fixnum stores 5-bit negative integer
-					// +--------+
-					// |111YYYYY|
-					// +--------+
-					ret = (x & 0x1f) - 32;
-				} else {
-					if (x == 0xd0) {
-						// int 8 stores a 8-bit signed integer
-						// +------+--------+
-						// | 0xd0 |ZZZZZZZZ|
-						// +------+--------+
-						ret = (byte) readByte();
-					} else if (x == 0xd1) {
-						// int 16 stores a 16-bit big-endian signed integer
-						// +------+--------+--------+
-						// | 0xd1 |ZZZZZZZZ|ZZZZZZZZ|
-						// -------+--------+--------+
-						ret = readInt16();
-					} else if (x == 0xd2) {
-						// int 32 stores a 32-bit big-endian signed integer
-						// +------+--------+--------+--------+--------+
-						// | 0xd2 |ZZZZZZZZ|ZZZZZZZZ|ZZZZZZZZ|ZZZZZZZZ|
-						// +------+--------+--------+--------+--------+
-						ret = readInt32();
-					} else if (x == 0xcc) {
-						// unsigned 8-bit XXXXXXXX
-						// +------+--------+
-						// | 0xcc |XXXXXXXX|
-						// +------+--------+
-						ret = readByte() & 0xff;
-					} else if (x == 0xcd) {
-						// uint 16 stores a 16-bit big-endian unsigned integer
-						// +------+--------+--------+
-						// | 0xcd |ZZZZZZZZ|ZZZZZZZZ|
-						// +------+--------+--------+
-						ret = readInt16() & 0xffff;
-					} else if (x == 0xce) {
-						// uint 32 stores a 32-bit big-endian unsigned integer
-						// +------+--------+--------+--------+--------+
-						// | 0xce |ZZZZZZZZ|ZZZZZZZZ|ZZZZZZZZ|ZZZZZZZZ
-						// +------+--------+--------+--------+--------+
-						ret = readInt32();
-					} else {
-						throw new IOException("Unknown integer type " + x);
-					}
-				}
-			}
-			return ret;
+			return readInt(x);
+		}
+	}
+
+	/**
+	 * Reads an int value from buffer without boxing. Could be 8, 16 or 32
+	 * signed integer in Java. NIL is not allowed.
+	 * 
+	 * @return int value
+	 * @throws IOException
+	 *             If value could not be decoded correctly or is NIL
+	 */
+	public int readInt() throws IOException {
+		return readInt(readByte());
+	}
+
+	/**
+	 * Decodes an int value
+	 * 
+	 * @param x
+	 *            First byte
+	 * @return int value
+	 * @throws IOException
+	 *             If value could not be decoded correctly
+	 */
+	private int readInt(int x) throws IOException {
+		switch (MessagePaxFormat.of(x)) {
+		case POSITIVE_FIXINT:
+			// positive fixnum stores 7-bit positive integer
+			// +--------+
+			// |0XXXXXXX|
+			// +--------+
+		case NEGATIVE_FIXINT:
+			// negative fixnum stores 5-bit negative integer
+			// +--------+
+			// |111YYYYY|
+			// +--------+
+			return (byte) x;
+		case INT8:
+			// int 8 stores a 8-bit signed integer
+			// +------+--------+
+			// | 0xd0 |ZZZZZZZZ|
+			// +------+--------+
+			return (byte) readByte();
+		case INT16:
+			// int 16 stores a 16-bit big-endian signed integer
+			// +------+--------+--------+
+			// | 0xd1 |ZZZZZZZZ|ZZZZZZZZ|
+			// -------+--------+--------+
+			return readInt16();
+		case INT32:
+			// int 32 stores a 32-bit big-endian signed integer
+			// +------+--------+--------+--------+--------+
+			// | 0xd2 |ZZZZZZZZ|ZZZZZZZZ|ZZZZZZZZ|ZZZZZZZZ|
+			// +------+--------+--------+--------+--------+
+			return readInt32();
+		case UINT8:
+			// unsigned 8-bit XXXXXXXX
+			// +------+--------+
+			// | 0xcc |XXXXXXXX|
+			// +------+--------+
+			return readByte() & 0xff;
+		case UINT16:
+			// uint 16 stores a 16-bit big-endian unsigned integer
+			// +------+--------+--------+
+			// | 0xcd |ZZZZZZZZ|ZZZZZZZZ|
+			// +------+--------+--------+
+			return readInt16() & 0xffff;
+		case UINT32:
+			// uint 32 stores a 32-bit big-endian unsigned integer
+			// +------+--------+--------+--------+--------+
+			// | 0xce |ZZZZZZZZ|ZZZZZZZZ|ZZZZZZZZ|ZZZZZZZZ
+			// +------+--------+--------+--------+--------+
+			return readInt32();
+		default:
+			throw illegalType(x, "integer");
 		}
 	}
 
@@ -137,25 +301,49 @@ public class MessagePaxDeserializer extends BaseDeserializer {
 		if (isNil(x)) {
 			return null;
 		} else {
-			long l = 0;
-			if (x == 0xd3) {
-				// int 64 stores a 64-bit big-endian signed integer
-				// +----+--------+--------+--------+--------+--------+--------+--------+--------+
-				// |0xd3|ZZZZZZZZ|ZZZZZZZZ|ZZZZZZZZ|ZZZZZZZZ|ZZZZZZZZ|ZZZZZZZZ|ZZZZZZZZ|ZZZZZZZZ|
-				// +----+--------+--------+--------+--------+--------+--------+--------+--------+
-				l = readInt64();
-			} else if (x == 0xcf) {
-				// uint 64 stores a 64-bit big-endian unsigned integer
-				// +----+--------+--------+--------+--------+--------+--------+--------+--------+
-				// |0xcf|ZZZZZZZZ|ZZZZZZZZ|ZZZZZZZZ|ZZZZZZZZ|ZZZZZZZZ|ZZZZZZZZ|ZZZZZZZZ|ZZZZZZZZ|
-				// +----+--------+--------+--------+--------+--------+--------+--------+--------+
-				l = readInt64();
-			} else {
-				// 'unread' header - TODO improve that
-				pos--;
-				l = readInteger();
-			}
-			return l;
+			return readLongValue(x);
+		}
+	}
+
+	/**
+	 * Reads a long value from buffer without boxing. Could be 8, 16, 32 or 64
+	 * bit signed integer in Java. NIL is not allowed.
+	 * 
+	 * @return long value
+	 * @throws IOException
+	 *             If value could not be decoded correctly or is NIL
+	 */
+	public long readLongValue() throws IOException {
+		return readLongValue(readByte());
+	}
+
+	/**
+	 * Decodes a long value
+	 * 
+	 * @param x
+	 *            First byte
+	 * @return long value
+	 * @throws IOException
+	 *             If value could not be decoded correctly
+	 */
+	private long readLongValue(int x) throws IOException {
+		switch (MessagePaxFormat.of(x)) {
+		case INT64:
+			// int 64 stores a 64-bit big-endian signed integer
+			// +----+--------+--------+--------+--------+--------+--------+--------+--------+
+			// |0xd3|ZZZZZZZZ|ZZZZZZZZ|ZZZZZZZZ|ZZZZZZZZ|ZZZZZZZZ|ZZZZZZZZ|ZZZZZZZZ|ZZZZZZZZ|
+			// +----+--------+--------+--------+--------+--------+--------+--------+--------+
+		case UINT64:
+			// uint 64 stores a 64-bit big-endian unsigned integer
+			// +----+--------+--------+--------+--------+--------+--------+--------+--------+
+			// |0xcf|ZZZZZZZZ|ZZZZZZZZ|ZZZZZZZZ|ZZZZZZZZ|ZZZZZZZZ|ZZZZZZZZ|ZZZZZZZZ|ZZZZZZZZ|
+			// +----+--------+--------+--------+--------+--------+--------+--------+--------+
+			return readInt64();
+		case UINT32:
+			// uint 32 fits into a long without sign
+			return readInt32() & 0xffffffffL;
+		default:
+			return readInt(x);
 		}
 	}
 
@@ -171,8 +359,38 @@ public class MessagePaxDeserializer extends BaseDeserializer {
 		if (isNil(x)) {
 			return null;
 		} else {
-			int bits = readInt32();
-			return Float.intBitsToFloat(bits);
+			return readFloatValue(x);
+		}
+	}
+
+	/**
+	 * Reads a float value from buffer without boxing. NIL is not allowed.
+	 * 
+	 * @return float value
+	 * @throws IOException
+	 *             If value could not be decoded correctly or is NIL
+	 */
+	public float readFloatValue() throws IOException {
+		return readFloatValue(readByte());
+	}
+
+	/**
+	 * Decodes a float value. A double value is converted to float.
+	 * 
+	 * @param x
+	 *            First byte
+	 * @return float value
+	 * @throws IOException
+	 *             If value could not be decoded correctly
+	 */
+	private float readFloatValue(int x) throws IOException {
+		switch (MessagePaxFormat.of(x)) {
+		case FLOAT32:
+			return Float.intBitsToFloat(readInt32());
+		case FLOAT64:
+			return (float) Double.longBitsToDouble(readInt64());
+		default:
+			throw illegalType(x, "float");
 		}
 	}
 
@@ -188,9 +406,204 @@ public class MessagePaxDeserializer extends BaseDeserializer {
 		if (isNil(x)) {
 			return null;
 		} else {
-			long bits = readInt64();
-			return Double.longBitsToDouble(bits);
+			return readDoubleValue(x);
+		}
+	}
+
+	/**
+	 * Reads a double value from buffer without boxing. NIL is not allowed.
+	 * 
+	 * @return double value
+	 * @throws IOException
+	 *             If value could not be decoded correctly or is NIL
+	 */
+	public double readDoubleValue() throws IOException {
+		return readDoubleValue(readByte());
+	}
+
+	/**
+	 * Decodes a double value. A float value is converted to double.
+	 * 
+	 * @param x
+	 *            First byte
+	 * @return double value
+	 * @throws IOException
+	 *             If value could not be decoded correctly
+	 */
+	private double readDoubleValue(int x) throws IOException {
+		switch (MessagePaxFormat.of(x)) {
+		case FLOAT64:
+			return Double.longBitsToDouble(readInt64());
+		case FLOAT32:
+			return Float.intBitsToFloat(readInt32());
+		default:
+			throw illegalType(x, "double");
+		}
+	}
+
+	/**
+	 * Creates the exception for an unexpected type
+	 * 
+	 * @param x
+	 *            First byte
+	 * @param expected
+	 *            Name of the expected type
+	 * @return Exception to throw
+	 */
+	private IOException illegalType(int x, String expected) {
+		if (isNil(x)) {
+			return new IOException("Unexpected NIL, " + expected + " expected");
+		}
+		return new IOException("Illegal byte " + x
+				+ " could not be interpreted as " + expected);
+	}
+
+	/**
+	 * Skips the next value without decoding it. Nested lists and maps are
+	 * skipped completely, string, binary and extension payloads are jumped
+	 * over by their length. Nothing is allocated.
+	 * 
+	 * @throws IOException
+	 *             If value could not be decoded correctly
+	 */
+	public void skipValue() throws IOException {
+		// number of values left to skip, lists and maps add their elements
+		long count = 1;
+		while (count > 0) {
+			count += skipHeader() - 1;
+		}
+	}
+
+	/**
+	 * Counts the values between two positions, used by the serializers to
+	 * patch the headers of lists and maps with deferred size. Only headers
+	 * are decoded and nothing behind the end position is interpreted.
+	 * 
+	 * @param from
+	 *            Position of the first value
+	 * @param to
+	 *            Position behind the last value
+	 * @return Number of values or -1 if the last value does not end at the
+	 *         end position
+	 * @throws IOException
+	 *             If a value could not be decoded
+	 */
+	int countValues(int from, int to) throws IOException {
+		pos = from;
+		int values = 0;
+		// elements of the actual value which are not skipped yet
+		long count = 0;
+		try {
+			while (pos < to) {
+				if (count == 0) {
+					values++;
+				} else {
+					count--;
+				}
+				count += skipHeader();
+				if (pos > to || count > to - pos) {
+					// the value continues behind the end position
+					return -1;
+				}
+			}
+		} catch (IndexOutOfBoundsException e) {
+			return -1;
+		} catch (BufferUnderflowException e) {
+			return -1;
+		}
+		return count == 0 ? values : -1;
+	}
+
+	/**
+	 * Skips the header and the payload of the next value. The elements of
+	 * lists and maps are not skipped.
+	 * 
+	 * @return Number of values following as elements, keys and values
+	 * @throws IOException
+	 *             If value could not be decoded correctly
+	 */
+	private long skipHeader() throws IOException {
+		long count = 0;
+		int x = readByte();
+		switch (MessagePaxFormat.of(x)) {
+		case POSITIVE_FIXINT:
+		case NEGATIVE_FIXINT:
+		case NIL:
+		case BOOLEAN:
+			break;
+		case FIXMAP:
+			count = 2 * MessagePaxFormat.getInlineLength(x);
+			break;
+		case FIXARRAY:
+			count = MessagePaxFormat.getInlineLength(x);
+			break;
+		case FIXSTR:
+			skipBytes(MessagePaxFormat.getInlineLength(x));
+			break;
+		case FIXEXT1:
+		case FIXEXT2:
+		case FIXEXT4:
+		case FIXEXT8:
+		case FIXEXT16:
+			// type byte and data
+			skipBytes(1 + MessagePaxFormat.getInlineLength(x));
+			break;
+		case BIN8:
+		case STR8:
+			skipBytes(readByte());
+			break;
+		case BIN16:
+		case STR16:
+			skipBytes(readInt16() & 0xffff);
+			break;
+		case BIN32:
+		case STR32:
+			skipBytes(readInt32() & 0x7fffffff);
+			break;
+		case EXT8:
+			// ext 8, 16 and 32 have a type byte after the length
+			skipBytes(readByte() + 1);
+			break;
+		case EXT16:
+			skipBytes((readInt16() & 0xffff) + 1);
+			break;
+		case EXT32:
+			skipBytes((readInt32() & 0x7fffffff) + 1);
+			break;
+		case UINT8:
+		case INT8:
+			skipBytes(1);
+			break;
+		case UINT16:
+		case INT16:
+			skipBytes(2);
+			break;
+		case FLOAT32:
+		case UINT32:
+		case INT32:
+			skipBytes(4);
+			break;
+		case FLOAT64:
+		case UINT64:
+		case INT64:
+			skipBytes(8);
+			break;
+		case ARRAY16:
+			count = readInt16() & 0xffff;
+			break;
+		case ARRAY32:
+			count = readInt32() & 0xffffffffL;
+			break;
+		case MAP16:
+			count = 2 * (readInt16() & 0xffff);
+			break;
+		case MAP32:
+			count = 2 * (readInt32() & 0xffffffffL);
+			break;
+		default:
+			throw illegalType(x, "value");
 		}
+		return count;
 	}
 
 	/**
@@ -207,12 +620,89 @@ public class MessagePaxDeserializer extends BaseDeserializer {
 		} else {
 			int len = readByteArrayOrStringLen(x);
 			byte[] ret = new byte[len];
-			System.arraycopy(b, pos, ret, 0, len);
-			pos += len;
+			readBytes(ret, 0, len);
 			return ret;
 		}
 	}
 
+	/**
+	 * Reads a byte array or String object from buffer without copying it. The
+	 * returned buffer is a read-only view on the payload and only valid as
+	 * long as the buffer of the deserializer is not changed.
+	 * 
+	 * @return Read-only byte buffer containing the payload or null
+	 * @throws IOException
+	 *             If value could not be decoded correctly
+	 */
+	public ByteBuffer readByteBuffer() throws IOException {
+		int x = readByte();
+		if (isNil(x)) {
+			return null;
+		} else {
+			int len = readByteArrayOrStringLen(x);
+			return readByteBuffer(len);
+		}
+	}
+
+	/**
+	 * Reads a byte array or String object from buffer without copying it. The
+	 * given slice is set to the payload in the buffer of the deserializer. Use
+	 * the slice as {@link CharSequence} to decode strings lazily.
+	 * 
+	 * @param slice
+	 *            Slice to set, can be reused for many calls
+	 * @return true if slice was set, false if object is null
+	 * @throws IOException
+	 *             If value could not be decoded correctly
+	 */
+	public boolean readSlice(MessagePaxSlice slice) throws IOException {
+		int x = readByte();
+		if (isNil(x)) {
+			return false;
+		} else {
+			int len = readByteArrayOrStringLen(x);
+			readSlice(slice, len);
+			return true;
+		}
+	}
+
+	/**
+	 * Returns a read-only view on the given number of bytes at the actual
+	 * position and moves position forward behind them.
+	 * 
+	 * @param len
+	 *            Number of bytes
+	 * @return Read-only byte buffer
+	 * @throws IOException
+	 *             If the data could not be read
+	 */
+	protected ByteBuffer readByteBuffer(int len) throws IOException {
+		ByteBuffer ret = ByteBuffer.wrap(b, pos, len).slice()
+				.asReadOnlyBuffer();
+		pos += len;
+		return ret;
+	}
+
+	/**
+	 * Sets the slice to the given number of bytes at the actual position and
+	 * moves position forward behind them.
+	 * 
+	 * @param slice
+	 *            Slice to set
+	 * @param len
+	 *            Number of bytes
+	 * @throws IOException
+	 *             If the data could not be read
+	 */
+	protected void readSlice(MessagePaxSlice slice, int len)
+			throws IOException {
+		if (len > b.length - pos) {
+			throw new ArrayIndexOutOfBoundsException(pos + len);
+		}
+		slice.set(b, pos, len);
+		pos += len;
+	}
+
 	/**
 	 * Reads a String object from buffer
 	 * 
@@ -226,13 +716,31 @@ public class MessagePaxDeserializer extends BaseDeserializer {
 			return null;
 		} else {
 			int len = readByteArrayOrStringLen(x);
-			String s = new String(b, pos, len,
-					MessagePaxSerializer.STRING_ENCODING);
-			pos += len;
-			return s;
+			return readUtf8(len);
 		}
 	}
 
+	/**
+	 * Decodes an UTF-8 string from the actual position and moves position
+	 * forward behind it.
+	 * 
+	 * @param len
+	 *            Number of bytes to decode
+	 * @return Decoded string
+	 * @throws IOException
+	 *             If value could not be decoded correctly
+	 */
+	protected String readUtf8(int len) throws IOException {
+		String s;
+		if (stringCache != null) {
+			s = stringCache.get(b, pos, len);
+		} else {
+			s = new String(b, pos, len, MessagePaxSerializer.STRING_ENCODING);
+		}
+		pos += len;
+		return s;
+	}
+
 	/**
 	 * Internal method to interpret the 1st byte which can contain already the
 	 * length information or if required continue to read subsequent bytes to
@@ -241,49 +749,55 @@ public class MessagePaxDeserializer extends BaseDeserializer {
 	 * @param x
 	 *            First byte containing type and sometimes length too
 	 * @return Length information
+	 * @throws IOException
+	 *             If value could not be decoded correctly
 	 */
-	private int readByteArrayOrStringLen(int x) {
-		int len = 0;
-		if ((x & 0xa0) == 0xa0) {
+	private int readByteArrayOrStringLen(int x) throws IOException {
+		switch (MessagePaxFormat.of(x)) {
+		case FIXSTR:
 			// fixstr stores a byte array whose length is upto 31 bytes:
 			// +--------+======+
 			// |101XXXXX| data |
 			// +--------+======+
-			len = x & 0x1f;
-		} else if (x == 0xda) {
+			return MessagePaxFormat.getInlineLength(x);
+		case STR8:
+			// str 8 stores a byte array whose length is upto (2^8)-1 bytes:
+			// +------+--------+======+
+			// | 0xd9 |YYYYYYYY| data |
+			// +------+--------+======+
+		case BIN8:
+			// bin 8 stores a byte array whose length is upto (2^8)-1 bytes:
+			// +------+--------+======+
+			// | 0xc4 |XXXXXXXX| data |
+			// +------+--------+======+
+			return readByte();
+		case STR16:
 			// str 16 stores a byte array whose length is upto (2^16)-1
 			// bytes:
 			// +------+--------+--------+======+
 			// | 0xda |ZZZZZZZZ|ZZZZZZZZ| data |
 			// +------+--------+--------+======+
-			len = readInt16() & 0xffff;
-		} else if (x == 0xdb) {
+		case BIN16:
+			// bin 16 stores a byte array whose length is upto (2^16)-1 bytes:
+			// +------+--------+--------+======+
+			// | 0xc5 |YYYYYYYY|YYYYYYYY| data |
+			// +------+--------+--------+======+
+			return readInt16() & 0xffff;
+		case STR32:
 			// str 32 stores a byte array whose length is upto (2^32)-1
 			// bytes:
 			// +------+--------+--------+--------+--------+======+
 			// | 0xdb |AAAAAAAA|AAAAAAAA|AAAAAAAA|AAAAAAAA| data |
 			// +------+--------+--------+--------+--------+======+
-			len = readInt32() & 0x7fffffff;
-		} else if (x == 0xc4) {
-			// bin 8 stores a byte array whose length is upto (2^8)-1 bytes:
-			// +------+--------+======+
-			// | 0xc4 |XXXXXXXX| data |
-			// +------+--------+======+
-			len = readByte();
-		} else if (x == 0xc5) {
-			// bin 16 stores a byte array whose length is upto (2^16)-1 bytes:
-			// +------+--------+--------+======+
-			// | 0xc5 |YYYYYYYY|YYYYYYYY| data |
-			// +------+--------+--------+======+
-			len = readInt16();
-		} else if (x == 0xc6) {
+		case BIN32:
 			// bin 32 stores a byte array whose length is upto (2^32)-1 bytes:
 			// +------+--------+--------+--------+--------+======+
 			// | 0xc6 |ZZZZZZZZ|ZZZZZZZZ|ZZZZZZZZ|ZZZZZZZZ| data |
 			// +------+--------+--------+--------+--------+======+
-			len = readInt32();
+			return readInt32() & 0x7fffffff;
+		default:
+			throw illegalType(x, "string or byte array");
 		}
-		return len;
 	}
 
 	/**
@@ -298,29 +812,55 @@ public class MessagePaxDeserializer extends BaseDeserializer {
 		if (isNil(x)) {
 			return null;
 		} else {
-			int len = 0;
-			if ((x & 0xf0) == 0x90) {
-				// fixarray stores an array whose length is upto 15 elements:
-				// +--------+~~~~~~~~~~~+
-				// |1001XXXX| N objects |
-				// +--------+~~~~~~~~~~~+
-				len = x & 0x0f;
-			} else if (x == 0xdc) {
-				// array 16 stores an array whose length is upto (2^16)-1
-				// elements:
-				// +------+--------+--------+~~~~~~~~~~~+
-				// | 0xdc |YYYYYYYY|YYYYYYYY| N objects |
-				// +------+--------+--------+~~~~~~~~~~~+
-				len = readInt16() & 0xffff;
-			} else if (x == 0xdd) {
-				// array 32 stores an array whose length is upto (2^32)-1
-				// elements:
-				// +------+--------+--------+--------+--------+~~~~~~~~~~~+
-				// | 0xdd |ZZZZZZZZ|ZZZZZZZZ|ZZZZZZZZ|ZZZZZZZZ| N objects |
-				// +------+--------+--------+--------+--------+~~~~~~~~~~~+
-				len = readInt32() & 0x7fffffff;
-			}
-			return len;
+			return readListSize(x);
+		}
+	}
+
+	/**
+	 * Reads a length information of a list object from buffer without boxing.
+	 * NIL is not allowed.
+	 * 
+	 * @return Length information of list object
+	 * @throws IOException
+	 *             If value could not be decoded correctly or is NIL
+	 */
+	public int readListSize() throws IOException {
+		return readListSize(readByte());
+	}
+
+	/**
+	 * Decodes the length information of a list object
+	 * 
+	 * @param x
+	 *            First byte
+	 * @return Length information
+	 * @throws IOException
+	 *             If value could not be decoded correctly
+	 */
+	private int readListSize(int x) throws IOException {
+		switch (MessagePaxFormat.of(x)) {
+		case FIXARRAY:
+			// fixarray stores an array whose length is upto 15 elements:
+			// +--------+~~~~~~~~~~~+
+			// |1001XXXX| N objects |
+			// +--------+~~~~~~~~~~~+
+			return MessagePaxFormat.getInlineLength(x);
+		case ARRAY16:
+			// array 16 stores an array whose length is upto (2^16)-1
+			// elements:
+			// +------+--------+--------+~~~~~~~~~~~+
+			// | 0xdc |YYYYYYYY|YYYYYYYY| N objects |
+			// +------+--------+--------+~~~~~~~~~~~+
+			return readInt16() & 0xffff;
+		case ARRAY32:
+			// array 32 stores an array whose length is upto (2^32)-1
+			// elements:
+			// +------+--------+--------+--------+--------+~~~~~~~~~~~+
+			// | 0xdd |ZZZZZZZZ|ZZZZZZZZ|ZZZZZZZZ|ZZZZZZZZ| N objects |
+			// +------+--------+--------+--------+--------+~~~~~~~~~~~+
+			return readInt32() & 0x7fffffff;
+		default:
+			throw illegalType(x, "list");
 		}
 	}
 
@@ -336,30 +876,68 @@ public class MessagePaxDeserializer extends BaseDeserializer {
 		if (isNil(x)) {
 			return null;
 		} else {
-			int len = 0;
-			if ((x & 0xf0) == 0x80) {
-				// fixmap stores a map whose length is up to 15 elements
-				// +--------+~~~~~~~~~~~~~+
-				// |1000XXXX| N*2 objects |
-				// +--------+~~~~~~~~~~~~~+
-				len = x & 0x0f;
-			} else if (x == 0xde) {
-				// map 16 stores a map whose length is up to (2^16)-1 elements
-				// +------+--------+--------+~~~~~~~~~~~~~+
-				// | 0xde |YYYYYYYY|YYYYYYYY| N*2 objects |
-				// +------+--------+--------+~~~~~~~~~~~~~+
-				len = readInt16() & 0xffff;
-			} else if (x == 0xdf) {
-				// map 32 stores a map whose length is up to (2^32)-1 elements
-				// +------+--------+--------+--------+--------+~~~~~~~~~~~~~+
-				// | 0xdf |ZZZZZZZZ|ZZZZZZZZ|ZZZZZZZZ|ZZZZZZZZ| N*2 objects |
-				// +------+--------+--------+--------+--------+~~~~~~~~~~~~~+
-				len = readInt32() & 0x7fffffff;
-			}
-			return len;
+			return readMapSize(x);
+		}
+	}
+
+	/**
+	 * Reads a length information of a map object from buffer without boxing.
+	 * NIL is not allowed.
+	 * 
+	 * @return Length information of map object
+	 * @throws IOException
+	 *             If value could not be decoded correctly or is NIL
+	 */
+	public int readMapSize() throws IOException {
+		return readMapSize(readByte());
+	}
+
+	/**
+	 * Decodes the length information of a map object
+	 * 
+	 * @param x
+	 *            First byte
+	 * @return Length information
+	 * @throws IOException
+	 *             If value could not be decoded correctly
+	 */
+	private int readMapSize(int x) throws IOException {
+		switch (MessagePaxFormat.of(x)) {
+		case FIXMAP:
+			// fixmap stores a map whose length is up to 15 elements
+			// +--------+~~~~~~~~~~~~~+
+			// |1000XXXX| N*2 objects |
+			// +--------+~~~~~~~~~~~~~+
+			return MessagePaxFormat.getInlineLength(x);
+		case MAP16:
+			// map 16 stores a map whose length is up to (2^16)-1 elements
+			// +------+--------+--------+~~~~~~~~~~~~~+
+			// | 0xde |YYYYYYYY|YYYYYYYY| N*2 objects |
+			// +------+--------+--------+~~~~~~~~~~~~~+
+			return readInt16() & 0xffff;
+		case MAP32:
+			// map 32 stores a map whose length is up to (2^32)-1 elements
+			// +------+--------+--------+--------+--------+~~~~~~~~~~~~~+
+			// | 0xdf |ZZZZZZZZ|ZZZZZZZZ|ZZZZZZZZ|ZZZZZZZZ| N*2 objects |
+			// +------+--------+--------+--------+--------+~~~~~~~~~~~~~+
+			return readInt32() & 0x7fffffff;
+		default:
+			throw illegalType(x, "map");
 		}
 	}
 
+	/**
+	 * Rebinds the deserializer to a new buffer and rewinds to its start. This
+	 * allows to reuse deserializer objects.
+	 * 
+	 * @param b
+	 *            Buffer containing serialized data
+	 */
+	public void reset(byte[] b) {
+		this.b = b;
+		this.pos = 0;
+	}
+
 	/**
 	 * Resets the buffer and fills it with data passed in a HEX string. This
 	 * method shall just be used from the unit tests to rewind and fill new test
@@ -415,6 +993,383 @@ public class MessagePaxDeserializer extends BaseDeserializer {
 		}
 	}
 
+	/**
+	 * Reads a map key written as string or as index of a dictionary
+	 * 
+	 * @param dictionary
+	 *            Key dictionary
+	 * @return Key
+	 * @throws IOException
+	 *             If value could not be decoded correctly or the index is not
+	 *             contained in the dictionary
+	 */
+	public String readKey(MessagePaxKeyDictionary dictionary)
+			throws IOException {
+		if (nextFormat().getType() != MessagePaxType.INTEGER) {
+			return readString();
+		}
+		int index = readInt();
+		String key = dictionary.getKey(index);
+		if (key == null) {
+			throw new IOException("Key index " + index
+					+ " not contained in dictionary version "
+					+ dictionary.getVersion());
+		}
+		return key;
+	}
+
+	/**
+	 * Reads a String map object from buffer with keys encoded by a dictionary
+	 * 
+	 * @param dictionary
+	 *            Key dictionary
+	 * @return String map object or null
+	 * @throws IOException
+	 *             If value could not be decoded correctly
+	 */
+	public Map<String, String> readStringMap(MessagePaxKeyDictionary dictionary)
+			throws IOException {
+		Integer len = readMapBegin();
+		if (len == null) {
+			return null;
+		} else {
+			Map<String, String> map = new HashMap<String, String>();
+			for (int i = 0; i < len; i++) {
+				String key = readKey(dictionary);
+				String val = readString();
+				map.put(key, val);
+			}
+			return map;
+		}
+	}
+
+	/**
+	 * Reads a list of integers into a caller provided array without boxing.
+	 * 
+	 * @param dst
+	 *            Destination array
+	 * @param off
+	 *            Offset of the first element in the destination array
+	 * @param len
+	 *            Maximum number of elements
+	 * @return Number of elements read or -1 if list is NIL
+	 * @throws IOException
+	 *             If value could not be decoded correctly or the list has more
+	 *             than <code>len</code> elements
+	 */
+	public int readIntArray(int[] dst, int off, int len)
+			throws IOException {
+		int n = readArraySize(len);
+		for (int i = off; i < off + n; i++) {
+			dst[i] = readInt(readByte());
+		}
+		return n;
+	}
+
+	/**
+	 * Reads a list of integers into a caller provided array without boxing.
+	 * 
+	 * @param dst
+	 *            Destination array
+	 * @param off
+	 *            Offset of the first element in the destination array
+	 * @param len
+	 *            Maximum number of elements
+	 * @return Number of elements read or -1 if list is NIL
+	 * @throws IOException
+	 *             If value could not be decoded correctly or the list has more
+	 *             than <code>len</code> elements
+	 */
+	public int readLongArray(long[] dst, int off, int len)
+			throws IOException {
+		int n = readArraySize(len);
+		for (int i = off; i < off + n; i++) {
+			dst[i] = readLongValue(readByte());
+		}
+		return n;
+	}
+
+	/**
+	 * Reads a list of floats into a caller provided array without boxing.
+	 * 
+	 * @param dst
+	 *            Destination array
+	 * @param off
+	 *            Offset of the first element in the destination array
+	 * @param len
+	 *            Maximum number of elements
+	 * @return Number of elements read or -1 if list is NIL
+	 * @throws IOException
+	 *             If value could not be decoded correctly or the list has more
+	 *             than <code>len</code> elements
+	 */
+	public int readFloatArray(float[] dst, int off, int len)
+			throws IOException {
+		int n = readArraySize(len);
+		for (int i = off; i < off + n; i++) {
+			dst[i] = readFloatValue(readByte());
+		}
+		return n;
+	}
+
+	/**
+	 * Reads a list of doubles into a caller provided array without boxing.
+	 * 
+	 * @param dst
+	 *            Destination array
+	 * @param off
+	 *            Offset of the first element in the destination array
+	 * @param len
+	 *            Maximum number of elements
+	 * @return Number of elements read or -1 if list is NIL
+	 * @throws IOException
+	 *             If value could not be decoded correctly or the list has more
+	 *             than <code>len</code> elements
+	 */
+	public int readDoubleArray(double[] dst, int off, int len)
+			throws IOException {
+		int n = readArraySize(len);
+		for (int i = off; i < off + n; i++) {
+			dst[i] = readDoubleValue(readByte());
+		}
+		return n;
+	}
+
+	/**
+	 * Reads the length of a list which is read into a primitive array
+	 * 
+	 * @param len
+	 *            Maximum number of elements
+	 * @return Length of the list or -1 if list is NIL
+	 * @throws IOException
+	 *             If value could not be decoded correctly or is too long
+	 */
+	private int readArraySize(int len) throws IOException {
+		int x = readByte();
+		if (isNil(x)) {
+			return -1;
+		}
+		int n = readListSize(x);
+		if (n > len) {
+			throw new IOException("List with " + n
+					+ " elements does not fit into " + len + " elements");
+		}
+		return n;
+	}
+
+	/**
+	 * Reads the next value of any type. Lists and maps are read completely.
+	 * 
+	 * @return Value, {@link MessagePaxValue#NIL} for NIL
+	 * @throws IOException
+	 *             If value could not be decoded correctly
+	 */
+	public MessagePaxValue readValue() throws IOException {
+		int x = readByte();
+		MessagePaxFormat format = MessagePaxFormat.of(x);
+		switch (format) {
+		case NIL:
+			return MessagePaxValue.NIL;
+		case BOOLEAN:
+			return MessagePaxValue.of(x == 0xc3);
+		case FLOAT32:
+			return MessagePaxValue.of(Float.intBitsToFloat(readInt32()));
+		case FLOAT64:
+			return MessagePaxValue.of(Double.longBitsToDouble(readInt64()));
+		case NEVER_USED:
+			throw illegalType(x, "value");
+		default:
+			break;
+		}
+		switch (format.getType()) {
+		case INTEGER:
+			return MessagePaxValue.of(readLongValue(x));
+		case STRING:
+			return MessagePaxValue.of(readUtf8(readByteArrayOrStringLen(x)));
+		case BINARY:
+			byte[] buffer = new byte[checkSize(readByteArrayOrStringLen(x))];
+			readBytes(buffer, 0, buffer.length);
+			return MessagePaxValue.of(buffer);
+		case LIST:
+			MessagePaxValue[] elements = new MessagePaxValue[checkSize(readListSize(
+					x))];
+			for (int i = 0; i < elements.length; i++) {
+				elements[i] = readValue();
+			}
+			return MessagePaxValue.list(elements);
+		case MAP:
+			MessagePaxValue[] keysAndValues = new MessagePaxValue[checkSize(2L
+					* readMapSize(x))];
+			for (int i = 0; i < keysAndValues.length; i++) {
+				keysAndValues[i] = readValue();
+			}
+			return MessagePaxValue.map(keysAndValues);
+		default:
+			int len = readExtLength(x);
+			int type = (byte) readByte();
+			byte[] data = new byte[checkSize(len)];
+			readBytes(data, 0, len);
+			return MessagePaxValue.ext(type, data);
+		}
+	}
+
+	/**
+	 * Checks a size read from the data before an array is allocated for it.
+	 * Each element takes at least one byte, so a size larger than the number
+	 * of remaining bytes is corrupt.
+	 * 
+	 * @param size
+	 *            Number of bytes or elements
+	 * @return Size
+	 * @throws IOException
+	 *             If size exceeds the remaining bytes
+	 */
+	private int checkSize(long size) throws IOException {
+		if (size > getRemaining()) {
+			throw new IOException("Size " + size + " exceeds the remaining "
+					+ getRemaining() + " bytes");
+		}
+		return (int) size;
+	}
+
+	/**
+	 * Decodes the payload length of an extension object
+	 * 
+	 * @param x
+	 *            First byte
+	 * @return Payload length
+	 * @throws IOException
+	 *             If value could not be decoded correctly
+	 */
+	private int readExtLength(int x) throws IOException {
+		switch (MessagePaxFormat.of(x)) {
+		case FIXEXT1:
+		case FIXEXT2:
+		case FIXEXT4:
+		case FIXEXT8:
+		case FIXEXT16:
+			return MessagePaxFormat.getInlineLength(x);
+		case EXT8:
+			return readByte();
+		case EXT16:
+			return readInt16() & 0xffff;
+		case EXT32:
+			return readInt32() & 0x7fffffff;
+		default:
+			throw illegalType(x, "extension");
+		}
+	}
+
+	/**
+	 * Reads an extension object without copying its payload. The given slice
+	 * is set to the payload in the buffer of the deserializer.
+	 * 
+	 * @param data
+	 *            Slice to set, can be reused for many calls
+	 * @return Extended Type ID or null if object is null
+	 * @throws IOException
+	 *             If value could not be decoded correctly
+	 */
+	public Integer readExt(MessagePaxSlice data) throws IOException {
+		int x = readByte();
+		if (isNil(x)) {
+			return null;
+		}
+		int len = readExtLength(x);
+		int type = (byte) readByte();
+		readSlice(data, len);
+		// values of a byte are cached, nothing is allocated
+		return Integer.valueOf(type);
+	}
+
+	/**
+	 * Reads a timestamp of extension type -1 in any of the formats timestamp
+	 * 32, 64 and 96. Nothing is allocated.
+	 * 
+	 * @param t
+	 *            Timestamp to set, can be reused for many calls
+	 * @return true if timestamp was set, false if object is null
+	 * @throws IOException
+	 *             If value could not be decoded correctly
+	 */
+	public boolean readTimestamp(MessagePaxTimestamp t) throws IOException {
+		int x = readByte();
+		if (isNil(x)) {
+			return false;
+		}
+		int len = readExtLength(x);
+		int type = (byte) readByte();
+		if (type != MessagePaxTimestamp.EXT_TYPE) {
+			throw new IOException("Extension type " + type
+					+ " is not a timestamp");
+		}
+		if (len == 4) {
+			t.set(readInt32() & 0xffffffffL, 0);
+		} else if (len == 8) {
+			long data = readInt64();
+			t.set(data & 0x3ffffffffL, checkNanos(data >>> 34));
+		} else if (len == 12) {
+			long nanos = readInt32() & 0xffffffffL;
+			t.set(readInt64(), checkNanos(nanos));
+		} else {
+			throw new IOException("Illegal timestamp length " + len);
+		}
+		return true;
+	}
+
+	/**
+	 * Checks the decoded nanoseconds of a timestamp
+	 * 
+	 * @param nanos
+	 *            Nanoseconds
+	 * @return Nanoseconds as int
+	 * @throws IOException
+	 *             If nanoseconds are not in range 0 to 999999999
+	 */
+	private static int checkNanos(long nanos) throws IOException {
+		if (nanos > 999999999) {
+			throw new IOException("Illegal timestamp nanoseconds " + nanos);
+		}
+		return (int) nanos;
+	}
+
+	/**
+	 * Reads a timestamp of extension type -1
+	 * 
+	 * @return Timestamp or null
+	 * @throws IOException
+	 *             If value could not be decoded correctly
+	 */
+	public MessagePaxTimestamp readTimestamp() throws IOException {
+		MessagePaxTimestamp t = new MessagePaxTimestamp();
+		return readTimestamp(t) ? t : null;
+	}
+
+	/**
+	 * Reads a UUID stored as fixext 16 of the given extension type
+	 * 
+	 * @param type
+	 *            Expected Extended Type ID
+	 * @return UUID or null
+	 * @throws IOException
+	 *             If value could not be decoded correctly
+	 */
+	public UUID readUuid(int type) throws IOException {
+		int x = readByte();
+		if (isNil(x)) {
+			return null;
+		}
+		if (MessagePaxFormat.of(x) != MessagePaxFormat.FIXEXT16) {
+			throw illegalType(x, "UUID");
+		}
+		int t = (byte) readByte();
+		if (t != (byte) type) {
+			throw new IOException("Extension type " + t + " is not a UUID");
+		}
+		long msb = readInt64();
+		return new UUID(msb, readInt64());
+	}
+
 	/**
 	 * Reads a BigInteger object from buffer
 	 * 
@@ -0,0 +1,780 @@
+package org.messagepax;
+
+import java.io.IOException;
+
+/**
+ * Indexed view on a MSGPACK value in a byte array, used for messages which
+ * are accessed many times. The data is parsed once into a compact tape of
+ * int values, no objects are created for the nested values.
+ * <p/>
+ * Each value is a node, identified by an int. The root value is node 0. The
+ * children of a list or map are looked up in constant time, values like
+ * strings or numbers are decoded on demand when a getter is called.
+ * 
+ * <pre>
+ * MessagePaxDocument doc = MessagePaxDocument.parse(buf, 0, len);
+ * int header = doc.find(doc.getRoot(), &quot;header&quot;);
+ * String tenant = doc.getString(doc.find(header, &quot;tenant&quot;));
+ * int third = doc.get(doc.find(doc.getRoot(), &quot;items&quot;), 2);
+ * </pre>
+ * 
+ * The array must not be changed as long as the document is used. The
+ * document is immutable after parsing and can be shared by several threads.
+ */
+public class MessagePaxDocument {
+
+	/** Number of tape entries per node */
+	private static final int STRIDE = 3;
+
+	/** Tape entry: offset of the header byte */
+	private static final int OFFSET = 0;
+
+	/**
+	 * Tape entry: number of elements of lists, entries of maps or bytes of
+	 * strings, byte arrays and extensions
+	 */
+	private static final int SIZE = 1;
+
+	/**
+	 * Tape entry: index of the first child in the children array for lists and
+	 * maps, offset of the payload for strings, byte arrays and extensions
+	 */
+	private static final int DATA = 2;
+
+	/** Buffer containing the data */
+	private final byte[] b;
+
+	/** Offset behind the parsed value */
+	private final int end;
+
+	/** Tape with {@link #STRIDE} entries per node */
+	private final int[] tape;
+
+	/** Number of nodes */
+	private final int nodes;
+
+	/**
+	 * Nodes of the children of all lists and maps. Map keys and values are
+	 * stored alternately.
+	 */
+	private final int[] children;
+
+	/**
+	 * Creates a document
+	 * 
+	 * @param b
+	 *            Buffer containing the data
+	 * @param end
+	 *            Offset behind the parsed value
+	 * @param tape
+	 *            Tape of the nodes
+	 * @param nodes
+	 *            Number of nodes
+	 * @param children
+	 *            Children of lists and maps
+	 */
+	private MessagePaxDocument(byte[] b, int end, int[] tape, int nodes,
+			int[] children) {
+		this.b = b;
+		this.end = end;
+		this.tape = tape;
+		this.nodes = nodes;
+		this.children = children;
+	}
+
+	/**
+	 * Parses one value starting at the beginning of the array
+	 * 
+	 * @param b
+	 *            Buffer containing the data
+	 * @return Document
+	 * @throws IOException
+	 *             If data could not be decoded correctly
+	 */
+	public static MessagePaxDocument parse(byte[] b) throws IOException {
+		return parse(b, 0, b.length);
+	}
+
+	/**
+	 * Parses one value in a linear pass and builds the tape.
+	 * 
+	 * @param b
+	 *            Buffer containing the data
+	 * @param off
+	 *            Offset of the value
+	 * @param len
+	 *            Number of bytes available for the value
+	 * @return Document
+	 * @throws IOException
+	 *             If data could not be decoded correctly or is truncated
+	 */
+	public static MessagePaxDocument parse(byte[] b, int off, int len)
+			throws IOException {
+		int limit = off + len;
+		int[] tape = new int[STRIDE * 16];
+		int nodes = 0;
+		int[] children = new int[16];
+		int childCount = 0;
+		// open containers: number of missing children and next child slot
+		int[] missing = new int[8];
+		int[] slot = new int[8];
+		int depth = 0;
+		int p = off;
+		do {
+			if (p >= limit) {
+				throw truncated(p);
+			}
+			if (tape.length < (nodes + 1) * STRIDE) {
+				tape = grow(tape, (nodes + 1) * STRIDE);
+			}
+			int node = nodes++;
+			int t = node * STRIDE;
+			tape[t + OFFSET] = p;
+			if (depth > 0) {
+				children[slot[depth - 1]++] = node;
+				missing[depth - 1]--;
+			}
+			int x = b[p++] & 0xff;
+			int size = 0;
+			int elements = 0;
+			switch (MessagePaxFormat.of(x)) {
+			case POSITIVE_FIXINT:
+			case NEGATIVE_FIXINT:
+			case NIL:
+			case BOOLEAN:
+				break;
+			case UINT8:
+			case INT8:
+				p += 1;
+				break;
+			case UINT16:
+			case INT16:
+				p += 2;
+				break;
+			case FLOAT32:
+			case UINT32:
+			case INT32:
+				p += 4;
+				break;
+			case FLOAT64:
+			case UINT64:
+			case INT64:
+				p += 8;
+				break;
+			case FIXSTR:
+				size = MessagePaxFormat.getInlineLength(x);
+				break;
+			case STR8:
+			case BIN8:
+				size = length(b, p, 1, limit);
+				p += 1;
+				break;
+			case STR16:
+			case BIN16:
+				size = length(b, p, 2, limit);
+				p += 2;
+				break;
+			case STR32:
+			case BIN32:
+				size = length(b, p, 4, limit);
+				p += 4;
+				break;
+			case FIXEXT1:
+			case FIXEXT2:
+			case FIXEXT4:
+			case FIXEXT8:
+			case FIXEXT16:
+				size = MessagePaxFormat.getInlineLength(x);
+				// type byte
+				p += 1;
+				break;
+			case EXT8:
+				size = length(b, p, 1, limit);
+				p += 2;
+				break;
+			case EXT16:
+				size = length(b, p, 2, limit);
+				p += 3;
+				break;
+			case EXT32:
+				size = length(b, p, 4, limit);
+				p += 5;
+				break;
+			case FIXARRAY:
+				size = MessagePaxFormat.getInlineLength(x);
+				elements = size;
+				break;
+			case ARRAY16:
+				size = length(b, p, 2, limit);
+				elements = size;
+				p += 2;
+				break;
+			case ARRAY32:
+				size = length(b, p, 4, limit);
+				elements = size;
+				p += 4;
+				break;
+			case FIXMAP:
+				size = MessagePaxFormat.getInlineLength(x);
+				elements = 2 * size;
+				break;
+			case MAP16:
+				size = length(b, p, 2, limit);
+				elements = 2 * size;
+				p += 2;
+				break;
+			case MAP32:
+				size = length(b, p, 4, limit);
+				elements = 2 * size;
+				p += 4;
+				break;
+			default:
+				throw new IOException("Illegal byte " + x + " at "
+						+ (p - 1));
+			}
+			tape[t + SIZE] = size;
+			MessagePaxType type = MessagePaxFormat.of(x).getType();
+			if (type == MessagePaxType.LIST || type == MessagePaxType.MAP) {
+				// every element needs at least one byte
+				if (elements < 0 || elements > limit - p) {
+					throw truncated(p);
+				}
+				tape[t + DATA] = childCount;
+				if (elements > 0) {
+					if (children.length < childCount + elements) {
+						children = grow(children, childCount + elements);
+					}
+					if (depth == missing.length) {
+						missing = grow(missing, depth + 1);
+						slot = grow(slot, depth + 1);
+					}
+					missing[depth] = elements;
+					slot[depth] = childCount;
+					depth++;
+					childCount += elements;
+				}
+			} else {
+				if (size < 0 || size > limit - p) {
+					throw truncated(limit);
+				}
+				tape[t + DATA] = p;
+				p += size;
+			}
+			while (depth > 0 && missing[depth - 1] == 0) {
+				depth--;
+			}
+		} while (depth > 0);
+		if (p > limit) {
+			throw truncated(limit);
+		}
+		return new MessagePaxDocument(b, p, tape, nodes, children);
+	}
+
+	/**
+	 * Reads a big endian length field
+	 * 
+	 * @param b
+	 *            Buffer
+	 * @param p
+	 *            Offset of the length field
+	 * @param n
+	 *            Number of bytes of the length field
+	 * @param limit
+	 *            Limit of the data
+	 * @return Length, negative if it does not fit into an int
+	 * @throws IOException
+	 *             If the length field is truncated
+	 */
+	private static int length(byte[] b, int p, int n, int limit)
+			throws IOException {
+		if (limit - p < n) {
+			throw truncated(limit);
+		}
+		int len = 0;
+		for (int i = 0; i < n; i++) {
+			len = (len << 8) | (b[p + i] & 0xff);
+		}
+		return len;
+	}
+
+	/**
+	 * Creates the exception for truncated data
+	 * 
+	 * @param p
+	 *            Offset where more data was expected
+	 * @return Exception to throw
+	 */
+	private static IOException truncated(int p) {
+		return new IOException("Data truncated at " + p);
+	}
+
+	/**
+	 * Returns a larger copy of the given array
+	 * 
+	 * @param a
+	 *            Array
+	 * @param min
+	 *            Minimum size of the new array
+	 * @return New array
+	 */
+	private static int[] grow(int[] a, int min) {
+		int[] ret = new int[Math.max(min, a.length * 2)];
+		System.arraycopy(a, 0, ret, 0, a.length);
+		return ret;
+	}
+
+	/**
+	 * Returns the root node
+	 * 
+	 * @return Root node
+	 */
+	public int getRoot() {
+		return 0;
+	}
+
+	/**
+	 * Returns the number of nodes
+	 * 
+	 * @return Number of nodes
+	 */
+	public int getNodeCount() {
+		return nodes;
+	}
+
+	/**
+	 * Returns the offset behind the parsed value
+	 * 
+	 * @return Offset behind the parsed value
+	 */
+	public int getEnd() {
+		return end;
+	}
+
+	/**
+	 * Returns the format of a node
+	 * 
+	 * @param node
+	 *            Node
+	 * @return Format
+	 */
+	public MessagePaxFormat getFormat(int node) {
+		return MessagePaxFormat.of(b[offset(node)]);
+	}
+
+	/**
+	 * Returns the type of a node
+	 * 
+	 * @param node
+	 *            Node
+	 * @return Type
+	 */
+	public MessagePaxType getType(int node) {
+		return getFormat(node).getType();
+	}
+
+	/**
+	 * Returns true if the node is NIL
+	 * 
+	 * @param node
+	 *            Node
+	 * @return true for NIL
+	 */
+	public boolean isNil(int node) {
+		return (b[offset(node)] & 0xff) == 0xc0;
+	}
+
+	/**
+	 * Returns the size of a node. This is the number of elements of lists,
+	 * the number of entries of maps and the number of bytes of strings, byte
+	 * arrays and extensions. It is 0 for other values.
+	 * 
+	 * @param node
+	 *            Node
+	 * @return Size
+	 */
+	public int size(int node) {
+		offset(node);
+		return tape[node * STRIDE + SIZE];
+	}
+
+	/**
+	 * Returns an element of a list
+	 * 
+	 * @param node
+	 *            List node
+	 * @param index
+	 *            Index of the element
+	 * @return Node of the element
+	 * @throws IOException
+	 *             If the node is not a list
+	 */
+	public int get(int node, int index) throws IOException {
+		return child(node, MessagePaxType.LIST, index);
+	}
+
+	/**
+	 * Returns the key of a map entry
+	 * 
+	 * @param node
+	 *            Map node
+	 * @param index
+	 *            Index of the entry
+	 * @return Node of the key
+	 * @throws IOException
+	 *             If the node is not a map
+	 */
+	public int getKey(int node, int index) throws IOException {
+		return child(node, MessagePaxType.MAP, 2 * index);
+	}
+
+	/**
+	 * Returns the value of a map entry
+	 * 
+	 * @param node
+	 *            Map node
+	 * @param index
+	 *            Index of the entry
+	 * @return Node of the value
+	 * @throws IOException
+	 *             If the node is not a map
+	 */
+	public int getValue(int node, int index) throws IOException {
+		return child(node, MessagePaxType.MAP, 2 * index + 1);
+	}
+
+	/**
+	 * Returns a child of a list or map
+	 * 
+	 * @param node
+	 *            List or map node
+	 * @param type
+	 *            Expected type
+	 * @param index
+	 *            Index in the children of the node
+	 * @return Node of the child
+	 * @throws IOException
+	 *             If the node has not the expected type
+	 */
+	private int child(int node, MessagePaxType type, int index)
+			throws IOException {
+		check(node, type);
+		int t = node * STRIDE;
+		int count = type == MessagePaxType.MAP ? 2 * tape[t + SIZE]
+				: tape[t + SIZE];
+		if (index < 0 || index >= count) {
+			throw new IndexOutOfBoundsException("Index " + index);
+		}
+		return children[tape[t + DATA] + index];
+	}
+
+	/**
+	 * Looks up the value of a string key in a map. The key is compared with
+	 * the raw bytes of the keys, they are not decoded.
+	 * 
+	 * @param node
+	 *            Map node
+	 * @param key
+	 *            Key
+	 * @return Node of the value or -1 if the key is not found
+	 * @throws IOException
+	 *             If the node is not a map
+	 */
+	public int find(int node, String key) throws IOException {
+		return find(node, key.getBytes(MessagePaxSerializer.STRING_ENCODING));
+	}
+
+	/**
+	 * Looks up the value of a UTF-8 encoded string key in a map. Use this
+	 * method with keys encoded in advance to avoid encoding them again and
+	 * again.
+	 * 
+	 * @param node
+	 *            Map node
+	 * @param key
+	 *            UTF-8 encoded key
+	 * @return Node of the value or -1 if the key is not found
+	 * @throws IOException
+	 *             If the node is not a map
+	 */
+	public int find(int node, byte[] key) throws IOException {
+		check(node, MessagePaxType.MAP);
+		int t = node * STRIDE;
+		int first = tape[t + DATA];
+		int last = first + 2 * tape[t + SIZE];
+		for (int c = first; c < last; c += 2) {
+			int k = children[c] * STRIDE;
+			if (tape[k + SIZE] == key.length
+					&& getFormat(children[c]).getType() == MessagePaxType.STRING) {
+				int data = tape[k + DATA];
+				int i = 0;
+				while (i < key.length && b[data + i] == key[i]) {
+					i++;
+				}
+				if (i == key.length) {
+					return children[c + 1];
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Decodes a boolean node
+	 * 
+	 * @param node
+	 *            Node
+	 * @return boolean value
+	 * @throws IOException
+	 *             If the node is not a boolean
+	 */
+	public boolean getBoolean(int node) throws IOException {
+		check(node, MessagePaxType.BOOLEAN);
+		return (b[offset(node)] & 0xff) == 0xc3;
+	}
+
+	/**
+	 * Decodes an integer node. Unsigned 64 bit values above
+	 * {@link Long#MAX_VALUE} are returned as negative values.
+	 * 
+	 * @param node
+	 *            Node
+	 * @return long value
+	 * @throws IOException
+	 *             If the node is not an integer
+	 */
+	public long getLong(int node) throws IOException {
+		int p = offset(node);
+		int x = b[p] & 0xff;
+		switch (MessagePaxFormat.of(x)) {
+		case POSITIVE_FIXINT:
+		case NEGATIVE_FIXINT:
+			return (byte) x;
+		case UINT8:
+			return b[p + 1] & 0xff;
+		case INT8:
+			return b[p + 1];
+		case UINT16:
+			return int16(p + 1) & 0xffff;
+		case INT16:
+			return (short) int16(p + 1);
+		case UINT32:
+			return int32(p + 1) & 0xffffffffL;
+		case INT32:
+			return int32(p + 1);
+		case UINT64:
+		case INT64:
+			return int64(p + 1);
+		default:
+			throw illegalType(node, MessagePaxType.INTEGER);
+		}
+	}
+
+	/**
+	 * Decodes an integer node which fits into an int
+	 * 
+	 * @param node
+	 *            Node
+	 * @return int value
+	 * @throws IOException
+	 *             If the node is not an integer or does not fit into an int
+	 */
+	public int getInt(int node) throws IOException {
+		long l = getLong(node);
+		if (l != (int) l) {
+			throw new IOException("Value " + l + " does not fit into an int");
+		}
+		return (int) l;
+	}
+
+	/**
+	 * Decodes a float or double node
+	 * 
+	 * @param node
+	 *            Node
+	 * @return double value
+	 * @throws IOException
+	 *             If the node is not a float or double
+	 */
+	public double getDouble(int node) throws IOException {
+		int p = offset(node);
+		switch (MessagePaxFormat.of(b[p])) {
+		case FLOAT32:
+			return Float.intBitsToFloat(int32(p + 1));
+		case FLOAT64:
+			return Double.longBitsToDouble(int64(p + 1));
+		default:
+			throw illegalType(node, MessagePaxType.FLOAT);
+		}
+	}
+
+	/**
+	 * Decodes a string node
+	 * 
+	 * @param node
+	 *            Node
+	 * @return String or null if node is NIL
+	 * @throws IOException
+	 *             If the node is not a string
+	 */
+	public String getString(int node) throws IOException {
+		if (isNil(node)) {
+			return null;
+		}
+		check(node, MessagePaxType.STRING);
+		int t = node * STRIDE;
+		return new String(b, tape[t + DATA], tape[t + SIZE],
+				MessagePaxSerializer.STRING_ENCODING);
+	}
+
+	/**
+	 * Returns a copy of the payload of a string, byte array or extension
+	 * node.
+	 * 
+	 * @param node
+	 *            Node
+	 * @return Payload or null if node is NIL
+	 * @throws IOException
+	 *             If the node has no payload
+	 */
+	public byte[] getBytes(int node) throws IOException {
+		if (isNil(node)) {
+			return null;
+		}
+		int t = node * STRIDE;
+		checkPayload(node);
+		byte[] ret = new byte[tape[t + SIZE]];
+		System.arraycopy(b, tape[t + DATA], ret, 0, ret.length);
+		return ret;
+	}
+
+	/**
+	 * Sets a slice to the payload of a string, byte array or extension node
+	 * without copying it.
+	 * 
+	 * @param node
+	 *            Node
+	 * @param slice
+	 *            Slice to set
+	 * @return true if slice was set, false if node is NIL
+	 * @throws IOException
+	 *             If the node has no payload
+	 */
+	public boolean getSlice(int node, MessagePaxSlice slice)
+			throws IOException {
+		if (isNil(node)) {
+			return false;
+		}
+		int t = node * STRIDE;
+		checkPayload(node);
+		slice.set(b, tape[t + DATA], tape[t + SIZE]);
+		return true;
+	}
+
+	/**
+	 * Returns the type of an extension node
+	 * 
+	 * @param node
+	 *            Node
+	 * @return Extension type
+	 * @throws IOException
+	 *             If the node is not an extension
+	 */
+	public int getExtType(int node) throws IOException {
+		check(node, MessagePaxType.EXTENSION);
+		return b[tape[node * STRIDE + DATA] - 1];
+	}
+
+	/**
+	 * Returns the offset of the header byte of a node
+	 * 
+	 * @param node
+	 *            Node
+	 * @return Offset in the buffer
+	 */
+	private int offset(int node) {
+		if (node < 0 || node >= nodes) {
+			throw new IndexOutOfBoundsException("Node " + node);
+		}
+		return tape[node * STRIDE + OFFSET];
+	}
+
+	/**
+	 * Checks the type of a node
+	 * 
+	 * @param node
+	 *            Node
+	 * @param type
+	 *            Expected type
+	 * @throws IOException
+	 *             If the node has another type
+	 */
+	private void check(int node, MessagePaxType type) throws IOException {
+		if (getType(node) != type) {
+			throw illegalType(node, type);
+		}
+	}
+
+	/**
+	 * Checks that a node is a string, byte array or extension
+	 * 
+	 * @param node
+	 *            Node
+	 * @throws IOException
+	 *             If the node has no payload
+	 */
+	private void checkPayload(int node) throws IOException {
+		MessagePaxType type = getType(node);
+		if (type != MessagePaxType.STRING && type != MessagePaxType.BINARY
+				&& type != MessagePaxType.EXTENSION) {
+			throw illegalType(node, MessagePaxType.BINARY);
+		}
+	}
+
+	/**
+	 * Creates the exception for an unexpected type
+	 * 
+	 * @param node
+	 *            Node
+	 * @param expected
+	 *            Expected type
+	 * @return Exception to throw
+	 */
+	private IOException illegalType(int node, MessagePaxType expected) {
+		return new IOException("Node " + node + " is " + getType(node) + ", "
+				+ expected + " expected");
+	}
+
+	/**
+	 * Reads a 16 bit big endian value
+	 * 
+	 * @param p
+	 *            Offset
+	 * @return Value in the lower 16 bits
+	 */
+	private int int16(int p) {
+		return ((b[p] & 0xff) << 8) | (b[p + 1] & 0xff);
+	}
+
+	/**
+	 * Reads a 32 bit big endian value
+	 * 
+	 * @param p
+	 *            Offset
+	 * @return Value
+	 */
+	private int int32(int p) {
+		return (b[p] << 24) | ((b[p + 1] & 0xff) << 16)
+				| ((b[p + 2] & 0xff) << 8) | (b[p + 3] & 0xff);
+	}
+
+	/**
+	 * Reads a 64 bit big endian value
+	 * 
+	 * @param p
+	 *            Offset
+	 * @return Value
+	 */
+	private long int64(int p) {
+		return ((long) int32(p) << 32) | (int32(p + 4) & 0xffffffffL);
+	}
+}
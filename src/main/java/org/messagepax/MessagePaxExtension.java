@@ -0,0 +1,49 @@
+package org.messagepax;
+
+import java.io.IOException;
+
+/**
+ * Encodes and decodes the payload of an application extension type.
+ * Extensions are registered in a {@link MessagePaxExtensionRegistry} with
+ * their type. They are stateless and can be shared by several threads.
+ * 
+ * @param <T>
+ *            Type of the objects
+ */
+public interface MessagePaxExtension<T> {
+
+	/**
+	 * Returns the payload length of an object
+	 * 
+	 * @param value
+	 *            Object
+	 * @return Number of bytes written by
+	 *         {@link #write(MessagePaxSerializer, Object)}
+	 */
+	int getLength(T value);
+
+	/**
+	 * Writes the payload of an object, the header is already written. Use the
+	 * add methods of the serializer to write the bytes.
+	 * 
+	 * @param s
+	 *            Serializer
+	 * @param value
+	 *            Object
+	 * @throws IOException
+	 *             If object could not be serialized
+	 */
+	void write(MessagePaxSerializer s, T value) throws IOException;
+
+	/**
+	 * Reads an object from its payload. The payload is only valid during the
+	 * call.
+	 * 
+	 * @param data
+	 *            Payload in the buffer of the deserializer
+	 * @return Object
+	 * @throws IOException
+	 *             If value could not be decoded correctly
+	 */
+	T read(MessagePaxSlice data) throws IOException;
+}
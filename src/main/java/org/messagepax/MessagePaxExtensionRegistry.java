@@ -0,0 +1,124 @@
+package org.messagepax;
+
+import java.io.IOException;
+
+/**
+ * Registry of application extension types. Extensions are stored in an array
+ * indexed by the type byte, so dispatching costs a single array access.
+ * <p/>
+ * Register all extensions before the registry is shared, reading and
+ * writing is thread-safe afterwards.
+ * 
+ * <pre>
+ * registry.register(MONEY, new MoneyExtension());
+ * registry.write(s, MONEY, amount);
+ * Money m = (Money) registry.read(d);
+ * </pre>
+ */
+public class MessagePaxExtensionRegistry {
+
+	/** Extensions indexed by the unsigned type byte */
+	private final MessagePaxExtension<?>[] extensions = new MessagePaxExtension<?>[256];
+
+	/**
+	 * Registers an extension
+	 * 
+	 * @param type
+	 *            Extended Type ID in range -128 to 127
+	 * @param extension
+	 *            Extension or null to remove the type
+	 * @throws IllegalArgumentException
+	 *             If the type is out of range
+	 */
+	public void register(int type, MessagePaxExtension<?> extension) {
+		if (type < -128 || type > 127) {
+			throw new IllegalArgumentException("Illegal extension type " + type);
+		}
+		extensions[type & 0xff] = extension;
+	}
+
+	/**
+	 * Returns the extension of a type
+	 * 
+	 * @param type
+	 *            Extended Type ID
+	 * @return Extension or null if type is not registered
+	 */
+	public MessagePaxExtension<?> get(int type) {
+		return extensions[type & 0xff];
+	}
+
+	/**
+	 * Writes an object with the extension of the given type. If object is null
+	 * a MSGPACK NIL object is stored.
+	 * 
+	 * @param s
+	 *            Serializer
+	 * @param type
+	 *            Extended Type ID
+	 * @param value
+	 *            Object or null
+	 * @throws IOException
+	 *             If object could not be serialized or type is not registered
+	 */
+	@SuppressWarnings("unchecked")
+	public void write(MessagePaxSerializer s, int type, Object value)
+			throws IOException {
+		s.writeExt(type, (MessagePaxExtension<Object>) extension(type), value);
+	}
+
+	/**
+	 * Reads an extension object and decodes it with the registered extension
+	 * of its type
+	 * 
+	 * @param d
+	 *            Deserializer
+	 * @return Object or null
+	 * @throws IOException
+	 *             If value could not be decoded correctly or type is not
+	 *             registered
+	 */
+	public Object read(MessagePaxDeserializer d) throws IOException {
+		return read(d, new MessagePaxSlice());
+	}
+
+	/**
+	 * Reads an extension object and decodes it with the registered extension
+	 * of its type
+	 * 
+	 * @param d
+	 *            Deserializer
+	 * @param data
+	 *            Slice used for the payload, can be reused for many calls
+	 * @return Object or null
+	 * @throws IOException
+	 *             If value could not be decoded correctly or type is not
+	 *             registered
+	 */
+	public Object read(MessagePaxDeserializer d, MessagePaxSlice data)
+			throws IOException {
+		Integer type = d.readExt(data);
+		if (type == null) {
+			return null;
+		}
+		return extension(type.intValue()).read(data);
+	}
+
+	/**
+	 * Returns the extension of a type
+	 * 
+	 * @param type
+	 *            Extended Type ID
+	 * @return Extension
+	 * @throws IOException
+	 *             If type is not registered
+	 */
+	private MessagePaxExtension<?> extension(int type) throws IOException {
+		MessagePaxExtension<?> e = extensions[type & 0xff];
+		if (e == null) {
+			throw new IOException("Extension type " + (byte) type
+					+ " is not registered");
+		}
+		return e;
+	}
+}
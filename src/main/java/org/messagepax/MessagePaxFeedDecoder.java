@@ -0,0 +1,673 @@
+package org.messagepax;
+
+import java.io.IOException;
+
+/**
+ * Incremental decoder for MSGPACK data arriving in chunks, e.g. from a non
+ * blocking socket. Data is passed in with {@link #feed(byte[], int, int)} as
+ * it arrives. The decoder can stop at any byte boundary and continues with the
+ * next chunk, even inside of nested lists and maps.
+ * <p/>
+ * Decoded values are reported to a {@link Handler}. String, byte array and
+ * extended data payloads are passed as slices of the fed chunk. Only if a
+ * payload is split over several chunks it is collected in an internal buffer
+ * first. A complete message is never copied.
+ * <p/>
+ * The length of a payload is limited, by default to
+ * {@link #DEFAULT_MAX_PAYLOAD_LENGTH}, so a single header received from the
+ * network cannot make the decoder allocate huge buffers. The buffer of split
+ * payloads grows with the received data and is dropped after large payloads.
+ * 
+ * <pre>
+ * MessagePaxFeedDecoder decoder = new MessagePaxFeedDecoder(handler);
+ * int n = channel.read(bb);
+ * decoder.feed(bb.array(), 0, n);
+ * </pre>
+ */
+public class MessagePaxFeedDecoder {
+
+	/**
+	 * Receives the decoded values. Lists and maps are reported with a begin
+	 * and end call, their elements are reported in between.
+	 */
+	public interface Handler {
+
+		/**
+		 * Called for NIL
+		 * 
+		 * @throws IOException
+		 *             If value could not be handled
+		 */
+		void onNil() throws IOException;
+
+		/**
+		 * Called for a boolean value
+		 * 
+		 * @param v
+		 *            boolean value
+		 * @throws IOException
+		 *             If value could not be handled
+		 */
+		void onBoolean(boolean v) throws IOException;
+
+		/**
+		 * Called for an integer value of any size. Unsigned 64 bit values
+		 * larger than {@link Long#MAX_VALUE} are passed as negative values.
+		 * 
+		 * @param v
+		 *            Integer value
+		 * @throws IOException
+		 *             If value could not be handled
+		 */
+		void onInteger(long v) throws IOException;
+
+		/**
+		 * Called for a float value
+		 * 
+		 * @param v
+		 *            float value
+		 * @throws IOException
+		 *             If value could not be handled
+		 */
+		void onFloat(float v) throws IOException;
+
+		/**
+		 * Called for a double value
+		 * 
+		 * @param v
+		 *            double value
+		 * @throws IOException
+		 *             If value could not be handled
+		 */
+		void onDouble(double v) throws IOException;
+
+		/**
+		 * Called for a string. The bytes are only valid during the call.
+		 * 
+		 * @param b
+		 *            Buffer containing the UTF-8 encoded string
+		 * @param off
+		 *            Offset of the string
+		 * @param len
+		 *            Length of the string in bytes
+		 * @throws IOException
+		 *             If value could not be handled
+		 */
+		void onString(byte[] b, int off, int len) throws IOException;
+
+		/**
+		 * Called for a byte array. The bytes are only valid during the call.
+		 * 
+		 * @param b
+		 *            Buffer containing the byte array
+		 * @param off
+		 *            Offset of the byte array
+		 * @param len
+		 *            Length of the byte array
+		 * @throws IOException
+		 *             If value could not be handled
+		 */
+		void onByteArray(byte[] b, int off, int len) throws IOException;
+
+		/**
+		 * Called for extended data. The bytes are only valid during the call.
+		 * 
+		 * @param type
+		 *            Extended type ID
+		 * @param b
+		 *            Buffer containing the data
+		 * @param off
+		 *            Offset of the data
+		 * @param len
+		 *            Length of the data
+		 * @throws IOException
+		 *             If value could not be handled
+		 */
+		void onExtData(int type, byte[] b, int off, int len)
+				throws IOException;
+
+		/**
+		 * Called at the beginning of a list
+		 * 
+		 * @param size
+		 *            Number of elements
+		 * @throws IOException
+		 *             If value could not be handled
+		 */
+		void onListBegin(int size) throws IOException;
+
+		/**
+		 * Called after the last element of a list
+		 * 
+		 * @throws IOException
+		 *             If value could not be handled
+		 */
+		void onListEnd() throws IOException;
+
+		/**
+		 * Called at the beginning of a map
+		 * 
+		 * @param size
+		 *            Number of key value pairs
+		 * @throws IOException
+		 *             If value could not be handled
+		 */
+		void onMapBegin(int size) throws IOException;
+
+		/**
+		 * Called after the last value of a map
+		 * 
+		 * @throws IOException
+		 *             If value could not be handled
+		 */
+		void onMapEnd() throws IOException;
+
+		/**
+		 * Called whenever a top level value is complete
+		 * 
+		 * @throws IOException
+		 *             If value could not be handled
+		 */
+		void onValue() throws IOException;
+	}
+
+	/** Default maximum length of strings, byte arrays and extended data */
+	public static final int DEFAULT_MAX_PAYLOAD_LENGTH = 16 * 1024 * 1024;
+
+	/** Size of the payload buffer which is kept for the next payloads */
+	private static final int RETAINED_PAYLOAD_SIZE = 64 * 1024;
+
+	/** Empty payload buffer */
+	private static final byte[] EMPTY = new byte[0];
+
+	/**
+	 * Number of bytes following the first byte which belong to the header.
+	 * Illegal first bytes are marked with -1.
+	 */
+	private static final byte[] HEADER_EXTRA = new byte[256];
+
+	static {
+		HEADER_EXTRA[0xc1] = -1;
+		HEADER_EXTRA[0xc4] = 1;
+		HEADER_EXTRA[0xc5] = 2;
+		HEADER_EXTRA[0xc6] = 4;
+		HEADER_EXTRA[0xc7] = 2;
+		HEADER_EXTRA[0xc8] = 3;
+		HEADER_EXTRA[0xc9] = 5;
+		HEADER_EXTRA[0xca] = 4;
+		HEADER_EXTRA[0xcb] = 8;
+		HEADER_EXTRA[0xcc] = 1;
+		HEADER_EXTRA[0xcd] = 2;
+		HEADER_EXTRA[0xce] = 4;
+		HEADER_EXTRA[0xcf] = 8;
+		HEADER_EXTRA[0xd0] = 1;
+		HEADER_EXTRA[0xd1] = 2;
+		HEADER_EXTRA[0xd2] = 4;
+		HEADER_EXTRA[0xd3] = 8;
+		for (int i = 0xd4; i <= 0xd8; i++) {
+			HEADER_EXTRA[i] = 1;
+		}
+		HEADER_EXTRA[0xd9] = 1;
+		HEADER_EXTRA[0xda] = 2;
+		HEADER_EXTRA[0xdb] = 4;
+		HEADER_EXTRA[0xdc] = 2;
+		HEADER_EXTRA[0xdd] = 4;
+		HEADER_EXTRA[0xde] = 2;
+		HEADER_EXTRA[0xdf] = 4;
+	}
+
+	/** Receiver of decoded values */
+	private final Handler handler;
+
+	/** Maximum length of a payload */
+	private final int maxPayloadLength;
+
+	/** Header bytes collected so far if the header is split */
+	private final byte[] hdr = new byte[9];
+
+	/** Number of collected header bytes, 0 if waiting for a new value */
+	private int hdrLen;
+
+	/** Total length of the header which is collected */
+	private int hdrNeed;
+
+	/** First byte of the value whose payload is collected, -1 if none */
+	private int payloadType = -1;
+
+	/** Extended type ID of the collected payload */
+	private int extType;
+
+	/** Buffer for payloads split over several chunks */
+	private byte[] payload = EMPTY;
+
+	/** Length of the collected payload */
+	private int payloadLen;
+
+	/** Number of payload bytes collected so far */
+	private int payloadPos;
+
+	/** Number of elements left in each open list or map */
+	private long[] remaining = new long[8];
+
+	/** true for each open map, false for lists */
+	private boolean[] isMap = new boolean[8];
+
+	/** Number of open lists and maps */
+	private int depth;
+
+	/** Number of top level values completed by the actual feed call */
+	private int values;
+
+	/**
+	 * Creates a decoder reporting to the given handler.
+	 * 
+	 * @param handler
+	 *            Receiver of decoded values
+	 */
+	public MessagePaxFeedDecoder(Handler handler) {
+		this(handler, DEFAULT_MAX_PAYLOAD_LENGTH);
+	}
+
+	/**
+	 * Creates a decoder reporting to the given handler.
+	 * 
+	 * @param handler
+	 *            Receiver of decoded values
+	 * @param maxPayloadLength
+	 *            Maximum length of strings, byte arrays and extended data
+	 * @throws IllegalArgumentException
+	 *             If maximum length is negative
+	 */
+	public MessagePaxFeedDecoder(Handler handler, int maxPayloadLength) {
+		if (maxPayloadLength < 0) {
+			throw new IllegalArgumentException("Illegal maximum payload length "
+					+ maxPayloadLength);
+		}
+		this.handler = handler;
+		this.maxPayloadLength = maxPayloadLength;
+	}
+
+	/**
+	 * Decodes the given chunk. Values which are not complete at the end of the
+	 * chunk are continued with the next call.
+	 * 
+	 * @param chunk
+	 *            Buffer containing the received data
+	 * @param off
+	 *            Offset of the data
+	 * @param len
+	 *            Length of the data
+	 * @return Number of top level values completed by this call
+	 * @throws IOException
+	 *             If data could not be decoded or handled
+	 */
+	public int feed(byte[] chunk, int off, int len) throws IOException {
+		int end = off + len;
+		values = 0;
+		while (off < end) {
+			if (payloadType >= 0) {
+				// continue collecting a split payload
+				int n = Math.min(payloadLen - payloadPos, end - off);
+				growPayload(payloadPos + n);
+				System.arraycopy(chunk, off, payload, payloadPos, n);
+				payloadPos += n;
+				off += n;
+				if (payloadPos == payloadLen) {
+					int x = payloadType;
+					payloadType = -1;
+					emitPayload(x, payload, 0, payloadLen);
+					if (payload.length > RETAINED_PAYLOAD_SIZE) {
+						payload = EMPTY;
+					}
+				}
+			} else if (hdrLen > 0) {
+				// continue collecting a split header
+				int n = Math.min(hdrNeed - hdrLen, end - off);
+				System.arraycopy(chunk, off, hdr, hdrLen, n);
+				hdrLen += n;
+				off += n;
+				if (hdrLen == hdrNeed) {
+					hdrLen = 0;
+					int plen = header(hdr[0] & 0xff, hdr, 1);
+					off = startPayload(hdr[0] & 0xff, plen, chunk, off, end);
+				}
+			} else {
+				int x = chunk[off++] & 0xff;
+				int extra = HEADER_EXTRA[x];
+				if (extra < 0) {
+					throw new IOException("Illegal type " + x);
+				} else if (end - off >= extra) {
+					// header complete in this chunk
+					int plen = header(x, chunk, off);
+					off = startPayload(x, plen, chunk, off + extra, end);
+				} else {
+					hdr[0] = (byte) x;
+					hdrLen = 1 + end - off;
+					hdrNeed = 1 + extra;
+					System.arraycopy(chunk, off, hdr, 1, end - off);
+					off = end;
+				}
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Returns true if the decoder is not inside of a value
+	 * 
+	 * @return true if all fed data has been decoded completely
+	 */
+	public boolean isComplete() {
+		return hdrLen == 0 && payloadType < 0 && depth == 0;
+	}
+
+	/**
+	 * Drops all partially decoded data.
+	 */
+	public void reset() {
+		hdrLen = 0;
+		payloadType = -1;
+		depth = 0;
+		if (payload.length > RETAINED_PAYLOAD_SIZE) {
+			payload = EMPTY;
+		}
+	}
+
+	/**
+	 * Decodes a complete header. Scalar values and container headers are
+	 * reported directly.
+	 * 
+	 * @param x
+	 *            First byte
+	 * @param src
+	 *            Buffer containing the header bytes following the first byte
+	 * @param p
+	 *            Position of the bytes following the first byte
+	 * @return Payload length for string, byte array and extended data, -1 for
+	 *         all other types
+	 * @throws IOException
+	 *             If data could not be decoded or handled
+	 */
+	private int header(int x, byte[] src, int p) throws IOException {
+		if (x < 0x80) {
+			handler.onInteger(x);
+		} else if (x >= 0xe0) {
+			handler.onInteger(x - 0x100);
+		} else if (x < 0x90) {
+			begin(true, x & 0x0f);
+			return -1;
+		} else if (x < 0xa0) {
+			begin(false, x & 0x0f);
+			return -1;
+		} else if (x < 0xc0) {
+			return x & 0x1f;
+		} else {
+			switch (x) {
+			case 0xc0:
+				handler.onNil();
+				break;
+			case 0xc2:
+				handler.onBoolean(false);
+				break;
+			case 0xc3:
+				handler.onBoolean(true);
+				break;
+			case 0xc4:
+			case 0xd9:
+				return src[p] & 0xff;
+			case 0xc5:
+			case 0xda:
+				return (int) be(src, p, 2);
+			case 0xc6:
+			case 0xdb:
+				return length(be(src, p, 4));
+			case 0xc7:
+				extType = src[p + 1];
+				return src[p] & 0xff;
+			case 0xc8:
+				extType = src[p + 2];
+				return (int) be(src, p, 2);
+			case 0xc9:
+				extType = src[p + 4];
+				return length(be(src, p, 4));
+			case 0xca:
+				handler.onFloat(Float.intBitsToFloat((int) be(src, p, 4)));
+				break;
+			case 0xcb:
+				handler.onDouble(Double.longBitsToDouble(be(src, p, 8)));
+				break;
+			case 0xcc:
+			case 0xcd:
+			case 0xce:
+			case 0xcf:
+				handler.onInteger(be(src, p, HEADER_EXTRA[x]));
+				break;
+			case 0xd0:
+				handler.onInteger(src[p]);
+				break;
+			case 0xd1:
+				handler.onInteger((short) be(src, p, 2));
+				break;
+			case 0xd2:
+				handler.onInteger((int) be(src, p, 4));
+				break;
+			case 0xd3:
+				handler.onInteger(be(src, p, 8));
+				break;
+			case 0xd4:
+			case 0xd5:
+			case 0xd6:
+			case 0xd7:
+			case 0xd8:
+				extType = src[p];
+				return 1 << (x - 0xd4);
+			case 0xdc:
+				begin(false, be(src, p, 2));
+				return -1;
+			case 0xdd:
+				begin(false, be(src, p, 4));
+				return -1;
+			case 0xde:
+				begin(true, be(src, p, 2));
+				return -1;
+			case 0xdf:
+				begin(true, be(src, p, 4));
+				return -1;
+			default:
+				throw new IOException("Illegal type " + x);
+			}
+		}
+		valueDone();
+		return -1;
+	}
+
+	/**
+	 * Reports the payload if it is complete in the chunk or starts collecting
+	 * it otherwise.
+	 * 
+	 * @param x
+	 *            First byte of the value
+	 * @param plen
+	 *            Payload length or -1 if there is no payload
+	 * @param chunk
+	 *            Actual chunk
+	 * @param off
+	 *            Position of the payload in the chunk
+	 * @param end
+	 *            End of the chunk
+	 * @return New position in the chunk
+	 * @throws IOException
+	 *             If data could not be handled
+	 */
+	private int startPayload(int x, int plen, byte[] chunk, int off, int end)
+			throws IOException {
+		if (plen < 0) {
+			return off;
+		} else if (plen > maxPayloadLength) {
+			throw new IOException("Payload length " + plen
+					+ " exceeds maximum " + maxPayloadLength);
+		} else if (end - off >= plen) {
+			emitPayload(x, chunk, off, plen);
+			return off + plen;
+		} else {
+			payloadType = x;
+			payloadLen = plen;
+			payloadPos = 0;
+			growPayload(end - off);
+			payloadPos = end - off;
+			System.arraycopy(chunk, off, payload, 0, payloadPos);
+			return end;
+		}
+	}
+
+	/**
+	 * Grows the payload buffer with the received data, at most to the length
+	 * of the collected payload.
+	 * 
+	 * @param need
+	 *            Number of bytes which need to fit into the buffer
+	 */
+	private void growPayload(int need) {
+		if (payload.length < need) {
+			int size = Math.max(need, Math.max(1024, payload.length * 2));
+			byte[] p = new byte[Math.min(size, payloadLen)];
+			System.arraycopy(payload, 0, p, 0, payloadPos);
+			payload = p;
+		}
+	}
+
+	/**
+	 * Reports a complete payload
+	 * 
+	 * @param x
+	 *            First byte of the value
+	 * @param src
+	 *            Buffer containing the payload
+	 * @param off
+	 *            Offset of the payload
+	 * @param len
+	 *            Length of the payload
+	 * @throws IOException
+	 *             If data could not be handled
+	 */
+	private void emitPayload(int x, byte[] src, int off, int len)
+			throws IOException {
+		if (x <= 0xbf || (x >= 0xd9 && x <= 0xdb)) {
+			handler.onString(src, off, len);
+		} else if (x >= 0xc4 && x <= 0xc6) {
+			handler.onByteArray(src, off, len);
+		} else {
+			handler.onExtData(extType, src, off, len);
+		}
+		valueDone();
+	}
+
+	/**
+	 * Opens a list or map
+	 * 
+	 * @param map
+	 *            true for maps, false for lists
+	 * @param size
+	 *            Number of elements or key value pairs
+	 * @throws IOException
+	 *             If data could not be handled
+	 */
+	private void begin(boolean map, long size) throws IOException {
+		int n = length(size);
+		if (map) {
+			handler.onMapBegin(n);
+		} else {
+			handler.onListBegin(n);
+		}
+		if (n == 0) {
+			end(map);
+			return;
+		}
+		if (depth == remaining.length) {
+			long[] r = new long[depth * 2];
+			System.arraycopy(remaining, 0, r, 0, depth);
+			remaining = r;
+			boolean[] m = new boolean[depth * 2];
+			System.arraycopy(isMap, 0, m, 0, depth);
+			isMap = m;
+		}
+		remaining[depth] = map ? 2L * n : n;
+		isMap[depth] = map;
+		depth++;
+	}
+
+	/**
+	 * Closes a list or map
+	 * 
+	 * @param map
+	 *            true for maps, false for lists
+	 * @throws IOException
+	 *             If data could not be handled
+	 */
+	private void end(boolean map) throws IOException {
+		if (map) {
+			handler.onMapEnd();
+		} else {
+			handler.onListEnd();
+		}
+		valueDone();
+	}
+
+	/**
+	 * Called after each complete value. Closes all lists and maps which are
+	 * complete afterwards.
+	 * 
+	 * @throws IOException
+	 *             If data could not be handled
+	 */
+	private void valueDone() throws IOException {
+		while (depth > 0) {
+			if (--remaining[depth - 1] > 0) {
+				return;
+			}
+			depth--;
+			if (isMap[depth]) {
+				handler.onMapEnd();
+			} else {
+				handler.onListEnd();
+			}
+		}
+		values++;
+		handler.onValue();
+	}
+
+	/**
+	 * Checks a length information
+	 * 
+	 * @param len
+	 *            Unsigned length
+	 * @return Length
+	 * @throws IOException
+	 *             If length is not supported
+	 */
+	private static int length(long len) throws IOException {
+		if (len > Integer.MAX_VALUE) {
+			throw new IOException("Length not supported " + len);
+		}
+		return (int) len;
+	}
+
+	/**
+	 * Reads a big endian unsigned value
+	 * 
+	 * @param src
+	 *            Buffer
+	 * @param p
+	 *            Position
+	 * @param n
+	 *            Number of bytes
+	 * @return Value
+	 */
+	private static long be(byte[] src, int p, int n) {
+		long ret = 0;
+		for (int i = 0; i < n; i++) {
+			ret = (ret << 8) | (src[p + i] & 0xff);
+		}
+		return ret;
+	}
+}
@@ -0,0 +1,202 @@
+package org.messagepax;
+
+/**
+ * Formats of the MSGPACK specification. Each value starts with a header byte
+ * which defines its format. The format of a header byte is looked up in a
+ * precomputed table, so decoding does not need to test the byte range by
+ * range.
+ * <p/>
+ * Some formats store a length in the header byte itself, like fixstr or
+ * fixarray. This length is available through {@link #getInlineLength(int)}.
+ */
+public enum MessagePaxFormat {
+
+	/** 7 bit positive integer, 0x00 - 0x7f */
+	POSITIVE_FIXINT(MessagePaxType.INTEGER, 0x00, 0x7f),
+
+	/** Map with up to 15 elements, 0x80 - 0x8f */
+	FIXMAP(MessagePaxType.MAP, 0x80, 0x8f),
+
+	/** Array with up to 15 elements, 0x90 - 0x9f */
+	FIXARRAY(MessagePaxType.LIST, 0x90, 0x9f),
+
+	/** String with up to 31 bytes, 0xa0 - 0xbf */
+	FIXSTR(MessagePaxType.STRING, 0xa0, 0xbf),
+
+	/** NIL, 0xc0 */
+	NIL(MessagePaxType.NIL, 0xc0, 0xc0),
+
+	/** Header byte which is never used, 0xc1 */
+	NEVER_USED(null, 0xc1, 0xc1),
+
+	/** false or true, 0xc2 - 0xc3 */
+	BOOLEAN(MessagePaxType.BOOLEAN, 0xc2, 0xc3),
+
+	/** Byte array with 8 bit length, 0xc4 */
+	BIN8(MessagePaxType.BINARY, 0xc4, 0xc4),
+
+	/** Byte array with 16 bit length, 0xc5 */
+	BIN16(MessagePaxType.BINARY, 0xc5, 0xc5),
+
+	/** Byte array with 32 bit length, 0xc6 */
+	BIN32(MessagePaxType.BINARY, 0xc6, 0xc6),
+
+	/** Extension with 8 bit length, 0xc7 */
+	EXT8(MessagePaxType.EXTENSION, 0xc7, 0xc7),
+
+	/** Extension with 16 bit length, 0xc8 */
+	EXT16(MessagePaxType.EXTENSION, 0xc8, 0xc8),
+
+	/** Extension with 32 bit length, 0xc9 */
+	EXT32(MessagePaxType.EXTENSION, 0xc9, 0xc9),
+
+	/** Float (32 bit), 0xca */
+	FLOAT32(MessagePaxType.FLOAT, 0xca, 0xca),
+
+	/** Double (64 bit), 0xcb */
+	FLOAT64(MessagePaxType.FLOAT, 0xcb, 0xcb),
+
+	/** Unsigned 8 bit integer, 0xcc */
+	UINT8(MessagePaxType.INTEGER, 0xcc, 0xcc),
+
+	/** Unsigned 16 bit integer, 0xcd */
+	UINT16(MessagePaxType.INTEGER, 0xcd, 0xcd),
+
+	/** Unsigned 32 bit integer, 0xce */
+	UINT32(MessagePaxType.INTEGER, 0xce, 0xce),
+
+	/** Unsigned 64 bit integer, 0xcf */
+	UINT64(MessagePaxType.INTEGER, 0xcf, 0xcf),
+
+	/** Signed 8 bit integer, 0xd0 */
+	INT8(MessagePaxType.INTEGER, 0xd0, 0xd0),
+
+	/** Signed 16 bit integer, 0xd1 */
+	INT16(MessagePaxType.INTEGER, 0xd1, 0xd1),
+
+	/** Signed 32 bit integer, 0xd2 */
+	INT32(MessagePaxType.INTEGER, 0xd2, 0xd2),
+
+	/** Signed 64 bit integer, 0xd3 */
+	INT64(MessagePaxType.INTEGER, 0xd3, 0xd3),
+
+	/** Extension with 1 byte of data, 0xd4 */
+	FIXEXT1(MessagePaxType.EXTENSION, 0xd4, 0xd4),
+
+	/** Extension with 2 bytes of data, 0xd5 */
+	FIXEXT2(MessagePaxType.EXTENSION, 0xd5, 0xd5),
+
+	/** Extension with 4 bytes of data, 0xd6 */
+	FIXEXT4(MessagePaxType.EXTENSION, 0xd6, 0xd6),
+
+	/** Extension with 8 bytes of data, 0xd7 */
+	FIXEXT8(MessagePaxType.EXTENSION, 0xd7, 0xd7),
+
+	/** Extension with 16 bytes of data, 0xd8 */
+	FIXEXT16(MessagePaxType.EXTENSION, 0xd8, 0xd8),
+
+	/** String with 8 bit length, 0xd9 */
+	STR8(MessagePaxType.STRING, 0xd9, 0xd9),
+
+	/** String with 16 bit length, 0xda */
+	STR16(MessagePaxType.STRING, 0xda, 0xda),
+
+	/** String with 32 bit length, 0xdb */
+	STR32(MessagePaxType.STRING, 0xdb, 0xdb),
+
+	/** Array with 16 bit length, 0xdc */
+	ARRAY16(MessagePaxType.LIST, 0xdc, 0xdc),
+
+	/** Array with 32 bit length, 0xdd */
+	ARRAY32(MessagePaxType.LIST, 0xdd, 0xdd),
+
+	/** Map with 16 bit length, 0xde */
+	MAP16(MessagePaxType.MAP, 0xde, 0xde),
+
+	/** Map with 32 bit length, 0xdf */
+	MAP32(MessagePaxType.MAP, 0xdf, 0xdf),
+
+	/** 5 bit negative integer, 0xe0 - 0xff */
+	NEGATIVE_FIXINT(MessagePaxType.INTEGER, 0xe0, 0xff);
+
+	/** Format of each header byte */
+	private static final MessagePaxFormat[] FORMATS = new MessagePaxFormat[256];
+
+	/** Length stored in each header byte, 0 if there is none */
+	private static final byte[] INLINE_LENGTHS = new byte[256];
+
+	static {
+		for (MessagePaxFormat f : values()) {
+			for (int x = f.first; x <= f.last; x++) {
+				FORMATS[x] = f;
+			}
+		}
+		for (int x = 0x80; x <= 0x9f; x++) {
+			INLINE_LENGTHS[x] = (byte) (x & 0x0f);
+		}
+		for (int x = 0xa0; x <= 0xbf; x++) {
+			INLINE_LENGTHS[x] = (byte) (x & 0x1f);
+		}
+		for (int x = 0xd4; x <= 0xd8; x++) {
+			INLINE_LENGTHS[x] = (byte) (1 << (x - 0xd4));
+		}
+	}
+
+	/** Type family */
+	private final MessagePaxType type;
+
+	/** First header byte of this format */
+	private final int first;
+
+	/** Last header byte of this format */
+	private final int last;
+
+	/**
+	 * Creates a format
+	 * 
+	 * @param type
+	 *            Type family
+	 * @param first
+	 *            First header byte
+	 * @param last
+	 *            Last header byte
+	 */
+	private MessagePaxFormat(MessagePaxType type, int first, int last) {
+		this.type = type;
+		this.first = first;
+		this.last = last;
+	}
+
+	/**
+	 * Returns the type family of this format
+	 * 
+	 * @return Type family or null for {@link #NEVER_USED}
+	 */
+	public MessagePaxType getType() {
+		return type;
+	}
+
+	/**
+	 * Returns the format of the given header byte
+	 * 
+	 * @param x
+	 *            Header byte, 0 - 255
+	 * @return Format
+	 */
+	public static MessagePaxFormat of(int x) {
+		return FORMATS[x & 0xff];
+	}
+
+	/**
+	 * Returns the length stored in the given header byte. This is the number
+	 * of elements of fixarray and fixmap, the number of bytes of fixstr and
+	 * the number of data bytes of fixext.
+	 * 
+	 * @param x
+	 *            Header byte, 0 - 255
+	 * @return Length stored in the header byte, 0 for other formats
+	 */
+	public static int getInlineLength(int x) {
+		return INLINE_LENGTHS[x & 0xff];
+	}
+}
@@ -0,0 +1,145 @@
+package org.messagepax;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Versioned dictionary of map keys. In key ordinal mode map keys contained in
+ * the dictionary are written as their index instead of their name, the first
+ * 128 keys take a single byte. Keys not contained in the dictionary are still
+ * written as strings, so both forms may be mixed within one map.
+ * <p/>
+ * Both ends need the same dictionary. It can be exchanged with
+ * {@link #write(MessagePaxSerializer)} and
+ * {@link #read(MessagePaxDeserializer)}, the version allows to detect a
+ * mismatch. Keys may only be appended in newer versions.
+ * <p/>
+ * A dictionary is immutable and thread-safe.
+ */
+public final class MessagePaxKeyDictionary {
+
+	/** Version of the dictionary */
+	private final int version;
+
+	/** Keys by index */
+	private final String[] keys;
+
+	/** Indexes by key */
+	private final Map<String, Integer> indexes;
+
+	/**
+	 * Creates a dictionary
+	 * 
+	 * @param version
+	 *            Version of the dictionary
+	 * @param keys
+	 *            Keys in order of their index
+	 * @throws IllegalArgumentException
+	 *             If a key is null or contained twice
+	 */
+	public MessagePaxKeyDictionary(int version, String... keys) {
+		this.version = version;
+		this.keys = keys.clone();
+		this.indexes = new HashMap<String, Integer>(keys.length * 2);
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] == null) {
+				throw new IllegalArgumentException("Key " + i + " is null");
+			}
+			if (indexes.put(keys[i], i) != null) {
+				throw new IllegalArgumentException("Key " + keys[i]
+						+ " is contained twice");
+			}
+		}
+	}
+
+	/**
+	 * Returns the version of the dictionary
+	 * 
+	 * @return Version
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * Returns the number of keys
+	 * 
+	 * @return Number of keys
+	 */
+	public int size() {
+		return keys.length;
+	}
+
+	/**
+	 * Returns the key of an index
+	 * 
+	 * @param index
+	 *            Index
+	 * @return Key or null if index is unknown
+	 */
+	public String getKey(int index) {
+		return index >= 0 && index < keys.length ? keys[index] : null;
+	}
+
+	/**
+	 * Returns the index of a key
+	 * 
+	 * @param key
+	 *            Key
+	 * @return Index or -1 if key is not contained
+	 */
+	public int indexOf(String key) {
+		Integer i = indexes.get(key);
+		return i == null ? -1 : i.intValue();
+	}
+
+	/**
+	 * Writes the descriptor of the dictionary as list of the version and the
+	 * keys.
+	 * 
+	 * @param s
+	 *            Serializer
+	 * @throws IOException
+	 *             If dictionary could not be serialized
+	 */
+	public void write(MessagePaxSerializer s) throws IOException {
+		s.writeListBegin(keys.length + 1);
+		s.writeInteger(version);
+		for (String key : keys) {
+			s.writeString(key);
+		}
+	}
+
+	/**
+	 * Reads a dictionary written by {@link #write(MessagePaxSerializer)}
+	 * 
+	 * @param d
+	 *            Deserializer
+	 * @return Dictionary
+	 * @throws IOException
+	 *             If value could not be decoded correctly
+	 */
+	public static MessagePaxKeyDictionary read(MessagePaxDeserializer d)
+			throws IOException {
+		int size = d.readListSize();
+		if (size < 1) {
+			throw new IOException("Invalid key dictionary");
+		}
+		int version = d.readInt();
+		String[] keys = new String[size - 1];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = d.readString();
+		}
+		try {
+			return new MessagePaxKeyDictionary(version, keys);
+		} catch (IllegalArgumentException e) {
+			throw new IOException(e.getMessage());
+		}
+	}
+
+	public String toString() {
+		return "MessagePaxKeyDictionary[version=" + version + ", size="
+				+ keys.length + "]";
+	}
+}
@@ -0,0 +1,344 @@
+package org.messagepax;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Deserializer reading a file through memory mapping. The file is never
+ * loaded into the heap, the operating system page cache is used instead.
+ * <p/>
+ * Only a window of the file is mapped at a time. Whenever a read operation
+ * reaches the end of the window, the next window is mapped starting at the
+ * actual position. Files larger than 2 GB are supported this way.
+ * <p/>
+ * Concatenated records can be read like that
+ * 
+ * <pre>
+ * MessagePaxMappedDeserializer d = new MessagePaxMappedDeserializer(channel);
+ * while (d.hasRemaining()) {
+ * 	String name = d.readString();
+ * 	Integer value = d.readInteger();
+ * }
+ * </pre>
+ */
+public class MessagePaxMappedDeserializer extends
+		MessagePaxByteBufferDeserializer {
+
+	/** Default size of the mapped window */
+	public static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+	/** Channel of the mapped file */
+	private final FileChannel channel;
+
+	/** Size of the file */
+	private final long size;
+
+	/** Size of the mapped window */
+	private final int windowSize;
+
+	/** File position of the mapped window */
+	private long base;
+
+	/**
+	 * Creates a deserializer for the given file using the default window size.
+	 * 
+	 * @param channel
+	 *            File channel opened for reading
+	 * @throws IOException
+	 *             If file could not be mapped
+	 */
+	public MessagePaxMappedDeserializer(FileChannel channel) throws IOException {
+		this(channel, DEFAULT_WINDOW_SIZE);
+	}
+
+	/**
+	 * Creates a deserializer for the given file.
+	 * 
+	 * @param channel
+	 *            File channel opened for reading
+	 * @param windowSize
+	 *            Number of bytes mapped at a time
+	 * @throws IOException
+	 *             If file could not be mapped
+	 * @throws IllegalArgumentException
+	 *             If window size is less than 16 bytes
+	 */
+	public MessagePaxMappedDeserializer(FileChannel channel, int windowSize)
+			throws IOException {
+		super(map(channel, 0, (int) Math.min(checkWindowSize(windowSize),
+				channel.size())));
+		this.channel = channel;
+		this.size = channel.size();
+		this.windowSize = windowSize;
+		this.base = 0;
+	}
+
+	/**
+	 * Checks the window size before anything is mapped
+	 * 
+	 * @param windowSize
+	 *            Number of bytes mapped at a time
+	 * @return Window size
+	 * @throws IllegalArgumentException
+	 *             If window size is less than 16 bytes
+	 */
+	private static int checkWindowSize(int windowSize) {
+		if (windowSize < 16) {
+			throw new IllegalArgumentException("Window size too small "
+					+ windowSize);
+		}
+		return windowSize;
+	}
+
+	/**
+	 * Maps a region of the file
+	 * 
+	 * @param channel
+	 *            File channel
+	 * @param position
+	 *            Start of the region in the file
+	 * @param len
+	 *            Length of the region
+	 * @return Mapped region
+	 * @throws IOException
+	 *             If file could not be mapped
+	 */
+	private static ByteBuffer map(FileChannel channel, long position, int len)
+			throws IOException {
+		return channel.map(FileChannel.MapMode.READ_ONLY, position, len).order(
+				ByteOrder.BIG_ENDIAN);
+	}
+
+	/**
+	 * Maps the next window if less than <code>len</code> bytes are left in the
+	 * actual window.
+	 * 
+	 * @param len
+	 *            Number of bytes which need to be read next
+	 * @throws IOException
+	 *             If end of file is reached or mapping failed
+	 */
+	private void ensure(int len) throws IOException {
+		if (buf.limit() - pos < len) {
+			long position = base + pos;
+			if (size - position < len) {
+				throw new EOFException("End of file reached at " + position);
+			}
+			int mapped = (int) Math.min(Math.max(windowSize, len), size
+					- position);
+			buf = map(channel, position, mapped);
+			base = position;
+			pos = 0;
+		}
+	}
+
+	/**
+	 * Returns the actual read position in the file
+	 * 
+	 * @return Read position
+	 */
+	public long getFilePosition() {
+		return base + pos;
+	}
+
+	/**
+	 * Returns the read position inside the actual window. Use
+	 * {@link #getFilePosition()} to get the position in the file.
+	 * 
+	 * @return Read position inside the window
+	 */
+	public int getPosition() {
+		return pos;
+	}
+
+	/**
+	 * Moves the read position to the given position in the file
+	 * 
+	 * @param position
+	 *            New read position
+	 */
+	public void seek(long position) {
+		if (position >= base && position <= base + buf.limit()) {
+			pos = (int) (position - base);
+		} else {
+			// map lazily with the next read operation
+			buf = ByteBuffer.allocate(0);
+			base = position;
+			pos = 0;
+		}
+	}
+
+	/**
+	 * Returns the size of the file
+	 * 
+	 * @return Size of the file
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * Returns true if there are bytes left to read
+	 * 
+	 * @return true if position is before the end of the file
+	 */
+	public boolean hasRemaining() {
+		return base + pos < size;
+	}
+
+	/**
+	 * Returns the number of bytes left to read
+	 * 
+	 * @return Number of bytes before the end of the file
+	 */
+	protected long getRemaining() {
+		return size - base - pos;
+	}
+
+	/**
+	 * Reads one unsigned byte from the actual position.
+	 * 
+	 * @return Read byte
+	 * @throws IOException
+	 *             If end of file is reached
+	 */
+	protected int readByte() throws IOException {
+		ensure(1);
+		return super.readByte();
+	}
+
+	/**
+	 * Returns one unsigned byte from the actual position without moving
+	 * position forward.
+	 * 
+	 * @return Next byte
+	 * @throws IOException
+	 *             If end of file is reached
+	 */
+	protected int peekByte() throws IOException {
+		ensure(1);
+		return super.peekByte();
+	}
+
+	/**
+	 * Reads two bytes and interprets them as 16 bit signed integer.
+	 * 
+	 * @return Signed integer (16bit)
+	 * @throws IOException
+	 *             If end of file is reached
+	 */
+	protected int readInt16() throws IOException {
+		ensure(2);
+		return super.readInt16();
+	}
+
+	/**
+	 * Reads four bytes and interprets them as 32 bit signed integer.
+	 * 
+	 * @return Signed integer (32bit)
+	 * @throws IOException
+	 *             If end of file is reached
+	 */
+	protected int readInt32() throws IOException {
+		ensure(4);
+		return super.readInt32();
+	}
+
+	/**
+	 * Reads eight bytes and interprets them as 64 bit signed integer.
+	 * 
+	 * @return Signed integer (64bit)
+	 * @throws IOException
+	 *             If end of file is reached
+	 */
+	protected long readInt64() throws IOException {
+		ensure(8);
+		return super.readInt64();
+	}
+
+	/**
+	 * Copies bytes from the actual position into the given array.
+	 * 
+	 * @param dst
+	 *            Destination array
+	 * @param off
+	 *            Offset in destination array
+	 * @param len
+	 *            Number of bytes to copy
+	 * @throws IOException
+	 *             If end of file is reached
+	 */
+	protected void readBytes(byte[] dst, int off, int len) throws IOException {
+		ensure(len);
+		super.readBytes(dst, off, len);
+	}
+
+	/**
+	 * Moves position forward over the given number of bytes. Skipped bytes
+	 * are not mapped, so large payloads can be skipped cheaply.
+	 * 
+	 * @param len
+	 *            Number of bytes to skip
+	 * @throws IOException
+	 *             If end of file is reached
+	 */
+	protected void skipBytes(int len) throws IOException {
+		if (buf.limit() - pos >= len) {
+			pos += len;
+		} else {
+			long position = base + pos + len;
+			if (position > size) {
+				throw new EOFException("End of file reached at " + size);
+			}
+			seek(position);
+		}
+	}
+
+	/**
+	 * Decodes an UTF-8 string from the actual position.
+	 * 
+	 * @param len
+	 *            Number of bytes to decode
+	 * @return Decoded string
+	 * @throws IOException
+	 *             If end of file is reached
+	 */
+	protected String readUtf8(int len) throws IOException {
+		ensure(len);
+		return super.readUtf8(len);
+	}
+
+	/**
+	 * Returns a read-only view on the given number of bytes at the actual
+	 * position.
+	 * 
+	 * @param len
+	 *            Number of bytes
+	 * @return Read-only byte buffer
+	 * @throws IOException
+	 *             If end of file is reached
+	 */
+	protected ByteBuffer readByteBuffer(int len) throws IOException {
+		ensure(len);
+		return super.readByteBuffer(len);
+	}
+
+	/**
+	 * Sets the slice to the given number of bytes at the actual position.
+	 * 
+	 * @param slice
+	 *            Slice to set
+	 * @param len
+	 *            Number of bytes
+	 * @throws IOException
+	 *             If end of file is reached
+	 */
+	protected void readSlice(MessagePaxSlice slice, int len)
+			throws IOException {
+		ensure(len);
+		super.readSlice(slice, len);
+	}
+}
@@ -0,0 +1,784 @@
+package org.messagepax;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps objects of classes which can not be annotated with {@link MessagePax}
+ * to MSGPACK maps at runtime. Each class is inspected once, the resulting
+ * codec is cached and used for all further objects of the class.
+ * <p/>
+ * All non-static, non-transient fields including inherited ones are
+ * serialized with their name as key, the format is the same like the one of
+ * generated codecs. A field hidden by a field of the same name in a subclass
+ * is skipped. Each field is bound to the matching read and write method
+ * once, primitive fields are accessed without boxing. Classes annotated with
+ * {@link MessagePax} use their generated codec. With a
+ * {@link MessagePaxKeyDictionary} keys are written as small integers and
+ * resolved by an array lookup when reading.
+ * <p/>
+ * A mapper is thread-safe and should be shared.
+ * 
+ * <pre>
+ * MessagePaxMapper mapper = new MessagePaxMapper();
+ * mapper.write(s, order);
+ * Order o = mapper.read(d, Order.class);
+ * </pre>
+ */
+public class MessagePaxMapper {
+
+	/** Cached codecs by class */
+	private final Map<Class<?>, MessagePaxCodec<?>> codecs = new ConcurrentHashMap<Class<?>, MessagePaxCodec<?>>();
+
+	/** Key dictionary or null if keys are written as names */
+	private final MessagePaxKeyDictionary dictionary;
+
+	/**
+	 * Creates a mapper writing keys as names
+	 */
+	public MessagePaxMapper() {
+		this(null);
+	}
+
+	/**
+	 * Creates a mapper in key ordinal mode. Field names contained in the
+	 * dictionary are written as their index. Generated codecs are not used
+	 * in this mode, as they always write names.
+	 * 
+	 * @param dictionary
+	 *            Key dictionary or null to write keys as names
+	 */
+	public MessagePaxMapper(MessagePaxKeyDictionary dictionary) {
+		this.dictionary = dictionary;
+	}
+
+	/**
+	 * Registers a codec for a class, e.g. to customize its format
+	 * 
+	 * @param type
+	 *            Class
+	 * @param codec
+	 *            Codec used for objects of the class
+	 */
+	public <T> void register(Class<T> type, MessagePaxCodec<T> codec) {
+		codecs.put(type, codec);
+	}
+
+	/**
+	 * Returns the codec of a class. The codec is created on first use.
+	 * 
+	 * @param type
+	 *            Class
+	 * @return Codec
+	 * @throws IllegalArgumentException
+	 *             If the class can not be mapped
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> MessagePaxCodec<T> getCodec(Class<T> type) {
+		MessagePaxCodec<T> codec = (MessagePaxCodec<T>) codecs.get(type);
+		if (codec == null) {
+			if (dictionary == null) {
+				codec = generatedCodec(type);
+			}
+			if (codec == null) {
+				codec = new Plan<T>(this, type);
+			}
+			// a concurrently created codec is equivalent, keep either
+			codecs.put(type, codec);
+		}
+		return codec;
+	}
+
+	/**
+	 * Writes an object as map
+	 * 
+	 * @param s
+	 *            Serializer
+	 * @param value
+	 *            Object or null
+	 * @throws IOException
+	 *             If object could not be serialized
+	 */
+	@SuppressWarnings("unchecked")
+	public void write(MessagePaxSerializer s, Object value) throws IOException {
+		if (value == null) {
+			s.writeNil();
+		} else {
+			((MessagePaxCodec<Object>) getCodec(value.getClass())).write(s,
+					value);
+		}
+	}
+
+	/**
+	 * Reads an object from a map
+	 * 
+	 * @param d
+	 *            Deserializer
+	 * @param type
+	 *            Class of the object
+	 * @return Object or null
+	 * @throws IOException
+	 *             If value could not be decoded correctly
+	 */
+	public <T> T read(MessagePaxDeserializer d, Class<T> type)
+			throws IOException {
+		return getCodec(type).read(d);
+	}
+
+	/**
+	 * Returns the generated codec of a class annotated with {@link MessagePax}
+	 * 
+	 * @param type
+	 *            Class
+	 * @return Generated codec or null if there is none
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> MessagePaxCodec<T> generatedCodec(Class<T> type) {
+		if (type.getAnnotation(MessagePax.class) == null) {
+			return null;
+		}
+		String name = type.getName().replace('$', '_') + "MessagePaxCodec";
+		try {
+			return (MessagePaxCodec<T>) Class.forName(name, true,
+					type.getClassLoader()).getField("INSTANCE").get(null);
+		} catch (Exception e) {
+			// not generated, e.g. processor not enabled
+			return null;
+		}
+	}
+
+	/**
+	 * Codec of a class built by inspecting its fields
+	 * 
+	 * @param <T>
+	 *            Mapped class
+	 */
+	private static final class Plan<T> implements MessagePaxSizedCodec<T> {
+
+		/** Mapped class */
+		private final Class<T> type;
+
+		/** Constructor without arguments */
+		private final Constructor<T> constructor;
+
+		/** Serialized fields */
+		private final Property[] properties;
+
+		/** Encoded keys of the fields */
+		private final byte[][] keys;
+
+		/** Fields by dictionary index */
+		private final Property[] slots;
+
+		/**
+		 * Inspects a class and builds the plan
+		 * 
+		 * @param mapper
+		 *            Mapper resolving the codecs of nested objects
+		 * @param type
+		 *            Class
+		 */
+		Plan(MessagePaxMapper mapper, Class<T> type) {
+			this.type = type;
+			try {
+				constructor = type.getDeclaredConstructor();
+				constructor.setAccessible(true);
+			} catch (NoSuchMethodException e) {
+				throw new IllegalArgumentException(type.getName()
+						+ " needs a constructor without arguments");
+			}
+			List<Property> list = new ArrayList<Property>();
+			Set<String> names = new HashSet<String>();
+			for (Class<?> c = type; c != null && c != Object.class; c = c
+					.getSuperclass()) {
+				for (Field f : c.getDeclaredFields()) {
+					int mod = f.getModifiers();
+					// subclasses come first, hidden fields are skipped
+					if (!Modifier.isStatic(mod) && !Modifier.isTransient(mod)
+							&& !f.isSynthetic() && names.add(f.getName())) {
+						f.setAccessible(true);
+						list.add(property(mapper, f));
+					}
+				}
+			}
+			properties = list.toArray(new Property[list.size()]);
+			MessagePaxKeyDictionary dictionary = mapper.dictionary;
+			keys = new byte[properties.length][];
+			slots = new Property[dictionary == null ? 0 : dictionary.size()];
+			for (int i = 0; i < properties.length; i++) {
+				Property p = properties[i];
+				int index = dictionary == null ? -1 : dictionary.indexOf(p.field
+						.getName());
+				keys[i] = p.encodeKey(index);
+				if (index >= 0) {
+					slots[index] = p;
+				}
+			}
+		}
+
+		public void write(MessagePaxSerializer s, T value) throws IOException {
+			if (value == null) {
+				s.writeNil();
+				return;
+			}
+			s.writeMapBegin(properties.length);
+			try {
+				for (int i = 0; i < properties.length; i++) {
+					s.writeEncoded(keys[i]);
+					properties[i].write(s, value);
+				}
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException(e.getMessage());
+			}
+		}
+
+		public int sizeOf(T value) throws IOException {
+			if (value == null) {
+				return MessagePaxSize.NIL;
+			}
+			int n = MessagePaxSize.sizeOfMapBegin(properties.length);
+			try {
+				for (int i = 0; i < properties.length; i++) {
+					n += keys[i].length + properties[i].sizeOf(value);
+				}
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException(e.getMessage());
+			}
+			return n;
+		}
+
+		public T read(MessagePaxDeserializer d) throws IOException {
+			if (d.tryReadNil()) {
+				return null;
+			}
+			T value;
+			try {
+				value = constructor.newInstance();
+			} catch (Exception e) {
+				throw new IllegalStateException("Could not create "
+						+ type.getName() + ": " + e);
+			}
+			int size = d.readMapSize();
+			MessagePaxSlice key = new MessagePaxSlice();
+			try {
+				for (int i = 0; i < size; i++) {
+					Property p = null;
+					MessagePaxType t = d.nextFormat().getType();
+					if (t == MessagePaxType.STRING) {
+						d.readSlice(key);
+						p = find(key);
+					} else if (t == MessagePaxType.INTEGER) {
+						long index = d.readLongValue();
+						if (index >= 0 && index < slots.length) {
+							p = slots[(int) index];
+						}
+					} else {
+						d.skipValue();
+					}
+					if (p != null) {
+						p.read(d, value);
+					} else {
+						d.skipValue();
+					}
+				}
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException(e.getMessage());
+			}
+			return value;
+		}
+
+		/**
+		 * Returns the property of a key
+		 * 
+		 * @param key
+		 *            Raw key bytes
+		 * @return Property or null if key is unknown
+		 */
+		private Property find(MessagePaxSlice key) {
+			for (Property p : properties) {
+				if (key.contentEquals(p.name)) {
+					return p;
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Creates the property of a field, bound to the read and write methods
+	 * matching its type.
+	 * 
+	 * @param mapper
+	 *            Mapper resolving the codecs of nested objects
+	 * @param f
+	 *            Field
+	 * @return Property
+	 */
+	private static Property property(final MessagePaxMapper mapper,
+			final Field f) {
+		Class<?> t = f.getType();
+		if (t == boolean.class) {
+			return new Property(f) {
+				void write(MessagePaxSerializer s, Object o)
+						throws IOException, IllegalAccessException {
+					s.writeBoolean(f.getBoolean(o));
+				}
+
+				void read(MessagePaxDeserializer d, Object o)
+						throws IOException, IllegalAccessException {
+					f.setBoolean(o, d.readBooleanValue());
+				}
+
+				int sizeOf(Object o) throws IllegalAccessException {
+					return MessagePaxSize.sizeOfBoolean(f.getBoolean(o));
+				}
+			};
+		} else if (t == int.class) {
+			return new Property(f) {
+				void write(MessagePaxSerializer s, Object o)
+						throws IOException, IllegalAccessException {
+					s.writeInteger(f.getInt(o));
+				}
+
+				void read(MessagePaxDeserializer d, Object o)
+						throws IOException, IllegalAccessException {
+					f.setInt(o, d.readInt());
+				}
+
+				int sizeOf(Object o) throws IllegalAccessException {
+					return MessagePaxSize.sizeOfInteger(f.getInt(o));
+				}
+			};
+		} else if (t == long.class) {
+			return new Property(f) {
+				void write(MessagePaxSerializer s, Object o)
+						throws IOException, IllegalAccessException {
+					s.writeLong(f.getLong(o));
+				}
+
+				void read(MessagePaxDeserializer d, Object o)
+						throws IOException, IllegalAccessException {
+					f.setLong(o, d.readLongValue());
+				}
+
+				int sizeOf(Object o) throws IllegalAccessException {
+					return MessagePaxSize.sizeOfLong(f.getLong(o));
+				}
+			};
+		} else if (t == float.class) {
+			return new Property(f) {
+				void write(MessagePaxSerializer s, Object o)
+						throws IOException, IllegalAccessException {
+					s.writeFloat(f.getFloat(o));
+				}
+
+				void read(MessagePaxDeserializer d, Object o)
+						throws IOException, IllegalAccessException {
+					f.setFloat(o, d.readFloatValue());
+				}
+
+				int sizeOf(Object o) throws IllegalAccessException {
+					return MessagePaxSize.sizeOfFloat(f.getFloat(o));
+				}
+			};
+		} else if (t == double.class) {
+			return new Property(f) {
+				void write(MessagePaxSerializer s, Object o)
+						throws IOException, IllegalAccessException {
+					s.writeDouble(f.getDouble(o));
+				}
+
+				void read(MessagePaxDeserializer d, Object o)
+						throws IOException, IllegalAccessException {
+					f.setDouble(o, d.readDoubleValue());
+				}
+
+				int sizeOf(Object o) throws IllegalAccessException {
+					return MessagePaxSize.sizeOfDouble(f.getDouble(o));
+				}
+			};
+		} else if (t == Boolean.class) {
+			return new Property(f) {
+				void write(MessagePaxSerializer s, Object o)
+						throws IOException, IllegalAccessException {
+					s.writeBoolean((Boolean) f.get(o));
+				}
+
+				void read(MessagePaxDeserializer d, Object o)
+						throws IOException, IllegalAccessException {
+					f.set(o, d.readBoolean());
+				}
+
+				int sizeOf(Object o) throws IllegalAccessException {
+					return MessagePaxSize.sizeOfBoolean((Boolean) f.get(o));
+				}
+			};
+		} else if (t == Integer.class) {
+			return new Property(f) {
+				void write(MessagePaxSerializer s, Object o)
+						throws IOException, IllegalAccessException {
+					s.writeInteger((Integer) f.get(o));
+				}
+
+				void read(MessagePaxDeserializer d, Object o)
+						throws IOException, IllegalAccessException {
+					f.set(o, d.readInteger());
+				}
+
+				int sizeOf(Object o) throws IllegalAccessException {
+					return MessagePaxSize.sizeOfInteger((Integer) f.get(o));
+				}
+			};
+		} else if (t == Long.class) {
+			return new Property(f) {
+				void write(MessagePaxSerializer s, Object o)
+						throws IOException, IllegalAccessException {
+					s.writeLong((Long) f.get(o));
+				}
+
+				void read(MessagePaxDeserializer d, Object o)
+						throws IOException, IllegalAccessException {
+					f.set(o, d.readLong());
+				}
+
+				int sizeOf(Object o) throws IllegalAccessException {
+					return MessagePaxSize.sizeOfLong((Long) f.get(o));
+				}
+			};
+		} else if (t == Float.class) {
+			return new Property(f) {
+				void write(MessagePaxSerializer s, Object o)
+						throws IOException, IllegalAccessException {
+					s.writeFloat((Float) f.get(o));
+				}
+
+				void read(MessagePaxDeserializer d, Object o)
+						throws IOException, IllegalAccessException {
+					f.set(o, d.readFloat());
+				}
+
+				int sizeOf(Object o) throws IllegalAccessException {
+					return MessagePaxSize.sizeOfFloat((Float) f.get(o));
+				}
+			};
+		} else if (t == Double.class) {
+			return new Property(f) {
+				void write(MessagePaxSerializer s, Object o)
+						throws IOException, IllegalAccessException {
+					s.writeDouble((Double) f.get(o));
+				}
+
+				void read(MessagePaxDeserializer d, Object o)
+						throws IOException, IllegalAccessException {
+					f.set(o, d.readDouble());
+				}
+
+				int sizeOf(Object o) throws IllegalAccessException {
+					return MessagePaxSize.sizeOfDouble((Double) f.get(o));
+				}
+			};
+		} else if (t == String.class) {
+			return new Property(f) {
+				void write(MessagePaxSerializer s, Object o)
+						throws IOException, IllegalAccessException {
+					s.writeString((String) f.get(o));
+				}
+
+				void read(MessagePaxDeserializer d, Object o)
+						throws IOException, IllegalAccessException {
+					f.set(o, d.readString());
+				}
+
+				int sizeOf(Object o) throws IllegalAccessException {
+					return MessagePaxSize.sizeOfString((String) f.get(o));
+				}
+			};
+		} else if (t == byte[].class) {
+			return new Property(f) {
+				void write(MessagePaxSerializer s, Object o)
+						throws IOException, IllegalAccessException {
+					s.writeByteArray((byte[]) f.get(o));
+				}
+
+				void read(MessagePaxDeserializer d, Object o)
+						throws IOException, IllegalAccessException {
+					f.set(o, d.readByteArray());
+				}
+
+				int sizeOf(Object o) throws IllegalAccessException {
+					return MessagePaxSize.sizeOfByteArray((byte[]) f.get(o));
+				}
+			};
+		} else if (t == BigInteger.class) {
+			return new Property(f) {
+				void write(MessagePaxSerializer s, Object o)
+						throws IOException, IllegalAccessException {
+					s.writeBigInteger((BigInteger) f.get(o));
+				}
+
+				void read(MessagePaxDeserializer d, Object o)
+						throws IOException, IllegalAccessException {
+					f.set(o, d.readBigInteger());
+				}
+
+				int sizeOf(Object o) throws IllegalAccessException {
+					return MessagePaxSize
+							.sizeOfBigInteger((BigInteger) f.get(o));
+				}
+			};
+		} else if (t == MessagePaxValue.class) {
+			return new Property(f) {
+				void write(MessagePaxSerializer s, Object o)
+						throws IOException, IllegalAccessException {
+					s.writeValue((MessagePaxValue) f.get(o));
+				}
+
+				void read(MessagePaxDeserializer d, Object o)
+						throws IOException, IllegalAccessException {
+					f.set(o, d.readValue());
+				}
+
+				int sizeOf(Object o) throws IllegalAccessException {
+					return MessagePaxSize
+							.sizeOfValue((MessagePaxValue) f.get(o));
+				}
+			};
+		} else if (t == List.class && isStringType(f, 1)) {
+			return new Property(f) {
+				@SuppressWarnings("unchecked")
+				void write(MessagePaxSerializer s, Object o)
+						throws IOException, IllegalAccessException {
+					s.writeStringList((List<String>) f.get(o));
+				}
+
+				void read(MessagePaxDeserializer d, Object o)
+						throws IOException, IllegalAccessException {
+					f.set(o, d.readStringList());
+				}
+
+				@SuppressWarnings("unchecked")
+				int sizeOf(Object o) throws IllegalAccessException {
+					return MessagePaxSize
+							.sizeOfStringList((List<String>) f.get(o));
+				}
+			};
+		} else if (t == Map.class && isStringType(f, 2)) {
+			return new Property(f) {
+				@SuppressWarnings("unchecked")
+				void write(MessagePaxSerializer s, Object o)
+						throws IOException, IllegalAccessException {
+					s.writeStringMap((Map<String, String>) f.get(o));
+				}
+
+				void read(MessagePaxDeserializer d, Object o)
+						throws IOException, IllegalAccessException {
+					f.set(o, d.readStringMap());
+				}
+
+				@SuppressWarnings("unchecked")
+				int sizeOf(Object o) throws IllegalAccessException {
+					return MessagePaxSize
+							.sizeOfStringMap((Map<String, String>) f.get(o));
+				}
+			};
+		} else if (t.isPrimitive() || t.isArray() || t.isInterface()
+				|| Modifier.isAbstract(t.getModifiers())
+				|| t.getName().startsWith("java.")) {
+			throw new IllegalArgumentException("Type " + t.getName()
+					+ " of field " + f.getName() + " is not supported");
+		} else {
+			return new NestedProperty(mapper, f);
+		}
+	}
+
+	/**
+	 * Returns true if all type arguments of a field are String
+	 * 
+	 * @param f
+	 *            Field
+	 * @param count
+	 *            Expected number of type arguments
+	 * @return true if the field has the given number of String type arguments
+	 */
+	private static boolean isStringType(Field f, int count) {
+		Type g = f.getGenericType();
+		if (!(g instanceof ParameterizedType)) {
+			return false;
+		}
+		Type[] args = ((ParameterizedType) g).getActualTypeArguments();
+		if (args.length != count) {
+			return false;
+		}
+		for (Type a : args) {
+			if (a != String.class) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Field bound to its read and write methods
+	 */
+	private abstract static class Property {
+
+		/** Field */
+		final Field field;
+
+		/** UTF-8 bytes of the key */
+		final byte[] name;
+
+		/**
+		 * Creates a property
+		 * 
+		 * @param field
+		 *            Field
+		 */
+		Property(Field field) {
+			this.field = field;
+			try {
+				name = field.getName().getBytes(
+						MessagePaxSerializer.STRING_ENCODING);
+			} catch (UnsupportedEncodingException e) {
+				throw new IllegalStateException(e.getMessage());
+			}
+		}
+
+		/**
+		 * Encodes the key of the property
+		 * 
+		 * @param index
+		 *            Index of the key in the dictionary or -1 to encode the
+		 *            name
+		 * @return Encoded key
+		 */
+		byte[] encodeKey(int index) {
+			MessagePaxSerializer s = new MessagePaxSerializer(
+					new byte[name.length + 5]);
+			try {
+				if (index >= 0) {
+					s.writeInteger(index);
+				} else {
+					s.writeString(field.getName());
+				}
+			} catch (IOException e) {
+				throw new IllegalStateException(e.getMessage());
+			}
+			byte[] key = new byte[s.getLength()];
+			System.arraycopy(s.getBuffer(), 0, key, 0, key.length);
+			return key;
+		}
+
+		/**
+		 * Writes the field of an object
+		 * 
+		 * @param s
+		 *            Serializer
+		 * @param o
+		 *            Object
+		 * @throws IOException
+		 *             If field could not be serialized
+		 * @throws IllegalAccessException
+		 *             If field could not be accessed
+		 */
+		abstract void write(MessagePaxSerializer s, Object o)
+				throws IOException, IllegalAccessException;
+
+		/**
+		 * Reads the field of an object
+		 * 
+		 * @param d
+		 *            Deserializer
+		 * @param o
+		 *            Object
+		 * @throws IOException
+		 *             If value could not be decoded correctly
+		 * @throws IllegalAccessException
+		 *             If field could not be accessed
+		 */
+		abstract void read(MessagePaxDeserializer d, Object o)
+				throws IOException, IllegalAccessException;
+
+		/**
+		 * Returns the encoded size of the field of an object
+		 * 
+		 * @param o
+		 *            Object
+		 * @return Number of bytes
+		 * @throws IOException
+		 *             If size of a nested object could not be computed
+		 * @throws IllegalAccessException
+		 *             If field could not be accessed
+		 */
+		abstract int sizeOf(Object o) throws IOException,
+				IllegalAccessException;
+	}
+
+	/**
+	 * Field containing a nested object. The codec of the nested class is
+	 * resolved on first use, so classes may refer to each other.
+	 */
+	private static final class NestedProperty extends Property {
+
+		/** Mapper resolving the codec */
+		private final MessagePaxMapper mapper;
+
+		/** Codec of the nested class, null until first use */
+		private volatile MessagePaxCodec<Object> codec;
+
+		/**
+		 * Creates the property
+		 * 
+		 * @param mapper
+		 *            Mapper resolving the codec
+		 * @param field
+		 *            Field
+		 */
+		NestedProperty(MessagePaxMapper mapper, Field field) {
+			super(field);
+			this.mapper = mapper;
+		}
+
+		/**
+		 * Returns the codec of the nested class
+		 * 
+		 * @return Codec
+		 */
+		@SuppressWarnings("unchecked")
+		private MessagePaxCodec<Object> codec() {
+			MessagePaxCodec<Object> c = codec;
+			if (c == null) {
+				c = (MessagePaxCodec<Object>) mapper
+						.getCodec(field.getType());
+				codec = c;
+			}
+			return c;
+		}
+
+		void write(MessagePaxSerializer s, Object o) throws IOException,
+				IllegalAccessException {
+			codec().write(s, field.get(o));
+		}
+
+		void read(MessagePaxDeserializer d, Object o) throws IOException,
+				IllegalAccessException {
+			field.set(o, codec().read(d));
+		}
+
+		int sizeOf(Object o) throws IOException, IllegalAccessException {
+			return MessagePaxSize.sizeOf(codec(), field.get(o));
+		}
+	}
+}
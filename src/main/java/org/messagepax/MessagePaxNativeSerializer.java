@@ -77,6 +77,13 @@ public class MessagePaxNativeSerializer extends BaseSerializer {
 			// +----+--------+--------+--------+--------+--------+--------+--------+--------+
 			addByte(0xcf);
 			addInt64(d);
+		} else if (d >= (1L << 31)) {
+			// uint 32 stores a 32-bit big-endian unsigned integer
+			// +------+--------+--------+--------+--------+
+			// | 0xce |ZZZZZZZZ|ZZZZZZZZ|ZZZZZZZZ|ZZZZZZZZ
+			// +------+--------+--------+--------+--------+
+			addByte(0xce);
+			addInt32((int) d);
 		} else {
 			// Ok it doesnt look like a long so encode as smaller int
 			writeInteger((int) d);
@@ -339,4 +346,240 @@ public class MessagePaxNativeSerializer extends BaseSerializer {
 			addInt32(size);
 		}
 	}
+
+	/**
+	 * Writes a part of an int array as list of integers. Elements are encoded
+	 * in blocks directly into the buffer, so the size check is done once per
+	 * block instead of per element.
+	 * 
+	 * @param a
+	 *            Source array or null
+	 * @param off
+	 *            Offset of the first element
+	 * @param len
+	 *            Number of elements
+	 * @throws IOException
+	 *             If object could not be serialized
+	 */
+	public void writeIntArray(int[] a, int off, int len) throws IOException {
+		if (a == null) {
+			writeNil();
+			return;
+		}
+		writeListBegin(len);
+		int end = off + len;
+		int i = off;
+		while (i < end) {
+			// each element needs up to 5 bytes. Subclasses which do not write
+			// into the array fall back to element by element writing.
+			int n = Math.min(end - i, (b.length - pos) / 5);
+			if (n <= 0) {
+				writeInteger(a[i++]);
+				continue;
+			}
+			byte[] b = this.b;
+			int p = pos;
+			for (int last = i + n; i < last; i++) {
+				p = encodeInt(b, p, a[i]);
+			}
+			pos = p;
+		}
+	}
+
+	/**
+	 * Writes a part of a long array as list of integers. Elements are encoded
+	 * in blocks directly into the buffer, so the size check is done once per
+	 * block instead of per element.
+	 * 
+	 * @param a
+	 *            Source array or null
+	 * @param off
+	 *            Offset of the first element
+	 * @param len
+	 *            Number of elements
+	 * @throws IOException
+	 *             If object could not be serialized
+	 */
+	public void writeLongArray(long[] a, int off, int len) throws IOException {
+		if (a == null) {
+			writeNil();
+			return;
+		}
+		writeListBegin(len);
+		int end = off + len;
+		int i = off;
+		while (i < end) {
+			// each element needs up to 9 bytes
+			int n = Math.min(end - i, (b.length - pos) / 9);
+			if (n <= 0) {
+				writeLong(a[i++]);
+				continue;
+			}
+			byte[] b = this.b;
+			int p = pos;
+			for (int last = i + n; i < last; i++) {
+				long v = a[i];
+				if (v == (int) v) {
+					p = encodeInt(b, p, (int) v);
+				} else {
+					if (v < 0) {
+						b[p++] = (byte) 0xd3;
+					} else if (v < (1L << 32)) {
+						b[p++] = (byte) 0xce;
+						p = encodeInt32(b, p, (int) v);
+						continue;
+					} else {
+						b[p++] = (byte) 0xcf;
+					}
+					p = encodeInt32(b, p, (int) (v >>> 32));
+					p = encodeInt32(b, p, (int) v);
+				}
+			}
+			pos = p;
+		}
+	}
+
+	/**
+	 * Writes a part of a float array as list of floats. Elements are encoded
+	 * in blocks directly into the buffer, so the size check is done once per
+	 * block instead of per element.
+	 * 
+	 * @param a
+	 *            Source array or null
+	 * @param off
+	 *            Offset of the first element
+	 * @param len
+	 *            Number of elements
+	 * @throws IOException
+	 *             If object could not be serialized
+	 */
+	public void writeFloatArray(float[] a, int off, int len)
+			throws IOException {
+		if (a == null) {
+			writeNil();
+			return;
+		}
+		writeListBegin(len);
+		int end = off + len;
+		int i = off;
+		while (i < end) {
+			int n = Math.min(end - i, (b.length - pos) / 5);
+			if (n <= 0) {
+				writeFloat(a[i++]);
+				continue;
+			}
+			byte[] b = this.b;
+			int p = pos;
+			for (int last = i + n; i < last; i++) {
+				b[p++] = (byte) 0xca;
+				p = encodeInt32(b, p, Float.floatToIntBits(a[i]));
+			}
+			pos = p;
+		}
+	}
+
+	/**
+	 * Writes a part of a double array as list of doubles. Elements are
+	 * encoded in blocks directly into the buffer, so the size check is done
+	 * once per block instead of per element.
+	 * 
+	 * @param a
+	 *            Source array or null
+	 * @param off
+	 *            Offset of the first element
+	 * @param len
+	 *            Number of elements
+	 * @throws IOException
+	 *             If object could not be serialized
+	 */
+	public void writeDoubleArray(double[] a, int off, int len)
+			throws IOException {
+		if (a == null) {
+			writeNil();
+			return;
+		}
+		writeListBegin(len);
+		int end = off + len;
+		int i = off;
+		while (i < end) {
+			int n = Math.min(end - i, (b.length - pos) / 9);
+			if (n <= 0) {
+				writeDouble(a[i++]);
+				continue;
+			}
+			byte[] b = this.b;
+			int p = pos;
+			for (int last = i + n; i < last; i++) {
+				long bits = Double.doubleToLongBits(a[i]);
+				b[p++] = (byte) 0xcb;
+				p = encodeInt32(b, p, (int) (bits >>> 32));
+				p = encodeInt32(b, p, (int) bits);
+			}
+			pos = p;
+		}
+	}
+
+	/**
+	 * Encodes an int value like {@link #writeInteger(int)} into a buffer
+	 * which is known to be large enough.
+	 * 
+	 * @param b
+	 *            Buffer
+	 * @param p
+	 *            Position
+	 * @param v
+	 *            int value
+	 * @return Position behind the encoded value
+	 */
+	private static int encodeInt(byte[] b, int p, int v) {
+		if (v >= -(1 << 5) && v < (1 << 7)) {
+			// positive or negative fixnum
+			b[p++] = (byte) v;
+		} else if (v >= 0) {
+			if (v < (1 << 8)) {
+				b[p++] = (byte) 0xcc;
+				b[p++] = (byte) v;
+			} else if (v < (1 << 16)) {
+				b[p++] = (byte) 0xcd;
+				b[p++] = (byte) (v >>> 8);
+				b[p++] = (byte) v;
+			} else {
+				b[p++] = (byte) 0xce;
+				p = encodeInt32(b, p, v);
+			}
+		} else {
+			if (v >= -(1 << 7)) {
+				b[p++] = (byte) 0xd0;
+				b[p++] = (byte) v;
+			} else if (v >= -(1 << 15)) {
+				b[p++] = (byte) 0xd1;
+				b[p++] = (byte) (v >>> 8);
+				b[p++] = (byte) v;
+			} else {
+				b[p++] = (byte) 0xd2;
+				p = encodeInt32(b, p, v);
+			}
+		}
+		return p;
+	}
+
+	/**
+	 * Encodes a 32 bit big endian value into a buffer which is known to be
+	 * large enough.
+	 * 
+	 * @param b
+	 *            Buffer
+	 * @param p
+	 *            Position
+	 * @param v
+	 *            32 bit value
+	 * @return Position behind the encoded value
+	 */
+	private static int encodeInt32(byte[] b, int p, int v) {
+		b[p] = (byte) (v >>> 24);
+		b[p + 1] = (byte) (v >>> 16);
+		b[p + 2] = (byte) (v >>> 8);
+		b[p + 3] = (byte) v;
+		return p + 4;
+	}
 }
@@ -0,0 +1,136 @@
+package org.messagepax;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Decodes the records of a {@link MessagePaxRecordIndex} by several threads.
+ * The records are split into ranges, each range is decoded by a task of the
+ * executor with its own deserializer. The results keep the order of the
+ * records.
+ * 
+ * <pre>
+ * MessagePaxParallelDecoder decoder = new MessagePaxParallelDecoder(executor, 32);
+ * List&lt;Event&gt; events = decoder.decode(MessagePaxRecordIndex.scan(b), codec);
+ * </pre>
+ */
+public class MessagePaxParallelDecoder {
+
+	/** Minimal number of records decoded by one task */
+	private static final int MIN_RANGE = 256;
+
+	/** Executor running the tasks */
+	private final ExecutorService executor;
+
+	/** Number of threads of the executor */
+	private final int parallelism;
+
+	/**
+	 * Creates a decoder
+	 * 
+	 * @param executor
+	 *            Executor running the tasks
+	 * @param parallelism
+	 *            Number of threads of the executor
+	 */
+	public MessagePaxParallelDecoder(ExecutorService executor, int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Illegal parallelism "
+					+ parallelism);
+		}
+		this.executor = executor;
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Decodes all records of an index
+	 * 
+	 * @param index
+	 *            Record index
+	 * @param codec
+	 *            Codec of the records, used by several threads
+	 * @return Records in order
+	 * @throws IOException
+	 *             If a record could not be decoded
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> List<T> decode(final MessagePaxRecordIndex index,
+			final MessagePaxCodec<T> codec) throws IOException {
+		int count = index.size();
+		final Object[] results = new Object[count];
+		// a few ranges per thread balance records of different size
+		int range = Math.max(MIN_RANGE, (count + 4 * parallelism - 1)
+				/ (4 * parallelism));
+		if (range >= count) {
+			index.decode(codec, 0, count, results);
+		} else {
+			List<Future<Object>> futures = new ArrayList<Future<Object>>();
+			for (int from = 0; from < count; from += range) {
+				final int f = from;
+				final int t = Math.min(count, from + range);
+				futures.add(executor.submit(new Callable<Object>() {
+					public Object call() throws IOException {
+						index.decode(codec, f, t, results);
+						return null;
+					}
+				}));
+			}
+			await(futures);
+		}
+		List<T> list = new ArrayList<T>(count);
+		for (Object o : results) {
+			list.add((T) o);
+		}
+		return list;
+	}
+
+	/**
+	 * Waits for all tasks. If a task failed the remaining tasks are cancelled.
+	 * 
+	 * @param futures
+	 *            Tasks
+	 * @throws IOException
+	 *             If a task failed
+	 */
+	static <V> void await(List<Future<V>> futures) throws IOException {
+		try {
+			for (Future<V> f : futures) {
+				f.get();
+			}
+		} catch (InterruptedException e) {
+			cancel(futures);
+			throw new InterruptedIOException();
+		} catch (ExecutionException e) {
+			cancel(futures);
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			IOException io = new IOException(String.valueOf(cause));
+			io.initCause(cause);
+			throw io;
+		}
+	}
+
+	/**
+	 * Cancels tasks
+	 * 
+	 * @param futures
+	 *            Tasks
+	 */
+	private static <V> void cancel(List<Future<V>> futures) {
+		for (Future<V> f : futures) {
+			f.cancel(true);
+		}
+	}
+}
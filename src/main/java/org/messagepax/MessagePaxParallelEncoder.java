@@ -0,0 +1,158 @@
+package org.messagepax;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Writes large lists by several threads. The list is split into ranges, each
+ * range is encoded by a task of the executor into its own growing buffer.
+ * Afterwards the list header and the buffers are written in order. The
+ * buffers are kept and reused by later calls.
+ * 
+ * <pre>
+ * MessagePaxParallelEncoder encoder = new MessagePaxParallelEncoder(executor, 32);
+ * encoder.writeList(s, rows, codec);
+ * </pre>
+ */
+public class MessagePaxParallelEncoder {
+
+	/** Minimal number of elements encoded by one task */
+	private static final int MIN_RANGE = 256;
+
+	/** Chunk size of the buffers */
+	private static final int CHUNK_SIZE = 64 * 1024;
+
+	/** Executor running the tasks */
+	private final ExecutorService executor;
+
+	/** Number of threads of the executor */
+	private final int parallelism;
+
+	/** Buffers of finished calls */
+	private final Queue<MessagePaxChunkedSerializer> buffers = new ConcurrentLinkedQueue<MessagePaxChunkedSerializer>();
+
+	/**
+	 * Creates an encoder
+	 * 
+	 * @param executor
+	 *            Executor running the tasks
+	 * @param parallelism
+	 *            Number of threads of the executor
+	 */
+	public MessagePaxParallelEncoder(ExecutorService executor, int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Illegal parallelism "
+					+ parallelism);
+		}
+		this.executor = executor;
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Writes a list. If list is null a MSGPACK NIL object is stored.
+	 * 
+	 * @param s
+	 *            Serializer
+	 * @param list
+	 *            List or null, must not be changed during the call
+	 * @param codec
+	 *            Codec of the elements, used by several threads
+	 * @throws IOException
+	 *             If an element could not be serialized
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> void writeList(MessagePaxSerializer s, List<T> list,
+			final MessagePaxCodec<T> codec) throws IOException {
+		if (list == null) {
+			s.writeNil();
+			return;
+		}
+		final Object[] elements = list.toArray();
+		int count = elements.length;
+		// a few ranges per thread balance elements of different size
+		int range = Math.max(MIN_RANGE, (count + 4 * parallelism - 1)
+				/ (4 * parallelism));
+		if (range >= count) {
+			s.writeListBegin(count);
+			for (Object o : elements) {
+				codec.write(s, (T) o);
+			}
+			return;
+		}
+		List<Future<MessagePaxChunkedSerializer>> futures = new ArrayList<Future<MessagePaxChunkedSerializer>>();
+		for (int from = 0; from < count; from += range) {
+			final int f = from;
+			final int t = Math.min(count, from + range);
+			futures.add(executor
+					.submit(new Callable<MessagePaxChunkedSerializer>() {
+						public MessagePaxChunkedSerializer call()
+								throws IOException {
+							MessagePaxChunkedSerializer buffer = buffer();
+							for (int i = f; i < t; i++) {
+								codec.write(buffer, (T) elements[i]);
+							}
+							return buffer;
+						}
+					}));
+		}
+		try {
+			MessagePaxParallelDecoder.await(futures);
+			s.writeListBegin(count);
+			for (Future<MessagePaxChunkedSerializer> f : futures) {
+				result(f).writeTo(s);
+			}
+		} finally {
+			release(futures);
+		}
+	}
+
+	/**
+	 * Returns the buffer of a successful task
+	 * 
+	 * @param f
+	 *            Task
+	 * @return Buffer or null if task failed
+	 */
+	private static MessagePaxChunkedSerializer result(
+			Future<MessagePaxChunkedSerializer> f) {
+		try {
+			return f.get();
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Returns a buffer of a finished call or a new one
+	 * 
+	 * @return Empty buffer
+	 */
+	private MessagePaxChunkedSerializer buffer() {
+		MessagePaxChunkedSerializer buffer = buffers.poll();
+		return buffer != null ? buffer : new MessagePaxChunkedSerializer(
+				CHUNK_SIZE);
+	}
+
+	/**
+	 * Returns the buffers of successful tasks for reuse
+	 * 
+	 * @param futures
+	 *            Tasks
+	 */
+	private void release(List<Future<MessagePaxChunkedSerializer>> futures) {
+		for (Future<MessagePaxChunkedSerializer> f : futures) {
+			// tasks still running after a failure keep their buffer
+			MessagePaxChunkedSerializer buffer = f.isDone() ? result(f) : null;
+			if (buffer != null) {
+				buffer.reset();
+				buffers.offer(buffer);
+			}
+		}
+	}
+}
@@ -0,0 +1,189 @@
+package org.messagepax;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compiled path to a nested value, used to extract single values from large
+ * messages without decoding them completely.
+ * <p/>
+ * A path consists of map keys and list indexes, like
+ * <code>$.header.tenant</code> or <code>$.items[3].price</code>. The leading
+ * <code>$</code> is optional. Keys are encoded to UTF-8 once when the path is
+ * compiled and compared against the raw key bytes of the data. All values
+ * which are not on the path are skipped without decoding them.
+ * <p/>
+ * A compiled path is immutable and can be shared by several threads.
+ * 
+ * <pre>
+ * MessagePaxPath tenant = MessagePaxPath.compile(&quot;$.header.tenant&quot;);
+ * ...
+ * MessagePaxDeserializer d = new MessagePaxDeserializer(buf);
+ * if (tenant.select(d)) {
+ * 	String value = d.readString();
+ * }
+ * </pre>
+ */
+public class MessagePaxPath {
+
+	/** Path as passed to compile */
+	private final String path;
+
+	/** Encoded key of each step, null if step is a list index */
+	private final byte[][] keys;
+
+	/** List index of each step, -1 if step is a map key */
+	private final int[] indexes;
+
+	/**
+	 * Creates a compiled path
+	 * 
+	 * @param path
+	 *            Path as passed to compile
+	 * @param keys
+	 *            Encoded key of each step
+	 * @param indexes
+	 *            List index of each step
+	 */
+	private MessagePaxPath(String path, byte[][] keys, int[] indexes) {
+		this.path = path;
+		this.keys = keys;
+		this.indexes = indexes;
+	}
+
+	/**
+	 * Compiles a path. Map keys are separated by dots, list indexes are given
+	 * in square brackets.
+	 * 
+	 * @param path
+	 *            Path like <code>$.items[3].price</code>
+	 * @return Compiled path
+	 * @throws IllegalArgumentException
+	 *             If the path is not valid
+	 */
+	public static MessagePaxPath compile(String path) {
+		List<byte[]> keys = new ArrayList<byte[]>();
+		List<Integer> indexes = new ArrayList<Integer>();
+		int i = path.startsWith("$") ? 1 : 0;
+		int n = path.length();
+		while (i < n) {
+			char c = path.charAt(i);
+			if (c == '[') {
+				int end = path.indexOf(']', i);
+				if (end < 0) {
+					throw new IllegalArgumentException("Missing ] in " + path);
+				}
+				int index;
+				try {
+					index = Integer.parseInt(path.substring(i + 1, end));
+				} catch (NumberFormatException e) {
+					index = -1;
+				}
+				if (index < 0) {
+					throw new IllegalArgumentException("Illegal index in "
+							+ path);
+				}
+				keys.add(null);
+				indexes.add(index);
+				i = end + 1;
+			} else {
+				if (c == '.') {
+					i++;
+				} else if (i > 0) {
+					throw new IllegalArgumentException("Illegal char " + c
+							+ " in " + path);
+				}
+				int end = i;
+				while (end < n && path.charAt(end) != '.'
+						&& path.charAt(end) != '[') {
+					end++;
+				}
+				if (end == i) {
+					throw new IllegalArgumentException("Empty key in " + path);
+				}
+				try {
+					keys.add(path.substring(i, end).getBytes(
+							MessagePaxSerializer.STRING_ENCODING));
+				} catch (UnsupportedEncodingException e) {
+					throw new IllegalStateException(e.getMessage());
+				}
+				indexes.add(-1);
+				i = end;
+			}
+		}
+		int[] idx = new int[indexes.size()];
+		for (int j = 0; j < idx.length; j++) {
+			idx[j] = indexes.get(j);
+		}
+		return new MessagePaxPath(path, keys.toArray(new byte[keys.size()][]),
+				idx);
+	}
+
+	/**
+	 * Moves the deserializer to the value selected by this path. The
+	 * deserializer has to be positioned at the start of the root value. If
+	 * the value is found, it can be read with the matching read method next.
+	 * If it is not found, the position is undefined.
+	 * 
+	 * @param d
+	 *            Deserializer positioned at the root value
+	 * @return true if the value was found
+	 * @throws IOException
+	 *             If data could not be decoded correctly
+	 */
+	public boolean select(MessagePaxDeserializer d) throws IOException {
+		MessagePaxSlice slice = null;
+		for (int step = 0; step < keys.length; step++) {
+			byte[] key = keys[step];
+			if (key == null) {
+				if (d.nextFormat().getType() != MessagePaxType.LIST) {
+					return false;
+				}
+				int size = d.readListSize();
+				int index = indexes[step];
+				if (index >= size) {
+					return false;
+				}
+				for (int i = 0; i < index; i++) {
+					d.skipValue();
+				}
+			} else {
+				if (d.nextFormat().getType() != MessagePaxType.MAP) {
+					return false;
+				}
+				if (slice == null) {
+					slice = new MessagePaxSlice();
+				}
+				int size = d.readMapSize();
+				boolean found = false;
+				for (int i = 0; i < size && !found; i++) {
+					if (d.nextFormat().getType() == MessagePaxType.STRING) {
+						d.readSlice(slice);
+						found = slice.contentEquals(key);
+					} else {
+						d.skipValue();
+					}
+					if (!found) {
+						// value of a non-matching key
+						d.skipValue();
+					}
+				}
+				if (!found) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the path as passed to {@link #compile(String)}
+	 * 
+	 * @return Path
+	 */
+	public String toString() {
+		return path;
+	}
+}
@@ -0,0 +1,263 @@
+package org.messagepax;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Pool of serializers and deserializers, used to avoid allocating buffers for
+ * every message. Acquired objects need to be released after use and must not
+ * be used afterwards.
+ * <p/>
+ * Each thread keeps one object of each kind in a thread-local slot, all
+ * others are kept in a bounded shared pool. Disable the thread-local slots if
+ * there are many short-lived threads, e.g. one thread per request.
+ * <p/>
+ * The pool tracks the encoded sizes of released serializers and adapts the
+ * chunk size of new serializers, so that most messages fit into the first
+ * chunk. Serializers which do not match the actual chunk size are dropped on
+ * release, so are all chunks which were added for outliers.
+ * 
+ * <pre>
+ * MessagePaxChunkedSerializer s = pool.acquireSerializer();
+ * try {
+ * 	...
+ * } finally {
+ * 	pool.release(s);
+ * }
+ * </pre>
+ */
+public class MessagePaxPool {
+
+	/** Minimal chunk size */
+	private static final int MIN_CHUNK_SIZE = 256;
+
+	/** Maximal chunk size */
+	private static final int MAX_CHUNK_SIZE = 1024 * 1024;
+
+	/** Number of releases between two adaptions */
+	private static final int ADAPT_INTERVAL = 1024;
+
+	/** Empty buffer for released deserializers */
+	private static final byte[] EMPTY = new byte[0];
+
+	/** Maximal number of objects of each kind in the shared pool */
+	private final int capacity;
+
+	/** Shared serializers */
+	private final Queue<MessagePaxChunkedSerializer> serializers = new ConcurrentLinkedQueue<MessagePaxChunkedSerializer>();
+
+	/** Number of shared serializers */
+	private final AtomicInteger serializerCount = new AtomicInteger();
+
+	/** Shared deserializers */
+	private final Queue<MessagePaxDeserializer> deserializers = new ConcurrentLinkedQueue<MessagePaxDeserializer>();
+
+	/** Number of shared deserializers */
+	private final AtomicInteger deserializerCount = new AtomicInteger();
+
+	/** Thread-local serializers or null if disabled */
+	private final ThreadLocal<MessagePaxChunkedSerializer[]> localSerializer;
+
+	/** Thread-local deserializers or null if disabled */
+	private final ThreadLocal<MessagePaxDeserializer[]> localDeserializer;
+
+	/** Number of released serializers by power of two of their length */
+	private final AtomicIntegerArray histogram = new AtomicIntegerArray(32);
+
+	/** Number of releases since the last adaption */
+	private final AtomicInteger releases = new AtomicInteger();
+
+	/** Chunk size of new serializers */
+	private volatile int chunkSize;
+
+	/**
+	 * Creates a pool with thread-local slots
+	 * 
+	 * @param capacity
+	 *            Maximal number of objects of each kind in the shared pool
+	 */
+	public MessagePaxPool(int capacity) {
+		this(capacity, true);
+	}
+
+	/**
+	 * Creates a pool
+	 * 
+	 * @param capacity
+	 *            Maximal number of objects of each kind in the shared pool
+	 * @param threadLocal
+	 *            true to keep one object of each kind per thread
+	 */
+	public MessagePaxPool(int capacity, boolean threadLocal) {
+		this.capacity = capacity;
+		this.chunkSize = 4096;
+		if (threadLocal) {
+			localSerializer = new ThreadLocal<MessagePaxChunkedSerializer[]>() {
+				protected MessagePaxChunkedSerializer[] initialValue() {
+					return new MessagePaxChunkedSerializer[1];
+				}
+			};
+			localDeserializer = new ThreadLocal<MessagePaxDeserializer[]>() {
+				protected MessagePaxDeserializer[] initialValue() {
+					return new MessagePaxDeserializer[1];
+				}
+			};
+		} else {
+			localSerializer = null;
+			localDeserializer = null;
+		}
+	}
+
+	/**
+	 * Returns the chunk size of new serializers
+	 * 
+	 * @return Chunk size
+	 */
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	/**
+	 * Returns an empty serializer
+	 * 
+	 * @return Serializer
+	 */
+	public MessagePaxChunkedSerializer acquireSerializer() {
+		MessagePaxChunkedSerializer s = null;
+		if (localSerializer != null) {
+			MessagePaxChunkedSerializer[] slot = localSerializer.get();
+			s = slot[0];
+			slot[0] = null;
+		}
+		if (s == null) {
+			s = serializers.poll();
+			if (s != null) {
+				serializerCount.decrementAndGet();
+			}
+		}
+		return s != null ? s : new MessagePaxChunkedSerializer(chunkSize);
+	}
+
+	/**
+	 * Releases a serializer. Its length is recorded to adapt the chunk size.
+	 * 
+	 * @param s
+	 *            Serializer acquired from this pool
+	 */
+	public void release(MessagePaxChunkedSerializer s) {
+		record(s.getLength());
+		if (s.getChunkSize() != chunkSize) {
+			// adapted meanwhile, keep only serializers of the actual size
+			return;
+		}
+		s.reset();
+		if (localSerializer != null) {
+			MessagePaxChunkedSerializer[] slot = localSerializer.get();
+			if (slot[0] == null) {
+				slot[0] = s;
+				return;
+			}
+		}
+		if (serializerCount.incrementAndGet() <= capacity) {
+			serializers.offer(s);
+		} else {
+			serializerCount.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Returns a deserializer bound to a buffer
+	 * 
+	 * @param b
+	 *            Buffer containing serialized data
+	 * @return Deserializer
+	 */
+	public MessagePaxDeserializer acquireDeserializer(byte[] b) {
+		MessagePaxDeserializer d = null;
+		if (localDeserializer != null) {
+			MessagePaxDeserializer[] slot = localDeserializer.get();
+			d = slot[0];
+			slot[0] = null;
+		}
+		if (d == null) {
+			d = deserializers.poll();
+			if (d != null) {
+				deserializerCount.decrementAndGet();
+			}
+		}
+		if (d == null) {
+			return new MessagePaxDeserializer(b);
+		}
+		d.reset(b);
+		return d;
+	}
+
+	/**
+	 * Releases a deserializer. The reference to its buffer is dropped.
+	 * 
+	 * @param d
+	 *            Deserializer acquired from this pool
+	 */
+	public void release(MessagePaxDeserializer d) {
+		d.reset(EMPTY);
+		d.setStringCache(null);
+		if (localDeserializer != null) {
+			MessagePaxDeserializer[] slot = localDeserializer.get();
+			if (slot[0] == null) {
+				slot[0] = d;
+				return;
+			}
+		}
+		if (deserializerCount.incrementAndGet() <= capacity) {
+			deserializers.offer(d);
+		} else {
+			deserializerCount.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Records the length of a message and adapts the chunk size periodically
+	 * 
+	 * @param length
+	 *            Encoded length
+	 */
+	private void record(int length) {
+		histogram.incrementAndGet(32 - Integer.numberOfLeadingZeros(length));
+		if (releases.incrementAndGet() % ADAPT_INTERVAL == 0) {
+			adapt();
+		}
+	}
+
+	/**
+	 * Sets the chunk size to the power of two which covers 90% of the recorded
+	 * lengths. Older lengths lose weight by halving all counts.
+	 */
+	private void adapt() {
+		int[] counts = new int[histogram.length()];
+		int total = 0;
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = histogram.get(i);
+			total += counts[i];
+			histogram.addAndGet(i, -(counts[i] / 2));
+		}
+		int sum = 0;
+		int bits = 0;
+		while (bits < counts.length - 1 && sum + counts[bits] < total * 0.9) {
+			sum += counts[bits];
+			bits++;
+		}
+		// lengths of bucket i are below 2^i
+		int size = 1 << Math.min(bits, 30);
+		size = Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, size));
+		if (size != chunkSize) {
+			chunkSize = size;
+			// drop pooled serializers of the old size, concurrent releases
+			// may still add some, acquire accepts them anyway
+			while (serializers.poll() != null) {
+				serializerCount.decrementAndGet();
+			}
+		}
+	}
+}
@@ -0,0 +1,216 @@
+package org.messagepax;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Index of the boundaries of concatenated top level records in a buffer. The
+ * index is built by a single scan which only decodes headers, payloads of
+ * strings, byte arrays and extensions are jumped over.
+ * <p/>
+ * Each record can be read by its own deserializer, so records can be decoded
+ * in any order and by several threads, see {@link MessagePaxParallelDecoder}.
+ */
+public class MessagePaxRecordIndex {
+
+	/** Buffer containing the records */
+	private final byte[] b;
+
+	/** Offsets of the records, followed by the end of the last record */
+	private final int[] offsets;
+
+	/** Number of records */
+	private final int count;
+
+	/**
+	 * Creates an index
+	 * 
+	 * @param b
+	 *            Buffer containing the records
+	 * @param offsets
+	 *            Offsets of the records, followed by the end
+	 * @param count
+	 *            Number of records
+	 */
+	private MessagePaxRecordIndex(byte[] b, int[] offsets, int count) {
+		this.b = b;
+		this.offsets = offsets;
+		this.count = count;
+	}
+
+	/**
+	 * Scans a buffer completely
+	 * 
+	 * @param b
+	 *            Buffer containing concatenated records
+	 * @return Index of the records
+	 * @throws IOException
+	 *             If a record is invalid or truncated
+	 */
+	public static MessagePaxRecordIndex scan(byte[] b) throws IOException {
+		return scan(b, 0, b.length);
+	}
+
+	/**
+	 * Scans a range of a buffer
+	 * 
+	 * @param b
+	 *            Buffer containing concatenated records
+	 * @param off
+	 *            Offset of the first record
+	 * @param len
+	 *            Length of the range
+	 * @return Index of the records
+	 * @throws IOException
+	 *             If a record is invalid or truncated
+	 */
+	public static MessagePaxRecordIndex scan(byte[] b, int off, int len)
+			throws IOException {
+		int end = off + len;
+		int[] offsets = new int[16];
+		int count = 0;
+		MessagePaxDeserializer d = new MessagePaxDeserializer(b, off);
+		try {
+			while (d.getPosition() < end) {
+				if (count + 1 == offsets.length) {
+					int[] o = new int[offsets.length * 2];
+					System.arraycopy(offsets, 0, o, 0, count);
+					offsets = o;
+				}
+				offsets[count++] = d.getPosition();
+				d.skipValue();
+			}
+		} catch (ArrayIndexOutOfBoundsException e) {
+			throw truncated(offsets[count - 1]);
+		}
+		if (d.getPosition() > end) {
+			throw truncated(offsets[count - 1]);
+		}
+		offsets[count] = end;
+		return new MessagePaxRecordIndex(b, offsets, count);
+	}
+
+	/**
+	 * Creates the exception of a truncated record
+	 * 
+	 * @param offset
+	 *            Offset of the record
+	 * @return Exception
+	 */
+	private static IOException truncated(int offset) {
+		return new IOException("Record at offset " + offset + " is truncated");
+	}
+
+	/**
+	 * Returns the buffer containing the records
+	 * 
+	 * @return Buffer
+	 */
+	public byte[] getBuffer() {
+		return b;
+	}
+
+	/**
+	 * Returns the number of records
+	 * 
+	 * @return Number of records
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Returns the offset of a record in the buffer
+	 * 
+	 * @param i
+	 *            Index of the record
+	 * @return Offset
+	 */
+	public int getOffset(int i) {
+		checkIndex(i);
+		return offsets[i];
+	}
+
+	/**
+	 * Returns the encoded length of a record
+	 * 
+	 * @param i
+	 *            Index of the record
+	 * @return Length in bytes
+	 */
+	public int getLength(int i) {
+		checkIndex(i);
+		return offsets[i + 1] - offsets[i];
+	}
+
+	/**
+	 * Returns a new deserializer positioned at a record
+	 * 
+	 * @param i
+	 *            Index of the record
+	 * @return Deserializer
+	 */
+	public MessagePaxDeserializer getDeserializer(int i) {
+		return new MessagePaxDeserializer(b, getOffset(i));
+	}
+
+	/**
+	 * Decodes a range of records in the calling thread
+	 * 
+	 * @param codec
+	 *            Codec of the records
+	 * @param from
+	 *            Index of the first record
+	 * @param to
+	 *            Index behind the last record
+	 * @param results
+	 *            Array receiving the records at their index
+	 * @throws IOException
+	 *             If a record could not be decoded
+	 */
+	void decode(MessagePaxCodec<?> codec, int from, int to, Object[] results)
+			throws IOException {
+		MessagePaxDeserializer d = new MessagePaxDeserializer(b, offsets[from]);
+		for (int i = from; i < to; i++) {
+			results[i] = codec.read(d);
+			if (d.getPosition() != offsets[i + 1]) {
+				throw new IOException("Record " + i
+						+ " was not read completely");
+			}
+		}
+	}
+
+	/**
+	 * Decodes all records in the calling thread
+	 * 
+	 * @param codec
+	 *            Codec of the records
+	 * @return Records in order
+	 * @throws IOException
+	 *             If a record could not be decoded
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> List<T> decode(MessagePaxCodec<T> codec) throws IOException {
+		Object[] results = new Object[count];
+		decode(codec, 0, count, results);
+		List<T> list = new ArrayList<T>(count);
+		for (Object o : results) {
+			list.add((T) o);
+		}
+		return list;
+	}
+
+	/**
+	 * Checks the index of a record
+	 * 
+	 * @param i
+	 *            Index of the record
+	 */
+	private void checkIndex(int i) {
+		if (i < 0 || i >= count) {
+			throw new IndexOutOfBoundsException("Record " + i + " of "
+					+ count);
+		}
+	}
+}
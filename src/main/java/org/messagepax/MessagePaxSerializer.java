@@ -5,6 +5,7 @@ import java.math.BigInteger;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 
 /**
  * Messagepack serializer used to write all kind of objects into a byte array
@@ -12,7 +13,8 @@ import java.util.Map;
  * 
  * You need to provide a destination buffer which is large enough to keep all
  * your data which you write into it. Otherwise you will get an
- * {@link ArrayIndexOutOfBoundsException}.
+ * {@link ArrayIndexOutOfBoundsException}. Use
+ * {@link MessagePaxChunkedSerializer} if the size is not known in advance.
  * 
  * Checkout the <a href="http://www.msgpack.org">website of MSGPACK</a> for
  * details.
@@ -25,6 +27,30 @@ public class MessagePaxSerializer extends MessagePaxNativeSerializer {
 	 */
 	protected static final String STRING_ENCODING = "UTF-8";
 
+	/** Reserved header of lists with deferred size */
+	private static final int LIST_HEADER = 0xdd;
+
+	/** Reserved header of maps with deferred size */
+	private static final int MAP_HEADER = 0xdf;
+
+	/** Positions of the reserved headers of open lists and maps */
+	private int[] openHeaders = new int[4];
+
+	/** Reserved header formats of open lists and maps */
+	private int[] openFormats = new int[4];
+
+	/** Positions up to which the values of open lists and maps are counted */
+	private int[] countedTo = new int[4];
+
+	/** Numbers of values counted so far in open lists and maps */
+	private int[] counts = new int[4];
+
+	/** Number of open lists and maps */
+	private int depth;
+
+	/** Deserializer counting the values of open lists and maps */
+	private MessagePaxDeserializer counter;
+
 	/**
 	 * Creates a serializer with destination buffer which need to be large
 	 * enough to keep all the data you write into.
@@ -36,6 +62,14 @@ public class MessagePaxSerializer extends MessagePaxNativeSerializer {
 		super(b);
 	}
 
+	/**
+	 * Resets position and discards open lists and maps.
+	 */
+	public void reset() {
+		super.reset();
+		depth = 0;
+	}
+
 	/**
 	 * Writes Boolean object into the buffer. If object is null a MSGPACK NIL
 	 * object is stored.
@@ -132,13 +166,9 @@ public class MessagePaxSerializer extends MessagePaxNativeSerializer {
 	 */
 	public void writeString(String s) throws IOException {
 		if (s != null) {
-			// TODO Optimize buffer usage
-			byte[] buffer = null;
-			int len = 0;
-			buffer = s.getBytes(STRING_ENCODING);
-			len = buffer.length;
+			int len = Utils.utf8Length(s);
 			writeStringLength(len);
-			addBytes(buffer, 0, len);
+			addUtf8(s, len);
 		} else {
 			writeNil();
 		}
@@ -229,6 +259,310 @@ public class MessagePaxSerializer extends MessagePaxNativeSerializer {
 		}
 	}
 
+	/**
+	 * Writes a map key. Keys contained in the dictionary are written as their
+	 * index, all other keys as string.
+	 * 
+	 * @param key
+	 *            Key
+	 * @param dictionary
+	 *            Key dictionary
+	 * @throws IOException
+	 *             If object could not be serialized
+	 */
+	public void writeKey(String key, MessagePaxKeyDictionary dictionary)
+			throws IOException {
+		int index = dictionary.indexOf(key);
+		if (index >= 0) {
+			writeInteger(index);
+		} else {
+			writeString(key);
+		}
+	}
+
+	/**
+	 * Writes Map object into the buffer with keys encoded by a dictionary. If
+	 * object is null a MSGPACK NIL object is stored.
+	 * 
+	 * @param map
+	 *            Map object or null
+	 * @param dictionary
+	 *            Key dictionary
+	 * @throws IOException
+	 *             If object could not be serialized
+	 */
+	public void writeStringMap(Map<String, String> map,
+			MessagePaxKeyDictionary dictionary) throws IOException {
+		if (map == null) {
+			writeNil();
+		} else {
+			int size = map.size();
+			writeMapBegin(size);
+			Iterator<String> it = map.keySet().iterator();
+			for (int i = 0; i < size; i++) {
+				String key = it.next();
+				String val = map.get(key);
+				writeKey(key, dictionary);
+				writeString(val);
+			}
+		}
+	}
+
+	/**
+	 * Begins a list whose size is not known yet. A header is reserved, the
+	 * elements are written as usual and {@link #endList()} patches the header.
+	 * <p/>
+	 * 
+	 * <pre>
+	 * s.beginList();
+	 * while (it.hasNext()) {
+	 * 	s.writeString(it.next());
+	 * }
+	 * s.endList();
+	 * </pre>
+	 * 
+	 * <p/>
+	 * The header and all elements behind it stay in one array until the list
+	 * is ended. {@link MessagePaxChunkedSerializer} and
+	 * {@link MessagePaxStreamSerializer} neither start a new chunk nor drain
+	 * while a list or map is open, their array grows and is copied instead, so
+	 * the memory usage depends on the size of the list. Use
+	 * {@link #writeListBegin(int)} for large lists whose size is known.
+	 * 
+	 * @throws IOException
+	 *             If object could not be serialized
+	 */
+	public void beginList() throws IOException {
+		begin(LIST_HEADER);
+	}
+
+	/**
+	 * Ends the list begun by the last {@link #beginList()}. The elements are
+	 * counted and the smallest header is written. Only value headers are
+	 * decoded and each byte is counted once, a nested list or map with
+	 * deferred size counts as one element when it is ended. Only if it is
+	 * nested within a list or map of known size, the outer list is counted
+	 * including its body again.
+	 * 
+	 * @throws IOException
+	 *             If the elements could not be counted
+	 * @throws IllegalStateException
+	 *             If no list is open or its last element is incomplete
+	 */
+	public void endList() throws IOException {
+		end(LIST_HEADER);
+	}
+
+	/**
+	 * Begins a map whose size is not known yet. A header is reserved, the
+	 * keys and values are written as usual and {@link #endMap()} patches the
+	 * header. The entries stay in one growing array until the map is ended,
+	 * see {@link #beginList()}.
+	 * 
+	 * @throws IOException
+	 *             If object could not be serialized
+	 */
+	public void beginMap() throws IOException {
+		begin(MAP_HEADER);
+	}
+
+	/**
+	 * Ends the map begun by the last {@link #beginMap()}. The entries are
+	 * counted and the smallest header is written.
+	 * 
+	 * @throws IOException
+	 *             If the entries could not be counted
+	 * @throws IllegalStateException
+	 *             If no map is open, a value is missing or the last value is
+	 *             incomplete
+	 */
+	public void endMap() throws IOException {
+		end(MAP_HEADER);
+	}
+
+	/**
+	 * Returns true if a list or map with deferred size is open. Its header
+	 * needs to stay in the buffer until it is ended.
+	 * 
+	 * @return true if a list or map is open
+	 */
+	protected boolean hasOpenContainers() {
+		return depth > 0;
+	}
+
+	/**
+	 * Reserves the header of a list or map with deferred size
+	 * 
+	 * @param format
+	 *            Reserved header format
+	 * @throws IOException
+	 *             If object could not be serialized
+	 */
+	private void begin(int format) throws IOException {
+		if (depth == openHeaders.length) {
+			openHeaders = grow(openHeaders);
+			openFormats = grow(openFormats);
+			countedTo = grow(countedTo);
+			counts = grow(counts);
+		}
+		if (depth > 0) {
+			// count the values of the outer container written so far, so it
+			// can skip this one when it is ended
+			int outer = depth - 1;
+			int n = countValues(countedTo[outer], pos);
+			if (n >= 0) {
+				counts[outer] += n;
+				countedTo[outer] = pos;
+			}
+		}
+		// opened before writing, so the header is not drained or split
+		openHeaders[depth] = pos;
+		openFormats[depth] = format;
+		countedTo[depth] = pos + 5;
+		counts[depth] = 0;
+		depth++;
+		addByte(format);
+		addInt32(0);
+	}
+
+	/**
+	 * Doubles the size of an array
+	 * 
+	 * @param a
+	 *            Array
+	 * @return Copy of the array
+	 */
+	private static int[] grow(int[] a) {
+		int[] n = new int[a.length * 2];
+		System.arraycopy(a, 0, n, 0, a.length);
+		return n;
+	}
+
+	/**
+	 * Counts the values behind the reserved header and patches it
+	 * 
+	 * @param format
+	 *            Reserved header format
+	 * @throws IOException
+	 *             If the values could not be counted
+	 */
+	private void end(int format) throws IOException {
+		String kind = format == LIST_HEADER ? "list" : "map";
+		if (depth == 0 || openFormats[depth - 1] != format) {
+			throw new IllegalStateException("No open " + kind);
+		}
+		int n = countValues(countedTo[depth - 1], pos);
+		if (n < 0) {
+			throw new IllegalStateException("Last value of " + kind
+					+ " is incomplete");
+		}
+		depth--;
+		int header = openHeaders[depth];
+		int count = counts[depth] + n;
+		if (format == MAP_HEADER) {
+			if (count % 2 != 0) {
+				throw new IllegalStateException("Value of last map key missing");
+			}
+			count /= 2;
+		}
+		patchHeader(header, format, count);
+		if (depth > 0 && countedTo[depth - 1] == header) {
+			// the outer container was counted up to this one
+			counts[depth - 1]++;
+			countedTo[depth - 1] = pos;
+		}
+	}
+
+	/**
+	 * Counts the values written into a range of the buffer. Only headers are
+	 * decoded.
+	 * 
+	 * @param from
+	 *            Position of the first value
+	 * @param to
+	 *            Position behind the last value
+	 * @return Number of values or -1 if the last value does not end at the
+	 *         end of the range
+	 * @throws IOException
+	 *             If the values could not be decoded
+	 */
+	protected int countValues(int from, int to) throws IOException {
+		if (counter == null) {
+			counter = new MessagePaxDeserializer(b);
+		} else {
+			// the buffer is replaced when it grows
+			counter.reset(b);
+		}
+		return counter.countValues(from, to);
+	}
+
+	/**
+	 * Replaces a reserved header by the smallest header for the given size.
+	 * The values behind are moved forward.
+	 * 
+	 * @param header
+	 *            Position of the reserved header
+	 * @param format
+	 *            Reserved header format, array 32 or map 32
+	 * @param count
+	 *            Number of elements or entries
+	 */
+	protected void patchHeader(int header, int format, int count) {
+		pos -= patchHeader(b, header, pos, format, count);
+	}
+
+	/**
+	 * Replaces a reserved header in an array by the smallest header for the
+	 * given size. The values behind are moved forward.
+	 * 
+	 * @param a
+	 *            Array
+	 * @param header
+	 *            Position of the reserved header
+	 * @param end
+	 *            Position behind the last value
+	 * @param format
+	 *            Reserved header format, array 32 or map 32
+	 * @param count
+	 *            Number of elements or entries
+	 * @return Number of bytes the values were moved
+	 */
+	static int patchHeader(byte[] a, int header, int end, int format, int count) {
+		int len;
+		if (count < 16) {
+			// fixarray 0x90 and fixmap 0x80
+			a[header] = (byte) ((format == LIST_HEADER ? 0x90 : 0x80) | count);
+			len = 1;
+		} else if (count < 65536) {
+			// array 16 0xdc and map 16 0xde
+			a[header] = (byte) (format - 1);
+			a[header + 1] = (byte) (count >> 8);
+			a[header + 2] = (byte) count;
+			len = 3;
+		} else {
+			a[header + 1] = (byte) (count >> 24);
+			a[header + 2] = (byte) (count >> 16);
+			a[header + 3] = (byte) (count >> 8);
+			a[header + 4] = (byte) count;
+			return 0;
+		}
+		System.arraycopy(a, header + 5, a, header + len, end - header - 5);
+		return 5 - len;
+	}
+
+	/**
+	 * Grows the buffer keeping its content, used while a list or map with
+	 * deferred size is open.
+	 * 
+	 * @param len
+	 *            Number of bytes which need to be written next
+	 */
+	protected void growBuffer(int len) {
+		byte[] n = new byte[Math.max(2 * b.length, pos + len)];
+		System.arraycopy(b, 0, n, 0, pos);
+		b = n;
+	}
+
 	/**
 	 * Writes BigInteger object into the buffer. If object is null a MSGPACK NIL
 	 * object is stored.
@@ -272,75 +606,280 @@ public class MessagePaxSerializer extends MessagePaxNativeSerializer {
 		if (data == null) {
 			writeNil();
 		} else {
-			int length = data.length;
-			if (length == 1) {
-				// fixext 1 stores an integer and a byte array whose length is 1
-				// byte
-				// +------+------+------+
-				// | 0xd4 | type | data |
-				// +------+------+------+
-				addByte(0xd4);
-				addByte(type);
-				addBytes(data, 0, length);
-			} else if (length == 2) {
-				// fixext 2 stores an integer and a byte array whose length is 2
-				// bytes
-				// +------+------+------+------+
-				// | 0xd5 | type | data | data |
-				// +------+------+------+------+
-				addByte(0xd5);
-				addByte(type);
-				addBytes(data, 0, length);
-			} else if (length == 4) {
-				// fixext 4
+			writeExtHeader(type, data.length);
+			addBytes(data, 0, data.length);
+		}
+	}
+
+	/**
+	 * Writes an object as extension type. The payload is encoded by the
+	 * extension directly into the buffer. If object is null a MSGPACK NIL
+	 * object is stored.
+	 * 
+	 * @param type
+	 *            Extended Type ID (set by application)
+	 * @param extension
+	 *            Extension encoding the payload
+	 * @param value
+	 *            Object or null
+	 * @throws IOException
+	 *             If object could not be serialized or the extension wrote
+	 *             another number of bytes than announced by its length
+	 */
+	public <T> void writeExt(int type, MessagePaxExtension<T> extension,
+			T value) throws IOException {
+		if (value == null) {
+			writeNil();
+		} else {
+			int length = extension.getLength(value);
+			writeExtHeader(type, length);
+			int start = getLength();
+			extension.write(this, value);
+			int written = getLength() - start;
+			if (written != length) {
+				throw new IOException("Extension wrote " + written
+						+ " bytes instead of " + length);
+			}
+		}
+	}
+
+	/**
+	 * Writes the header of an extension object. The smallest of the formats
+	 * fixext and ext 8, 16 and 32 is chosen. The payload of the given length
+	 * has to be written next.
+	 * 
+	 * @param type
+	 *            Extended Type ID (set by application)
+	 * @param length
+	 *            Length of the payload
+	 * @throws IOException
+	 *             If object could not be serialized
+	 */
+	public void writeExtHeader(int type, int length) throws IOException {
+		if (length == 1) {
+			// fixext 1 stores an integer and a byte array whose length is 1
+			// byte
+			// +------+------+------+
+			// | 0xd4 | type | data |
+			// +------+------+------+
+			addByte(0xd4);
+			addByte(type);
+		} else if (length == 2) {
+			// fixext 2 stores an integer and a byte array whose length is 2
+			// bytes
+			// +------+------+------+------+
+			// | 0xd5 | type | data | data |
+			// +------+------+------+------+
+			addByte(0xd5);
+			addByte(type);
+		} else if (length == 4) {
+			// fixext 4
+			addByte(0xd6);
+			addByte(type);
+		} else if (length == 8) {
+			// fixext 8
+			addByte(0xd7);
+			addByte(type);
+		} else if (length == 16) {
+			// fixext 16
+			addByte(0xd8);
+			addByte(type);
+		} else if (length < 256) {
+			// ext 8 stores an integer and a byte array whose length is upto
+			// (2^8)-1
+			// bytes:
+			// +------+--------+------+======+
+			// | 0xc7 |XXXXXXXX| type | data |
+			// +------+--------+------+======+
+			addByte(0xc7);
+			addByte(length);
+			addByte(type);
+		} else if (length < 65536) {
+			// ext 16 stores an integer and a byte array whose length is
+			// upto
+			// (2^16)-1 bytes:
+			// +------+--------+--------+------+======+
+			// | 0xc8 |YYYYYYYY|YYYYYYYY| type | data |
+			// +------+--------+--------+------+======+
+			addByte(0xc8);
+			addInt16(length);
+			addByte(type);
+		} else {
+			// ext 32 stores an integer and a byte array whose length is
+			// upto
+			// (2^32)-1 bytes:
+			// +------+--------+--------+--------+--------+------+======+
+			// | 0xc9 |ZZZZZZZZ|ZZZZZZZZ|ZZZZZZZZ|ZZZZZZZZ| type | data |
+			// +------+--------+--------+--------+--------+------+======+
+			addByte(0xc9);
+			addInt32(length);
+			addByte(type);
+		}
+	}
+
+	/**
+	 * Writes a timestamp as extension type -1. The smallest of the formats
+	 * timestamp 32, 64 and 96 is chosen, the data is encoded directly into the
+	 * buffer.
+	 * 
+	 * @param seconds
+	 *            Seconds since 1970-01-01 00:00:00 UTC
+	 * @param nanos
+	 *            Nanoseconds within the second
+	 * @throws IOException
+	 *             If object could not be serialized
+	 * @throws IllegalArgumentException
+	 *             If nanoseconds are not in range 0 to 999999999
+	 */
+	public void writeTimestamp(long seconds, int nanos) throws IOException {
+		MessagePaxTimestamp.checkNanos(nanos);
+		if ((seconds >>> 34) == 0) {
+			if (nanos == 0 && (seconds >>> 32) == 0) {
+				// timestamp 32 stores the seconds in an uint32
 				addByte(0xd6);
-				addByte(type);
-				addBytes(data, 0, length);
-			} else if (length == 8) {
-				// fixext 8
-				addByte(0xd7);
-				addByte(type);
-				addBytes(data, 0, length);
-			} else if (length == 16) {
-				// fixext 16
-				addByte(0xd8);
-				addByte(type);
-				addBytes(data, 0, length);
-			} else if (length < 256) {
-				// ext 8 stores an integer and a byte array whose length is upto
-				// (2^8)-1
-				// bytes:
-				// +------+--------+------+======+
-				// | 0xc7 |XXXXXXXX| type | data |
-				// +------+--------+------+======+
-				addByte(0xc7);
-				addByte(length);
-				addByte(type);
-				addBytes(data, 0, length);
-			} else if (length < 65536) {
-				// ext 16 stores an integer and a byte array whose length is
-				// upto
-				// (2^16)-1 bytes:
-				// +------+--------+--------+------+======+
-				// | 0xc8 |YYYYYYYY|YYYYYYYY| type | data |
-				// +------+--------+--------+------+======+
-				addByte(0xc8);
-				addInt16(length);
-				addByte(type);
-				addBytes(data, 0, length);
+				addByte(MessagePaxTimestamp.EXT_TYPE);
+				addInt32((int) seconds);
 			} else {
-				// ext 32 stores an integer and a byte array whose length is
-				// upto
-				// (2^32)-1 bytes:
-				// +------+--------+--------+--------+--------+------+======+
-				// | 0xc9 |ZZZZZZZZ|ZZZZZZZZ|ZZZZZZZZ|ZZZZZZZZ| type | data |
-				// +------+--------+--------+--------+--------+------+======+
-				addByte(0xc9);
-				addInt32(length);
-				addByte(type);
-				addBytes(data, 0, length);
+				// timestamp 64 stores nanoseconds in the upper 30 bits and
+				// seconds in the lower 34 bits of an uint64
+				addByte(0xd7);
+				addByte(MessagePaxTimestamp.EXT_TYPE);
+				addInt64(((long) nanos << 34) | seconds);
 			}
+		} else {
+			// timestamp 96 stores nanoseconds in an uint32 and seconds in an
+			// int64
+			addByte(0xc7);
+			addByte(12);
+			addByte(MessagePaxTimestamp.EXT_TYPE);
+			addInt32(nanos);
+			addInt64(seconds);
 		}
 	}
 
+	/**
+	 * Writes a timestamp as extension type -1. If object is null a MSGPACK NIL
+	 * object is stored.
+	 * 
+	 * @param t
+	 *            Timestamp or null
+	 * @throws IOException
+	 *             If object could not be serialized
+	 */
+	public void writeTimestamp(MessagePaxTimestamp t) throws IOException {
+		if (t == null) {
+			writeNil();
+		} else {
+			writeTimestamp(t.getSeconds(), t.getNanos());
+		}
+	}
+
+	/**
+	 * Writes a UUID as fixext 16 of the given extension type. The bits are
+	 * stored in big endian order, most significant bits first.
+	 * 
+	 * @param type
+	 *            Extended Type ID (set by application)
+	 * @param mostSigBits
+	 *            Most significant 64 bits
+	 * @param leastSigBits
+	 *            Least significant 64 bits
+	 * @throws IOException
+	 *             If object could not be serialized
+	 */
+	public void writeUuid(int type, long mostSigBits, long leastSigBits)
+			throws IOException {
+		addByte(0xd8);
+		addByte(type);
+		addInt64(mostSigBits);
+		addInt64(leastSigBits);
+	}
+
+	/**
+	 * Writes a UUID as fixext 16 of the given extension type. If object is
+	 * null a MSGPACK NIL object is stored.
+	 * 
+	 * @param type
+	 *            Extended Type ID (set by application)
+	 * @param uuid
+	 *            UUID or null
+	 * @throws IOException
+	 *             If object could not be serialized
+	 */
+	public void writeUuid(int type, UUID uuid) throws IOException {
+		if (uuid == null) {
+			writeNil();
+		} else {
+			writeUuid(type, uuid.getMostSignificantBits(), uuid
+					.getLeastSignificantBits());
+		}
+	}
+
+	/**
+	 * Writes data which is already encoded, like map keys encoded in advance.
+	 * The data is copied as it is.
+	 * 
+	 * @param encoded
+	 *            Encoded MSGPACK data
+	 * @throws IOException
+	 *             If object could not be serialized
+	 */
+	public void writeEncoded(byte[] encoded) throws IOException {
+		addBytes(encoded, 0, encoded.length);
+	}
+
+	/**
+	 * Writes a value of any type. Lists and maps are written completely.
+	 * 
+	 * @param v
+	 *            Value or null
+	 * @throws IOException
+	 *             If object could not be serialized
+	 */
+	public void writeValue(MessagePaxValue v) throws IOException {
+		if (v == null) {
+			writeNil();
+			return;
+		}
+		switch (v.getType()) {
+		case NIL:
+			writeNil();
+			break;
+		case BOOLEAN:
+			writeBoolean(v.asBoolean());
+			break;
+		case INTEGER:
+			writeLong(v.asLong());
+			break;
+		case FLOAT:
+			if (v.isSinglePrecision()) {
+				writeFloat((float) v.asDouble());
+			} else {
+				writeDouble(v.asDouble());
+			}
+			break;
+		case STRING:
+			writeString(v.asString());
+			break;
+		case BINARY:
+			writeByteArray(v.asBytes());
+			break;
+		case EXTENSION:
+			writeExtData(v.getExtType(), v.asBytes());
+			break;
+		case LIST:
+			writeListBegin(v.size());
+			for (int i = 0; i < v.size(); i++) {
+				writeValue(v.get(i));
+			}
+			break;
+		case MAP:
+			writeMapBegin(v.size());
+			for (int i = 0; i < v.size(); i++) {
+				writeValue(v.getKey(i));
+				writeValue(v.getValue(i));
+			}
+			break;
+		}
+	}
 }
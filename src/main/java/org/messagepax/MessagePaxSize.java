@@ -0,0 +1,476 @@
+package org.messagepax;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Computes the exact number of bytes written by the methods of
+ * {@link MessagePaxSerializer}, without encoding anything. Each method
+ * follows the rules of the write method of the same name, so buffers can be
+ * allocated with the right size at once.
+ * 
+ * <pre>
+ * int size = MessagePaxSize.sizeOfMapBegin(2) + MessagePaxSize.sizeOfString(&quot;id&quot;)
+ * 		+ MessagePaxSize.sizeOfLong(id) + ...;
+ * MessagePaxSerializer s = new MessagePaxSerializer(new byte[size]);
+ * </pre>
+ */
+public final class MessagePaxSize {
+
+	/** Size of NIL */
+	public static final int NIL = 1;
+
+	/**
+	 * Private constructor
+	 */
+	private MessagePaxSize() {
+	}
+
+	/**
+	 * Returns the size of a boolean value
+	 * 
+	 * @param b
+	 *            boolean value
+	 * @return Number of bytes
+	 */
+	public static int sizeOfBoolean(boolean b) {
+		return 1;
+	}
+
+	/**
+	 * Returns the size of a Boolean object
+	 * 
+	 * @param b
+	 *            Boolean object or null
+	 * @return Number of bytes
+	 */
+	public static int sizeOfBoolean(Boolean b) {
+		return 1;
+	}
+
+	/**
+	 * Returns the size of an int value
+	 * 
+	 * @param d
+	 *            int value
+	 * @return Number of bytes
+	 */
+	public static int sizeOfInteger(int d) {
+		if (d < -(1 << 5)) {
+			if (d < -(1 << 15)) {
+				return 5;
+			} else if (d < -(1 << 7)) {
+				return 3;
+			}
+			return 2;
+		} else if (d < (1 << 7)) {
+			return 1;
+		} else if (d < (1 << 8)) {
+			return 2;
+		} else if (d < (1 << 16)) {
+			return 3;
+		}
+		return 5;
+	}
+
+	/**
+	 * Returns the size of an Integer object
+	 * 
+	 * @param i
+	 *            Integer object or null
+	 * @return Number of bytes
+	 */
+	public static int sizeOfInteger(Integer i) {
+		return i == null ? NIL : sizeOfInteger(i.intValue());
+	}
+
+	/**
+	 * Returns the size of a long value
+	 * 
+	 * @param d
+	 *            long value
+	 * @return Number of bytes
+	 */
+	public static int sizeOfLong(long d) {
+		if (d < -(1L << 31) || d >= (1L << 32)) {
+			return 9;
+		} else if (d >= (1L << 31)) {
+			// uint 32
+			return 5;
+		}
+		return sizeOfInteger((int) d);
+	}
+
+	/**
+	 * Returns the size of a Long object
+	 * 
+	 * @param l
+	 *            Long object or null
+	 * @return Number of bytes
+	 */
+	public static int sizeOfLong(Long l) {
+		return l == null ? NIL : sizeOfLong(l.longValue());
+	}
+
+	/**
+	 * Returns the size of a float value
+	 * 
+	 * @param f
+	 *            float value
+	 * @return Number of bytes
+	 */
+	public static int sizeOfFloat(float f) {
+		return 5;
+	}
+
+	/**
+	 * Returns the size of a Float object
+	 * 
+	 * @param f
+	 *            Float object or null
+	 * @return Number of bytes
+	 */
+	public static int sizeOfFloat(Float f) {
+		return f == null ? NIL : 5;
+	}
+
+	/**
+	 * Returns the size of a double value
+	 * 
+	 * @param d
+	 *            double value
+	 * @return Number of bytes
+	 */
+	public static int sizeOfDouble(double d) {
+		return 9;
+	}
+
+	/**
+	 * Returns the size of a Double object
+	 * 
+	 * @param d
+	 *            Double object or null
+	 * @return Number of bytes
+	 */
+	public static int sizeOfDouble(Double d) {
+		return d == null ? NIL : 9;
+	}
+
+	/**
+	 * Returns the size of a string header
+	 * 
+	 * @param len
+	 *            Number of bytes of the UTF-8 encoded string
+	 * @return Number of bytes of the header
+	 */
+	public static int sizeOfStringLength(int len) {
+		if (len < 32) {
+			return 1;
+		} else if (len < 65536) {
+			return 3;
+		}
+		return 5;
+	}
+
+	/**
+	 * Returns the size of a String object. The UTF-8 length is counted, the
+	 * string is not encoded.
+	 * 
+	 * @param s
+	 *            String object or null
+	 * @return Number of bytes
+	 */
+	public static int sizeOfString(String s) {
+		if (s == null) {
+			return NIL;
+		}
+		int len = Utils.utf8Length(s);
+		return sizeOfStringLength(len) + len;
+	}
+
+	/**
+	 * Returns the size of a byte array header
+	 * 
+	 * @param len
+	 *            Number of bytes
+	 * @return Number of bytes of the header
+	 */
+	public static int sizeOfByteArrayLength(int len) {
+		if (len < 256) {
+			return 2;
+		} else if (len < 65536) {
+			return 3;
+		}
+		return 5;
+	}
+
+	/**
+	 * Returns the size of a byte array
+	 * 
+	 * @param buffer
+	 *            Byte array or null
+	 * @return Number of bytes
+	 */
+	public static int sizeOfByteArray(byte[] buffer) {
+		if (buffer == null) {
+			return NIL;
+		}
+		return sizeOfByteArrayLength(buffer.length) + buffer.length;
+	}
+
+	/**
+	 * Returns the size of a list header
+	 * 
+	 * @param size
+	 *            Number of elements
+	 * @return Number of bytes of the header
+	 */
+	public static int sizeOfListBegin(int size) {
+		if (size < 16) {
+			return 1;
+		} else if (size < 65536) {
+			return 3;
+		}
+		return 5;
+	}
+
+	/**
+	 * Returns the size of a map header
+	 * 
+	 * @param size
+	 *            Number of entries
+	 * @return Number of bytes of the header
+	 */
+	public static int sizeOfMapBegin(int size) {
+		return sizeOfListBegin(size);
+	}
+
+	/**
+	 * Returns the size of a String list
+	 * 
+	 * @param list
+	 *            List object or null
+	 * @return Number of bytes
+	 */
+	public static int sizeOfStringList(List<String> list) {
+		if (list == null) {
+			return NIL;
+		}
+		int size = list.size();
+		int n = sizeOfListBegin(size);
+		for (int i = 0; i < size; i++) {
+			n += sizeOfString(list.get(i));
+		}
+		return n;
+	}
+
+	/**
+	 * Returns the size of a String map
+	 * 
+	 * @param map
+	 *            Map object or null
+	 * @return Number of bytes
+	 */
+	public static int sizeOfStringMap(Map<String, String> map) {
+		if (map == null) {
+			return NIL;
+		}
+		int size = map.size();
+		int n = sizeOfMapBegin(size);
+		Iterator<Map.Entry<String, String>> it = map.entrySet().iterator();
+		for (int i = 0; i < size; i++) {
+			Map.Entry<String, String> e = it.next();
+			n += sizeOfString(e.getKey()) + sizeOfString(e.getValue());
+		}
+		return n;
+	}
+
+	/**
+	 * Returns the size of a map key encoded by a dictionary
+	 * 
+	 * @param key
+	 *            Key
+	 * @param dictionary
+	 *            Key dictionary
+	 * @return Number of bytes
+	 */
+	public static int sizeOfKey(String key, MessagePaxKeyDictionary dictionary) {
+		int index = dictionary.indexOf(key);
+		return index >= 0 ? sizeOfInteger(index) : sizeOfString(key);
+	}
+
+	/**
+	 * Returns the size of a String map with keys encoded by a dictionary
+	 * 
+	 * @param map
+	 *            Map object or null
+	 * @param dictionary
+	 *            Key dictionary
+	 * @return Number of bytes
+	 */
+	public static int sizeOfStringMap(Map<String, String> map,
+			MessagePaxKeyDictionary dictionary) {
+		if (map == null) {
+			return NIL;
+		}
+		int size = map.size();
+		int n = sizeOfMapBegin(size);
+		Iterator<Map.Entry<String, String>> it = map.entrySet().iterator();
+		for (int i = 0; i < size; i++) {
+			Map.Entry<String, String> e = it.next();
+			n += sizeOfKey(e.getKey(), dictionary) + sizeOfString(e.getValue());
+		}
+		return n;
+	}
+
+	/**
+	 * Returns the size of a BigInteger object
+	 * 
+	 * @param bi
+	 *            BigInteger object or null
+	 * @return Number of bytes
+	 */
+	public static int sizeOfBigInteger(BigInteger bi) {
+		return bi == null ? NIL : sizeOfLong(bi.longValue());
+	}
+
+	/**
+	 * Returns the size of an extension header
+	 * 
+	 * @param length
+	 *            Length of the payload
+	 * @return Number of bytes of the header
+	 */
+	public static int sizeOfExtHeader(int length) {
+		if (length == 1 || length == 2 || length == 4 || length == 8
+				|| length == 16) {
+			return 2;
+		} else if (length < 256) {
+			return 3;
+		} else if (length < 65536) {
+			return 4;
+		}
+		return 6;
+	}
+
+	/**
+	 * Returns the size of an extension object
+	 * 
+	 * @param data
+	 *            Extension data or null
+	 * @return Number of bytes
+	 */
+	public static int sizeOfExtData(byte[] data) {
+		if (data == null) {
+			return NIL;
+		}
+		return sizeOfExtHeader(data.length) + data.length;
+	}
+
+	/**
+	 * Returns the size of a timestamp
+	 * 
+	 * @param seconds
+	 *            Seconds since 1970-01-01 00:00:00 UTC
+	 * @param nanos
+	 *            Nanoseconds within the second
+	 * @return Number of bytes
+	 */
+	public static int sizeOfTimestamp(long seconds, int nanos) {
+		if ((seconds >>> 34) == 0) {
+			return nanos == 0 && (seconds >>> 32) == 0 ? 6 : 10;
+		}
+		return 15;
+	}
+
+	/**
+	 * Returns the size of a timestamp
+	 * 
+	 * @param t
+	 *            Timestamp or null
+	 * @return Number of bytes
+	 */
+	public static int sizeOfTimestamp(MessagePaxTimestamp t) {
+		return t == null ? NIL : sizeOfTimestamp(t.getSeconds(), t.getNanos());
+	}
+
+	/**
+	 * Returns the size of a UUID
+	 * 
+	 * @param uuid
+	 *            UUID or null
+	 * @return Number of bytes
+	 */
+	public static int sizeOfUuid(UUID uuid) {
+		return uuid == null ? NIL : 18;
+	}
+
+	/**
+	 * Returns the size of a value of any type
+	 * 
+	 * @param v
+	 *            Value or null
+	 * @return Number of bytes
+	 */
+	public static int sizeOfValue(MessagePaxValue v) {
+		if (v == null) {
+			return NIL;
+		}
+		switch (v.getType()) {
+		case BOOLEAN:
+			return 1;
+		case INTEGER:
+			return sizeOfLong(v.asLong());
+		case FLOAT:
+			return v.isSinglePrecision() ? 5 : 9;
+		case STRING:
+			return sizeOfString(v.asString());
+		case BINARY:
+			return sizeOfByteArray(v.asBytes());
+		case EXTENSION:
+			return sizeOfExtData(v.asBytes());
+		case LIST:
+			int n = sizeOfListBegin(v.size());
+			for (int i = 0; i < v.size(); i++) {
+				n += sizeOfValue(v.get(i));
+			}
+			return n;
+		case MAP:
+			int m = sizeOfMapBegin(v.size());
+			for (int i = 0; i < v.size(); i++) {
+				m += sizeOfValue(v.getKey(i)) + sizeOfValue(v.getValue(i));
+			}
+			return m;
+		default:
+			return NIL;
+		}
+	}
+
+	/**
+	 * Returns the size of an object written by a codec. Generated and mapped
+	 * codecs compute the size without encoding, other codecs encode the
+	 * object into a temporary buffer.
+	 * 
+	 * @param codec
+	 *            Codec
+	 * @param value
+	 *            Object or null
+	 * @return Number of bytes
+	 * @throws IOException
+	 *             If object could not be serialized
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> int sizeOf(MessagePaxCodec<T> codec, T value)
+			throws IOException {
+		if (codec instanceof MessagePaxSizedCodec<?>) {
+			return ((MessagePaxSizedCodec<T>) codec).sizeOf(value);
+		}
+		MessagePaxChunkedSerializer s = new MessagePaxChunkedSerializer(1024);
+		codec.write(s, value);
+		return s.getLength();
+	}
+}
@@ -0,0 +1,25 @@
+package org.messagepax;
+
+import java.io.IOException;
+
+/**
+ * Codec which computes the encoded size of objects without encoding them.
+ * Generated codecs and the codecs of {@link MessagePaxMapper} implement it.
+ * 
+ * @param <T>
+ *            Type of the objects
+ */
+public interface MessagePaxSizedCodec<T> extends MessagePaxCodec<T> {
+
+	/**
+	 * Returns the number of bytes written by
+	 * {@link #write(MessagePaxSerializer, Object)}
+	 * 
+	 * @param value
+	 *            Object or null
+	 * @return Number of bytes
+	 * @throws IOException
+	 *             If the size of a nested object could not be computed
+	 */
+	int sizeOf(T value) throws IOException;
+}
@@ -0,0 +1,230 @@
+package org.messagepax;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+
+/**
+ * View on a range of a byte array, used to access strings and byte arrays in
+ * a deserializer buffer without copying them. A slice object can be reused
+ * for many read operations.
+ * <p/>
+ * The slice is also a {@link CharSequence} of the UTF-8 decoded content. The
+ * content is decoded lazily on first access. ASCII content is never decoded,
+ * chars are taken from the bytes directly.
+ * <p/>
+ * The slice is only valid as long as the underlying buffer is not changed.
+ */
+public class MessagePaxSlice implements CharSequence {
+
+	/** Underlying array */
+	private byte[] array;
+
+	/** Offset of the slice in the array */
+	private int offset;
+
+	/** Length of the slice in bytes */
+	private int length;
+
+	/** Array owned by the slice, used if data can not be referenced */
+	private byte[] own;
+
+	/** 1 if content is ASCII, 0 if not, -1 if not checked yet */
+	private int ascii = -1;
+
+	/** Decoded string, null if not decoded yet */
+	private String decoded;
+
+	/**
+	 * Creates an empty slice
+	 */
+	public MessagePaxSlice() {
+		this.array = new byte[0];
+	}
+
+	/**
+	 * Sets the range this slice refers to.
+	 * 
+	 * @param array
+	 *            Underlying array
+	 * @param offset
+	 *            Offset in the array
+	 * @param length
+	 *            Length in bytes
+	 */
+	public void set(byte[] array, int offset, int length) {
+		this.array = array;
+		this.offset = offset;
+		this.length = length;
+		this.ascii = -1;
+		this.decoded = null;
+	}
+
+	/**
+	 * Returns an array owned by this slice with at least the given size. Used
+	 * to copy data which can not be referenced directly, e.g. from direct
+	 * byte buffers. The array is reused by subsequent calls.
+	 * 
+	 * @param size
+	 *            Minimum size
+	 * @return Array owned by this slice
+	 */
+	byte[] ownArray(int size) {
+		if (own == null || own.length < size) {
+			own = new byte[size];
+		}
+		return own;
+	}
+
+	/**
+	 * Returns the underlying array
+	 * 
+	 * @return Underlying array
+	 */
+	public byte[] getArray() {
+		return array;
+	}
+
+	/**
+	 * Returns the offset of the slice in the underlying array
+	 * 
+	 * @return Offset
+	 */
+	public int getOffset() {
+		return offset;
+	}
+
+	/**
+	 * Returns the length of the slice in bytes. Note that {@link #length()}
+	 * returns the number of chars instead.
+	 * 
+	 * @return Length in bytes
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * Returns the byte at the given index of the slice
+	 * 
+	 * @param index
+	 *            Index in the slice
+	 * @return Byte
+	 */
+	public byte getByte(int index) {
+		if (index < 0 || index >= length) {
+			throw new IndexOutOfBoundsException("Index " + index);
+		}
+		return array[offset + index];
+	}
+
+	/**
+	 * Returns true if the slice contains the same bytes like the given array
+	 * 
+	 * @param bytes
+	 *            Array to compare with
+	 * @return true if content is equal
+	 */
+	public boolean contentEquals(byte[] bytes) {
+		if (bytes.length != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (bytes[i] != array[offset + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns a read-only byte buffer wrapping the slice without copying
+	 * 
+	 * @return Byte buffer
+	 */
+	public ByteBuffer toByteBuffer() {
+		return ByteBuffer.wrap(array, offset, length).slice()
+				.asReadOnlyBuffer();
+	}
+
+	/**
+	 * Returns a copy of the slice content
+	 * 
+	 * @return New byte array
+	 */
+	public byte[] toByteArray() {
+		byte[] ret = new byte[length];
+		System.arraycopy(array, offset, ret, 0, length);
+		return ret;
+	}
+
+	/**
+	 * Returns true if the content is ASCII, so no decoding is needed
+	 * 
+	 * @return true for ASCII content
+	 */
+	private boolean isAscii() {
+		if (ascii < 0) {
+			ascii = 1;
+			for (int i = offset; i < offset + length; i++) {
+				if (array[i] < 0) {
+					ascii = 0;
+					break;
+				}
+			}
+		}
+		return ascii == 1;
+	}
+
+	/**
+	 * Returns the number of chars of the decoded content
+	 * 
+	 * @return Number of chars
+	 */
+	public int length() {
+		return isAscii() ? length : toString().length();
+	}
+
+	/**
+	 * Returns the char at the given index of the decoded content
+	 * 
+	 * @param index
+	 *            Char index
+	 * @return Char
+	 */
+	public char charAt(int index) {
+		if (isAscii()) {
+			return (char) getByte(index);
+		}
+		return toString().charAt(index);
+	}
+
+	/**
+	 * Returns a part of the decoded content
+	 * 
+	 * @param start
+	 *            Index of first char
+	 * @param end
+	 *            Index behind last char
+	 * @return Part of the decoded content
+	 */
+	public CharSequence subSequence(int start, int end) {
+		return toString().substring(start, end);
+	}
+
+	/**
+	 * Returns the decoded content. The string is decoded once and kept.
+	 * 
+	 * @return Decoded content
+	 */
+	public String toString() {
+		if (decoded == null) {
+			try {
+				decoded = new String(array, offset, length,
+						MessagePaxSerializer.STRING_ENCODING);
+			} catch (UnsupportedEncodingException e) {
+				throw new IllegalStateException(e.getMessage());
+			}
+		}
+		return decoded;
+	}
+}
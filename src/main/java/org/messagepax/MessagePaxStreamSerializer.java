@@ -0,0 +1,298 @@
+package org.messagepax;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Messagepack serializer writing into an {@link OutputStream} or a
+ * {@link WritableByteChannel}. Data is collected in a small internal buffer
+ * which is drained into the sink whenever it is full, so the memory usage is
+ * constant regardless of the amount of data written. This does not hold while
+ * a list or map with deferred size is open, the buffer then grows until the
+ * whole list or map is kept and its header is patched.
+ * <p/>
+ * Call {@link #flush()} when you are done to drain the remaining data.
+ * {@link #getLength()} returns the total number of bytes written so far, while
+ * {@link #getBuffer()} just contains the data which was not drained yet.
+ * <p/>
+ * The public add methods do not throw checked exceptions. If the sink fails
+ * while the buffer is drained for a single byte or number, the IOException
+ * is kept and thrown by the next write of a string or byte array and by
+ * {@link #flush()}.
+ * 
+ * <pre>
+ * MessagePaxStreamSerializer s = new MessagePaxStreamSerializer(out);
+ * s.writeListBegin(rows.size());
+ * for (String row : rows) {
+ * 	s.writeString(row);
+ * }
+ * s.flush();
+ * </pre>
+ */
+public class MessagePaxStreamSerializer extends MessagePaxSerializer {
+
+	/** Default size of the internal buffer */
+	public static final int DEFAULT_THRESHOLD = 8192;
+
+	/** Destination stream, null if writing to a channel */
+	private final OutputStream out;
+
+	/** Destination channel, null if writing to a stream */
+	private final WritableByteChannel channel;
+
+	/** Number of bytes already drained into the sink */
+	private long written;
+
+	/** Failure of the sink not thrown yet */
+	private IOException failure;
+
+	/**
+	 * Creates a serializer writing to the given stream using the default
+	 * threshold.
+	 * 
+	 * @param out
+	 *            Destination stream
+	 */
+	public MessagePaxStreamSerializer(OutputStream out) {
+		this(out, DEFAULT_THRESHOLD);
+	}
+
+	/**
+	 * Creates a serializer writing to the given stream.
+	 * 
+	 * @param out
+	 *            Destination stream
+	 * @param threshold
+	 *            Number of bytes collected before they are drained into the
+	 *            stream
+	 */
+	public MessagePaxStreamSerializer(OutputStream out, int threshold) {
+		super(new byte[checkThreshold(threshold)]);
+		this.out = out;
+		this.channel = null;
+	}
+
+	/**
+	 * Creates a serializer writing to the given channel using the default
+	 * threshold.
+	 * 
+	 * @param channel
+	 *            Destination channel
+	 */
+	public MessagePaxStreamSerializer(WritableByteChannel channel) {
+		this(channel, DEFAULT_THRESHOLD);
+	}
+
+	/**
+	 * Creates a serializer writing to the given channel.
+	 * 
+	 * @param channel
+	 *            Destination channel
+	 * @param threshold
+	 *            Number of bytes collected before they are drained into the
+	 *            channel
+	 */
+	public MessagePaxStreamSerializer(WritableByteChannel channel,
+			int threshold) {
+		super(new byte[checkThreshold(threshold)]);
+		this.out = null;
+		this.channel = channel;
+	}
+
+	/**
+	 * Validates the threshold
+	 * 
+	 * @param threshold
+	 *            Threshold to check
+	 * @return Threshold
+	 */
+	private static int checkThreshold(int threshold) {
+		if (threshold < 16) {
+			throw new IllegalArgumentException("Threshold too small "
+					+ threshold);
+		}
+		return threshold;
+	}
+
+	/**
+	 * Drains the internal buffer into the sink. While a list or map with
+	 * deferred size is open the buffer grows instead.
+	 * 
+	 * @param len
+	 *            Number of bytes which need to be written next
+	 */
+	protected void overflow(int len) {
+		try {
+			ensure(len);
+		} catch (IOException e) {
+			// thrown by the next checked write, the data is lost anyway
+			failure = e;
+			pos = 0;
+		}
+	}
+
+	/**
+	 * Drains the internal buffer into the sink or grows it while a list or map
+	 * with deferred size is open.
+	 * 
+	 * @param len
+	 *            Number of bytes which need to be written next
+	 * @throws IOException
+	 *             If data could not be written
+	 */
+	private void ensure(int len) throws IOException {
+		if (hasOpenContainers()) {
+			// open headers are patched later, keep them in the buffer
+			growBuffer(len);
+		} else {
+			drain();
+		}
+	}
+
+	/**
+	 * Adds bytes from given buffer. Large arrays are written directly into the
+	 * sink without copying them into the internal buffer.
+	 * 
+	 * @param buffer
+	 *            Source buffer
+	 * @param offset
+	 *            Offset to start copying
+	 * @param len
+	 *            Number of bytes to copy
+	 * @throws IOException
+	 *             If data could not be written
+	 */
+	protected void addBytes(byte[] buffer, int offset, int len)
+			throws IOException {
+		checkFailure();
+		if (b.length - pos < len) {
+			ensure(len);
+			if (len > b.length - pos) {
+				write(buffer, offset, len);
+				written += len;
+				return;
+			}
+		}
+		System.arraycopy(buffer, offset, b, pos, len);
+		pos += len;
+	}
+
+	/**
+	 * Adds a string encoded in UTF-8. The buffer is drained before if needed,
+	 * so that a failure of the sink is thrown directly.
+	 * 
+	 * @param s
+	 *            String to encode
+	 * @param len
+	 *            Number of bytes of the encoded string
+	 * @throws IOException
+	 *             If data could not be written
+	 */
+	protected void addUtf8(String s, int len) throws IOException {
+		checkFailure();
+		if (b.length - pos < len && !hasOpenContainers()) {
+			drain();
+		}
+		super.addUtf8(s, len);
+	}
+
+	/**
+	 * Writes the content of the internal buffer into the sink.
+	 * 
+	 * @throws IOException
+	 *             If data could not be written
+	 */
+	private void drain() throws IOException {
+		checkFailure();
+		if (pos > 0) {
+			write(b, 0, pos);
+			written += pos;
+			pos = 0;
+		}
+	}
+
+	/**
+	 * Throws a failure of the sink which occurred while a single value was
+	 * added. The serializer keeps failing until it is reset.
+	 * 
+	 * @throws IOException
+	 *             If the sink failed before
+	 */
+	private void checkFailure() throws IOException {
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * Writes bytes into the sink.
+	 * 
+	 * @param buffer
+	 *            Source buffer
+	 * @param offset
+	 *            Offset to start
+	 * @param len
+	 *            Number of bytes to write
+	 * @throws IOException
+	 *             If data could not be written
+	 */
+	private void write(byte[] buffer, int offset, int len) throws IOException {
+		if (out != null) {
+			out.write(buffer, offset, len);
+		} else {
+			ByteBuffer bb = ByteBuffer.wrap(buffer, offset, len);
+			while (bb.hasRemaining()) {
+				channel.write(bb);
+			}
+		}
+	}
+
+	/**
+	 * Drains the internal buffer into the sink and flushes the stream. While a
+	 * list or map with deferred size is open the data is kept in the buffer.
+	 * 
+	 * @throws IOException
+	 *             If data could not be written
+	 */
+	public void flush() throws IOException {
+		checkFailure();
+		if (!hasOpenContainers()) {
+			drain();
+		}
+		if (out != null) {
+			out.flush();
+		}
+	}
+
+	/**
+	 * Discards data which was not drained yet, a failure of the sink and
+	 * resets the byte counter.
+	 */
+	public void reset() {
+		super.reset();
+		written = 0;
+		failure = null;
+	}
+
+	/**
+	 * Returns number of bytes written so far, including the data which was not
+	 * drained yet. Use {@link #getTotalLength()} for streams larger than 2 GB.
+	 * 
+	 * @return Number of bytes written
+	 */
+	public int getLength() {
+		return (int) getTotalLength();
+	}
+
+	/**
+	 * Returns number of bytes written so far, including the data which was not
+	 * drained yet.
+	 * 
+	 * @return Number of bytes written
+	 */
+	public long getTotalLength() {
+		return written + pos;
+	}
+}
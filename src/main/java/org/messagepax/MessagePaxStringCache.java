@@ -0,0 +1,198 @@
+package org.messagepax;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Bounded cache of decoded strings, used to avoid creating new String objects
+ * for strings which occur again and again, like the keys of maps.
+ * <p/>
+ * Strings are looked up by hashing their raw UTF-8 bytes. If the same bytes
+ * were decoded before, the cached String is returned without decoding or
+ * allocating anything. The cache has a fixed number of slots, a new string
+ * replaces the string stored in its slot.
+ * <p/>
+ * The cache is lock-free and can be shared by deserializers running in
+ * different threads. Entries are immutable, so a thread sees either an old or
+ * a new entry but never a partly initialized one.
+ * 
+ * <pre>
+ * MessagePaxStringCache cache = new MessagePaxStringCache(1024, 32);
+ * MessagePaxDeserializer d = new MessagePaxDeserializer(buf);
+ * d.setStringCache(cache);
+ * </pre>
+ */
+public class MessagePaxStringCache {
+
+	/**
+	 * Cached string together with its encoded bytes
+	 */
+	private static final class Entry {
+
+		/** Hash of the encoded bytes */
+		final int hash;
+
+		/** Encoded bytes */
+		final byte[] bytes;
+
+		/** Decoded string */
+		final String value;
+
+		/**
+		 * Creates an entry
+		 * 
+		 * @param hash
+		 *            Hash of the encoded bytes
+		 * @param bytes
+		 *            Encoded bytes
+		 * @param value
+		 *            Decoded string
+		 */
+		Entry(int hash, byte[] bytes, String value) {
+			this.hash = hash;
+			this.bytes = bytes;
+			this.value = value;
+		}
+	}
+
+	/** Slots of the cache */
+	private final Entry[] entries;
+
+	/** Mask to compute the slot of a hash */
+	private final int mask;
+
+	/** Maximum number of bytes of cached strings */
+	private final int maxLength;
+
+	/**
+	 * Creates a string cache
+	 * 
+	 * @param size
+	 *            Number of slots, rounded up to a power of two
+	 * @param maxLength
+	 *            Maximum length in bytes of strings to cache. Longer strings
+	 *            are decoded without caching.
+	 */
+	public MessagePaxStringCache(int size, int maxLength) {
+		int n = 1;
+		while (n < size) {
+			n <<= 1;
+		}
+		this.entries = new Entry[n];
+		this.mask = n - 1;
+		this.maxLength = maxLength;
+	}
+
+	/**
+	 * Returns the maximum length in bytes of cached strings
+	 * 
+	 * @return Maximum length in bytes
+	 */
+	public int getMaxLength() {
+		return maxLength;
+	}
+
+	/**
+	 * Returns the string for the given UTF-8 bytes. The string is taken from
+	 * the cache if possible, otherwise it is decoded and stored in the cache.
+	 * 
+	 * @param b
+	 *            Buffer
+	 * @param off
+	 *            Offset of the encoded string
+	 * @param len
+	 *            Length of the encoded string
+	 * @return Decoded string
+	 * @throws IOException
+	 *             If string could not be decoded
+	 */
+	public String get(byte[] b, int off, int len) throws IOException {
+		if (len > maxLength) {
+			return new String(b, off, len,
+					MessagePaxSerializer.STRING_ENCODING);
+		}
+		int h = len;
+		for (int i = off; i < off + len; i++) {
+			h = 31 * h + b[i];
+		}
+		h ^= h >>> 16;
+		int slot = h & mask;
+		Entry e = entries[slot];
+		if (e != null && e.hash == h && e.bytes.length == len) {
+			byte[] cached = e.bytes;
+			int i = 0;
+			while (i < len && cached[i] == b[off + i]) {
+				i++;
+			}
+			if (i == len) {
+				return e.value;
+			}
+		}
+		byte[] bytes = new byte[len];
+		System.arraycopy(b, off, bytes, 0, len);
+		String value = new String(bytes, 0, len,
+				MessagePaxSerializer.STRING_ENCODING);
+		entries[slot] = new Entry(h, bytes, value);
+		return value;
+	}
+
+	/**
+	 * Returns the string for the given UTF-8 bytes in a byte buffer. The
+	 * string is taken from the cache if possible, otherwise it is decoded and
+	 * stored in the cache. Heap buffers are decoded from their array, direct
+	 * buffers are copied in bulk.
+	 * 
+	 * @param b
+	 *            Buffer
+	 * @param off
+	 *            Absolute position of the encoded string
+	 * @param len
+	 *            Length of the encoded string
+	 * @return Decoded string
+	 * @throws IOException
+	 *             If string could not be decoded
+	 */
+	public String get(ByteBuffer b, int off, int len) throws IOException {
+		if (b.hasArray()) {
+			return get(b.array(), b.arrayOffset() + off, len);
+		}
+		int h = len;
+		if (len <= maxLength) {
+			for (int i = off; i < off + len; i++) {
+				h = 31 * h + b.get(i);
+			}
+			h ^= h >>> 16;
+			Entry e = entries[h & mask];
+			if (e != null && e.hash == h && e.bytes.length == len) {
+				byte[] cached = e.bytes;
+				int i = 0;
+				while (i < len && cached[i] == b.get(off + i)) {
+					i++;
+				}
+				if (i == len) {
+					return e.value;
+				}
+			}
+		}
+		byte[] bytes = new byte[len];
+		// bulk copy on a duplicate, the position of the buffer is kept
+		ByteBuffer src = b.duplicate();
+		src.position(off);
+		src.get(bytes, 0, len);
+		String value = new String(bytes, 0, len,
+				MessagePaxSerializer.STRING_ENCODING);
+		if (len <= maxLength) {
+			entries[h & mask] = new Entry(h, bytes, value);
+		}
+		return value;
+	}
+
+	/**
+	 * Removes all cached strings
+	 */
+	public void clear() {
+		for (int i = 0; i < entries.length; i++) {
+			entries[i] = null;
+		}
+	}
+}
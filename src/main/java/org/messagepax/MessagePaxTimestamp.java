@@ -0,0 +1,127 @@
+package org.messagepax;
+
+/**
+ * Point in time of the MSGPACK timestamp extension type (-1), given as
+ * seconds since 1970-01-01 00:00:00 UTC and nanoseconds within the second. A
+ * timestamp object can be reused for many read operations.
+ */
+public class MessagePaxTimestamp {
+
+	/** Extension type of timestamps */
+	public static final int EXT_TYPE = -1;
+
+	/** Seconds since epoch */
+	private long seconds;
+
+	/** Nanoseconds within the second */
+	private int nanos;
+
+	/**
+	 * Creates a timestamp at epoch
+	 */
+	public MessagePaxTimestamp() {
+	}
+
+	/**
+	 * Creates a timestamp
+	 * 
+	 * @param seconds
+	 *            Seconds since epoch
+	 * @param nanos
+	 *            Nanoseconds within the second
+	 */
+	public MessagePaxTimestamp(long seconds, int nanos) {
+		set(seconds, nanos);
+	}
+
+	/**
+	 * Sets the point in time
+	 * 
+	 * @param seconds
+	 *            Seconds since epoch
+	 * @param nanos
+	 *            Nanoseconds within the second
+	 * @throws IllegalArgumentException
+	 *             If nanoseconds are not in range 0 to 999999999
+	 */
+	public void set(long seconds, int nanos) {
+		checkNanos(nanos);
+		this.seconds = seconds;
+		this.nanos = nanos;
+	}
+
+	/**
+	 * Sets the point in time from milliseconds since epoch
+	 * 
+	 * @param millis
+	 *            Milliseconds since epoch
+	 */
+	public void setMillis(long millis) {
+		long s = millis / 1000;
+		int ms = (int) (millis % 1000);
+		if (ms < 0) {
+			s--;
+			ms += 1000;
+		}
+		this.seconds = s;
+		this.nanos = ms * 1000000;
+	}
+
+	/**
+	 * Returns the seconds since epoch
+	 * 
+	 * @return Seconds
+	 */
+	public long getSeconds() {
+		return seconds;
+	}
+
+	/**
+	 * Returns the nanoseconds within the second
+	 * 
+	 * @return Nanoseconds
+	 */
+	public int getNanos() {
+		return nanos;
+	}
+
+	/**
+	 * Returns the milliseconds since epoch, nanoseconds are truncated
+	 * 
+	 * @return Milliseconds
+	 */
+	public long getMillis() {
+		return seconds * 1000 + nanos / 1000000;
+	}
+
+	/**
+	 * Checks the nanoseconds of a timestamp
+	 * 
+	 * @param nanos
+	 *            Nanoseconds within the second
+	 * @throws IllegalArgumentException
+	 *             If nanoseconds are not in range 0 to 999999999
+	 */
+	static void checkNanos(int nanos) {
+		if (nanos < 0 || nanos > 999999999) {
+			throw new IllegalArgumentException("Illegal nanoseconds " + nanos);
+		}
+	}
+
+	public boolean equals(Object o) {
+		if (!(o instanceof MessagePaxTimestamp)) {
+			return false;
+		}
+		MessagePaxTimestamp t = (MessagePaxTimestamp) o;
+		return seconds == t.seconds && nanos == t.nanos;
+	}
+
+	public int hashCode() {
+		return (int) (seconds ^ (seconds >>> 32)) * 31 + nanos;
+	}
+
+	public String toString() {
+		String n = Integer.toString(nanos + 1000000000).substring(1);
+		return seconds + "." + n;
+	}
+}
@@ -0,0 +1,38 @@
+package org.messagepax;
+
+/**
+ * Type families of MSGPACK values. Several formats of the specification
+ * belong to one family, e.g. fixstr, str 8, str 16 and str 32 are all
+ * strings.
+ * 
+ * @see MessagePaxFormat
+ */
+public enum MessagePaxType {
+
+	/** NIL, used for null values */
+	NIL,
+
+	/** true or false */
+	BOOLEAN,
+
+	/** Signed or unsigned integer of any size */
+	INTEGER,
+
+	/** Float (32 bit) or double (64 bit) */
+	FLOAT,
+
+	/** UTF-8 encoded string */
+	STRING,
+
+	/** Byte array */
+	BINARY,
+
+	/** List (array in the MSGPACK specification) */
+	LIST,
+
+	/** Map */
+	MAP,
+
+	/** Extension type */
+	EXTENSION
+}
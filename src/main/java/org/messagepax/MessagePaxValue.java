@@ -0,0 +1,740 @@
+package org.messagepax;
+
+import java.util.Arrays;
+
+/**
+ * Immutable MSGPACK value of any type, used to decode data without knowing
+ * its layout. Values are read with {@link MessagePaxDeserializer#readValue()}
+ * and written with {@link MessagePaxSerializer#writeValue(MessagePaxValue)}.
+ * <p/>
+ * The value model is compact. Integers and floating point values are stored
+ * unboxed, lists and maps are stored in plain arrays. Map keys and values
+ * are stored alternately in one array, so a map needs no entry objects.
+ * Small maps are searched linearly, maps with more than eight entries build
+ * an open addressed table of int positions on the first lookup.
+ * 
+ * <pre>
+ * MessagePaxValue v = d.readValue();
+ * String tenant = v.get(&quot;header&quot;).get(&quot;tenant&quot;).asString();
+ * </pre>
+ */
+public abstract class MessagePaxValue {
+
+	/** NIL value */
+	public static final MessagePaxValue NIL = new NilValue();
+
+	/** true */
+	public static final MessagePaxValue TRUE = new BooleanValue(true);
+
+	/** false */
+	public static final MessagePaxValue FALSE = new BooleanValue(false);
+
+	/** Number of map entries above which string keys are indexed */
+	private static final int MAP_INDEX_SIZE = 8;
+
+	/** Shared values of small integers */
+	private static final MessagePaxValue[] SMALL_INTEGERS = new MessagePaxValue[256];
+
+	static {
+		for (int i = 0; i < SMALL_INTEGERS.length; i++) {
+			SMALL_INTEGERS[i] = new IntegerValue(i - 128);
+		}
+	}
+
+	/**
+	 * Creates a value, only subclasses of this class are allowed
+	 */
+	MessagePaxValue() {
+	}
+
+	/**
+	 * Returns the boolean value
+	 * 
+	 * @param b
+	 *            boolean
+	 * @return {@link #TRUE} or {@link #FALSE}
+	 */
+	public static MessagePaxValue of(boolean b) {
+		return b ? TRUE : FALSE;
+	}
+
+	/**
+	 * Creates an integer value
+	 * 
+	 * @param l
+	 *            Integer
+	 * @return Integer value
+	 */
+	public static MessagePaxValue of(long l) {
+		if (l >= -128 && l < 128) {
+			return SMALL_INTEGERS[(int) l + 128];
+		}
+		return new IntegerValue(l);
+	}
+
+	/**
+	 * Creates a double value
+	 * 
+	 * @param d
+	 *            Double
+	 * @return Double value
+	 */
+	public static MessagePaxValue of(double d) {
+		return new FloatValue(d, false);
+	}
+
+	/**
+	 * Creates a float value, which is written as 32 bit float
+	 * 
+	 * @param f
+	 *            Float
+	 * @return Float value
+	 */
+	public static MessagePaxValue of(float f) {
+		return new FloatValue(f, true);
+	}
+
+	/**
+	 * Creates a string value
+	 * 
+	 * @param s
+	 *            String
+	 * @return String value or {@link #NIL} if s is null
+	 */
+	public static MessagePaxValue of(String s) {
+		return s == null ? NIL : new StringValue(s);
+	}
+
+	/**
+	 * Creates a binary value. The array is not copied and must not be changed
+	 * afterwards.
+	 * 
+	 * @param b
+	 *            Byte array
+	 * @return Binary value or {@link #NIL} if b is null
+	 */
+	public static MessagePaxValue of(byte[] b) {
+		return b == null ? NIL : new BinaryValue(b);
+	}
+
+	/**
+	 * Creates an extension value. The array is not copied and must not be
+	 * changed afterwards.
+	 * 
+	 * @param type
+	 *            Extension type
+	 * @param data
+	 *            Data
+	 * @return Extension value
+	 */
+	public static MessagePaxValue ext(int type, byte[] data) {
+		return new ExtensionValue(type, data);
+	}
+
+	/**
+	 * Creates a list value. The array is not copied and must not be changed
+	 * afterwards.
+	 * 
+	 * @param elements
+	 *            Elements
+	 * @return List value
+	 */
+	public static MessagePaxValue list(MessagePaxValue... elements) {
+		return new ListValue(elements);
+	}
+
+	/**
+	 * Creates a map value. The array is not copied and must not be changed
+	 * afterwards.
+	 * 
+	 * @param keysAndValues
+	 *            Keys and values alternately
+	 * @return Map value
+	 */
+	public static MessagePaxValue map(MessagePaxValue... keysAndValues) {
+		if (keysAndValues.length % 2 != 0) {
+			throw new IllegalArgumentException("Odd number of keys and values");
+		}
+		return new MapValue(keysAndValues);
+	}
+
+	/**
+	 * Returns the type of this value
+	 * 
+	 * @return Type
+	 */
+	public abstract MessagePaxType getType();
+
+	/**
+	 * Returns true if this value is NIL
+	 * 
+	 * @return true for NIL
+	 */
+	public boolean isNil() {
+		return false;
+	}
+
+	/**
+	 * Returns the boolean value
+	 * 
+	 * @return boolean value
+	 * @throws IllegalStateException
+	 *             If this is not a boolean
+	 */
+	public boolean asBoolean() {
+		throw illegalType(MessagePaxType.BOOLEAN);
+	}
+
+	/**
+	 * Returns the integer value
+	 * 
+	 * @return long value
+	 * @throws IllegalStateException
+	 *             If this is not an integer
+	 */
+	public long asLong() {
+		throw illegalType(MessagePaxType.INTEGER);
+	}
+
+	/**
+	 * Returns the integer value as int
+	 * 
+	 * @return int value
+	 * @throws IllegalStateException
+	 *             If this is not an integer or does not fit into an int
+	 */
+	public int asInt() {
+		long l = asLong();
+		if (l != (int) l) {
+			throw new IllegalStateException("Value " + l
+					+ " does not fit into an int");
+		}
+		return (int) l;
+	}
+
+	/**
+	 * Returns the floating point value. Integers are converted.
+	 * 
+	 * @return double value
+	 * @throws IllegalStateException
+	 *             If this is not a number
+	 */
+	public double asDouble() {
+		throw illegalType(MessagePaxType.FLOAT);
+	}
+
+	/**
+	 * Returns whether a floating point value is written as 32 bit float
+	 * 
+	 * @return true for float, false for double
+	 * @throws IllegalStateException
+	 *             If this is not a floating point value
+	 */
+	public boolean isSinglePrecision() {
+		throw illegalType(MessagePaxType.FLOAT);
+	}
+
+	/**
+	 * Returns the string value
+	 * 
+	 * @return String
+	 * @throws IllegalStateException
+	 *             If this is not a string
+	 */
+	public String asString() {
+		throw illegalType(MessagePaxType.STRING);
+	}
+
+	/**
+	 * Returns the payload of a binary or extension value. The array is not
+	 * copied and must not be changed.
+	 * 
+	 * @return Byte array
+	 * @throws IllegalStateException
+	 *             If this is not a binary or extension value
+	 */
+	public byte[] asBytes() {
+		throw illegalType(MessagePaxType.BINARY);
+	}
+
+	/**
+	 * Returns the type of an extension value
+	 * 
+	 * @return Extension type
+	 * @throws IllegalStateException
+	 *             If this is not an extension value
+	 */
+	public int getExtType() {
+		throw illegalType(MessagePaxType.EXTENSION);
+	}
+
+	/**
+	 * Returns the number of elements of a list or entries of a map
+	 * 
+	 * @return Size
+	 * @throws IllegalStateException
+	 *             If this is not a list or map
+	 */
+	public int size() {
+		throw illegalType(MessagePaxType.LIST);
+	}
+
+	/**
+	 * Returns an element of a list
+	 * 
+	 * @param index
+	 *            Index of the element
+	 * @return Element
+	 * @throws IllegalStateException
+	 *             If this is not a list
+	 */
+	public MessagePaxValue get(int index) {
+		throw illegalType(MessagePaxType.LIST);
+	}
+
+	/**
+	 * Returns the key of a map entry
+	 * 
+	 * @param index
+	 *            Index of the entry
+	 * @return Key
+	 * @throws IllegalStateException
+	 *             If this is not a map
+	 */
+	public MessagePaxValue getKey(int index) {
+		throw illegalType(MessagePaxType.MAP);
+	}
+
+	/**
+	 * Returns the value of a map entry
+	 * 
+	 * @param index
+	 *            Index of the entry
+	 * @return Value
+	 * @throws IllegalStateException
+	 *             If this is not a map
+	 */
+	public MessagePaxValue getValue(int index) {
+		throw illegalType(MessagePaxType.MAP);
+	}
+
+	/**
+	 * Looks up the value of a string key in a map. If a key is contained
+	 * twice, the first entry is returned.
+	 * 
+	 * @param key
+	 *            Key
+	 * @return Value or null if key is not found
+	 * @throws IllegalStateException
+	 *             If this is not a map
+	 */
+	public MessagePaxValue get(String key) {
+		throw illegalType(MessagePaxType.MAP);
+	}
+
+	/**
+	 * Creates the exception for an unexpected type
+	 * 
+	 * @param expected
+	 *            Expected type
+	 * @return Exception to throw
+	 */
+	IllegalStateException illegalType(MessagePaxType expected) {
+		return new IllegalStateException("Value is " + getType() + ", "
+				+ expected + " expected");
+	}
+
+	/**
+	 * NIL
+	 */
+	private static final class NilValue extends MessagePaxValue {
+
+		public MessagePaxType getType() {
+			return MessagePaxType.NIL;
+		}
+
+		public boolean isNil() {
+			return true;
+		}
+
+		public String toString() {
+			return "nil";
+		}
+	}
+
+	/**
+	 * true or false
+	 */
+	private static final class BooleanValue extends MessagePaxValue {
+
+		/** Value */
+		private final boolean value;
+
+		BooleanValue(boolean value) {
+			this.value = value;
+		}
+
+		public MessagePaxType getType() {
+			return MessagePaxType.BOOLEAN;
+		}
+
+		public boolean asBoolean() {
+			return value;
+		}
+
+		public String toString() {
+			return String.valueOf(value);
+		}
+	}
+
+	/**
+	 * Integer, stored unboxed
+	 */
+	private static final class IntegerValue extends MessagePaxValue {
+
+		/** Value */
+		private final long value;
+
+		IntegerValue(long value) {
+			this.value = value;
+		}
+
+		public MessagePaxType getType() {
+			return MessagePaxType.INTEGER;
+		}
+
+		public long asLong() {
+			return value;
+		}
+
+		public double asDouble() {
+			return value;
+		}
+
+		public boolean equals(Object o) {
+			return o instanceof IntegerValue
+					&& ((IntegerValue) o).value == value;
+		}
+
+		public int hashCode() {
+			return (int) (value ^ (value >>> 32));
+		}
+
+		public String toString() {
+			return String.valueOf(value);
+		}
+	}
+
+	/**
+	 * Float or double, stored unboxed
+	 */
+	private static final class FloatValue extends MessagePaxValue {
+
+		/** Value */
+		private final double value;
+
+		/** true if value is written as 32 bit float */
+		private final boolean single;
+
+		FloatValue(double value, boolean single) {
+			this.value = value;
+			this.single = single;
+		}
+
+		public MessagePaxType getType() {
+			return MessagePaxType.FLOAT;
+		}
+
+		public double asDouble() {
+			return value;
+		}
+
+		public boolean isSinglePrecision() {
+			return single;
+		}
+
+		public boolean equals(Object o) {
+			return o instanceof FloatValue
+					&& Double.doubleToLongBits(((FloatValue) o).value) == Double
+							.doubleToLongBits(value);
+		}
+
+		public int hashCode() {
+			long bits = Double.doubleToLongBits(value);
+			return (int) (bits ^ (bits >>> 32));
+		}
+
+		public String toString() {
+			return String.valueOf(value);
+		}
+	}
+
+	/**
+	 * String
+	 */
+	private static final class StringValue extends MessagePaxValue {
+
+		/** Value */
+		private final String value;
+
+		StringValue(String value) {
+			this.value = value;
+		}
+
+		public MessagePaxType getType() {
+			return MessagePaxType.STRING;
+		}
+
+		public String asString() {
+			return value;
+		}
+
+		public boolean equals(Object o) {
+			return o instanceof StringValue
+					&& ((StringValue) o).value.equals(value);
+		}
+
+		public int hashCode() {
+			return value.hashCode();
+		}
+
+		public String toString() {
+			return "\"" + value + "\"";
+		}
+	}
+
+	/**
+	 * Byte array
+	 */
+	private static final class BinaryValue extends MessagePaxValue {
+
+		/** Value */
+		private final byte[] value;
+
+		BinaryValue(byte[] value) {
+			this.value = value;
+		}
+
+		public MessagePaxType getType() {
+			return MessagePaxType.BINARY;
+		}
+
+		public byte[] asBytes() {
+			return value;
+		}
+
+		public boolean equals(Object o) {
+			return o instanceof BinaryValue
+					&& Arrays.equals(((BinaryValue) o).value, value);
+		}
+
+		public int hashCode() {
+			return Arrays.hashCode(value);
+		}
+
+		public String toString() {
+			return "0x" + Utils.hex(value);
+		}
+	}
+
+	/**
+	 * Extension type with data
+	 */
+	private static final class ExtensionValue extends MessagePaxValue {
+
+		/** Extension type */
+		private final int type;
+
+		/** Data */
+		private final byte[] data;
+
+		ExtensionValue(int type, byte[] data) {
+			this.type = type;
+			this.data = data;
+		}
+
+		public MessagePaxType getType() {
+			return MessagePaxType.EXTENSION;
+		}
+
+		public byte[] asBytes() {
+			return data;
+		}
+
+		public int getExtType() {
+			return type;
+		}
+
+		public boolean equals(Object o) {
+			return o instanceof ExtensionValue
+					&& ((ExtensionValue) o).type == type
+					&& Arrays.equals(((ExtensionValue) o).data, data);
+		}
+
+		public int hashCode() {
+			return 31 * type + Arrays.hashCode(data);
+		}
+
+		public String toString() {
+			return "ext(" + type + ", 0x" + Utils.hex(data) + ")";
+		}
+	}
+
+	/**
+	 * List of values
+	 */
+	private static final class ListValue extends MessagePaxValue {
+
+		/** Elements */
+		private final MessagePaxValue[] elements;
+
+		ListValue(MessagePaxValue[] elements) {
+			this.elements = elements;
+		}
+
+		public MessagePaxType getType() {
+			return MessagePaxType.LIST;
+		}
+
+		public int size() {
+			return elements.length;
+		}
+
+		public MessagePaxValue get(int index) {
+			return elements[index];
+		}
+
+		public boolean equals(Object o) {
+			return o instanceof ListValue
+					&& Arrays.equals(((ListValue) o).elements, elements);
+		}
+
+		public int hashCode() {
+			return Arrays.hashCode(elements);
+		}
+
+		public String toString() {
+			return Arrays.toString(elements);
+		}
+	}
+
+	/**
+	 * Map with keys and values stored alternately in one array
+	 */
+	private static final class MapValue extends MessagePaxValue {
+
+		/** Keys and values */
+		private final MessagePaxValue[] keysAndValues;
+
+		/**
+		 * Open addressed table of string keys, built on the first lookup in
+		 * big maps. Slots hold the entry index plus one, 0 marks a free slot.
+		 */
+		private volatile int[] index;
+
+		MapValue(MessagePaxValue[] keysAndValues) {
+			this.keysAndValues = keysAndValues;
+		}
+
+		public MessagePaxType getType() {
+			return MessagePaxType.MAP;
+		}
+
+		public int size() {
+			return keysAndValues.length / 2;
+		}
+
+		public MessagePaxValue getKey(int index) {
+			return keysAndValues[2 * index];
+		}
+
+		public MessagePaxValue getValue(int index) {
+			return keysAndValues[2 * index + 1];
+		}
+
+		public MessagePaxValue get(String key) {
+			if (keysAndValues.length > 2 * MAP_INDEX_SIZE) {
+				int[] index = this.index;
+				if (index == null) {
+					index = buildIndex();
+					this.index = index;
+				}
+				int slot = find(index, key);
+				return index[slot] == 0 ? null
+						: keysAndValues[2 * index[slot] - 1];
+			}
+			for (int i = 0; i < keysAndValues.length; i += 2) {
+				MessagePaxValue k = keysAndValues[i];
+				if (k instanceof StringValue
+						&& ((StringValue) k).value.equals(key)) {
+					return keysAndValues[i + 1];
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * Builds the table of string keys with at least twice as many slots
+		 * as entries. The first entry of a key wins.
+		 * 
+		 * @return Table of entry indexes
+		 */
+		private int[] buildIndex() {
+			int[] index = new int[Integer
+					.highestOneBit(keysAndValues.length) * 2];
+			for (int i = 0; i < keysAndValues.length; i += 2) {
+				MessagePaxValue k = keysAndValues[i];
+				if (k instanceof StringValue) {
+					int slot = find(index, ((StringValue) k).value);
+					if (index[slot] == 0) {
+						index[slot] = i / 2 + 1;
+					}
+				}
+			}
+			return index;
+		}
+
+		/**
+		 * Finds the slot of a key by linear probing
+		 * 
+		 * @param index
+		 *            Table of entry indexes
+		 * @param key
+		 *            Key
+		 * @return Slot of the key or the free slot where it would be stored
+		 */
+		private int find(int[] index, String key) {
+			int mask = index.length - 1;
+			int h = key.hashCode();
+			int slot = (h ^ (h >>> 16)) & mask;
+			while (index[slot] != 0
+					&& !((StringValue) keysAndValues[2 * index[slot] - 2]).value
+							.equals(key)) {
+				slot = (slot + 1) & mask;
+			}
+			return slot;
+		}
+
+		public boolean equals(Object o) {
+			return o instanceof MapValue
+					&& Arrays.equals(((MapValue) o).keysAndValues,
+							keysAndValues);
+		}
+
+		public int hashCode() {
+			return Arrays.hashCode(keysAndValues);
+		}
+
+		public String toString() {
+			StringBuilder sb = new StringBuilder("{");
+			for (int i = 0; i < keysAndValues.length; i += 2) {
+				if (i > 0) {
+					sb.append(", ");
+				}
+				sb.append(keysAndValues[i]).append(": ")
+						.append(keysAndValues[i + 1]);
+			}
+			return sb.append('}').toString();
+		}
+	}
+}
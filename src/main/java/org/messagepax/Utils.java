@@ -80,4 +80,87 @@ public class Utils {
 		}
 	}
 
+	/**
+	 * Returns the number of bytes needed to encode a string in UTF-8. Unpaired
+	 * surrogates are counted as one byte, they are replaced by '?' like
+	 * {@link String#getBytes(String)} does.
+	 * 
+	 * @param s
+	 *            String
+	 * @return Number of bytes of the UTF-8 encoded string
+	 */
+	public static int utf8Length(CharSequence s) {
+		int n = s.length();
+		int len = n;
+		for (int i = 0; i < n; i++) {
+			char c = s.charAt(i);
+			if (c >= 0x80) {
+				if (c < 0x800) {
+					len++;
+				} else if (Character.isHighSurrogate(c) && i + 1 < n
+						&& Character.isLowSurrogate(s.charAt(i + 1))) {
+					// 4 bytes for two chars
+					len += 2;
+					i++;
+				} else if ((c < Character.MIN_SURROGATE || c > Character.MAX_SURROGATE)) {
+					len += 2;
+				}
+			}
+		}
+		return len;
+	}
+
+	/**
+	 * Encodes a part of a string in UTF-8 into the given buffer. The buffer
+	 * needs to be large enough, see {@link #utf8Length(CharSequence)}.
+	 * 
+	 * @param s
+	 *            String
+	 * @param start
+	 *            Index of first char to encode
+	 * @param end
+	 *            Index behind the last char to encode
+	 * @param b
+	 *            Destination buffer
+	 * @param off
+	 *            Offset in destination buffer
+	 * @return Offset in destination buffer behind the encoded bytes
+	 */
+	public static int encodeUtf8(String s, int start, int end, byte[] b,
+			int off) {
+		int i = start;
+		// fast path for ASCII strings
+		while (i < end) {
+			char c = s.charAt(i);
+			if (c >= 0x80) {
+				break;
+			}
+			b[off++] = (byte) c;
+			i++;
+		}
+		for (; i < end; i++) {
+			char c = s.charAt(i);
+			if (c < 0x80) {
+				b[off++] = (byte) c;
+			} else if (c < 0x800) {
+				b[off++] = (byte) (0xc0 | (c >> 6));
+				b[off++] = (byte) (0x80 | (c & 0x3f));
+			} else if (Character.isHighSurrogate(c) && i + 1 < end
+					&& Character.isLowSurrogate(s.charAt(i + 1))) {
+				int cp = Character.toCodePoint(c, s.charAt(++i));
+				b[off++] = (byte) (0xf0 | (cp >> 18));
+				b[off++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+				b[off++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+				b[off++] = (byte) (0x80 | (cp & 0x3f));
+			} else if (c >= Character.MIN_SURROGATE
+					&& c <= Character.MAX_SURROGATE) {
+				b[off++] = '?';
+			} else {
+				b[off++] = (byte) (0xe0 | (c >> 12));
+				b[off++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+				b[off++] = (byte) (0x80 | (c & 0x3f));
+			}
+		}
+		return off;
+	}
 }
@@ -0,0 +1,497 @@
+package org.messagepax.processor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+import org.messagepax.MessagePax;
+
+/**
+ * Annotation processor generating a {@link org.messagepax.MessagePaxCodec}
+ * for each class annotated with {@link MessagePax}. The generated code calls
+ * the read and write methods of the serializers directly, no reflection is
+ * used at runtime. Map keys are encoded at compile time.
+ * <p/>
+ * The processor is registered as service, so it is found by javac if the
+ * messagepax jar is on the class path. It needs Java 6 or later at compile
+ * time, the generated code runs on Java 5.
+ */
+public class MessagePaxProcessor extends AbstractProcessor {
+
+	/** Suffix of generated class names */
+	public static final String SUFFIX = "MessagePaxCodec";
+
+	/** Write and read method of the supported types */
+	private static final Map<String, String[]> METHODS = new HashMap<String, String[]>();
+
+	static {
+		METHODS.put("boolean", new String[] { "writeBoolean",
+				"readBooleanValue" });
+		METHODS.put("int", new String[] { "writeInteger", "readInt" });
+		METHODS.put("long", new String[] { "writeLong", "readLongValue" });
+		METHODS.put("float", new String[] { "writeFloat", "readFloatValue" });
+		METHODS.put("double",
+				new String[] { "writeDouble", "readDoubleValue" });
+		METHODS.put("java.lang.Boolean", new String[] { "writeBoolean",
+				"readBoolean" });
+		METHODS.put("java.lang.Integer", new String[] { "writeInteger",
+				"readInteger" });
+		METHODS.put("java.lang.Long", new String[] { "writeLong", "readLong" });
+		METHODS.put("java.lang.Float",
+				new String[] { "writeFloat", "readFloat" });
+		METHODS.put("java.lang.Double", new String[] { "writeDouble",
+				"readDouble" });
+		METHODS.put("java.lang.String", new String[] { "writeString",
+				"readString" });
+		METHODS.put("byte[]",
+				new String[] { "writeByteArray", "readByteArray" });
+		METHODS.put("java.math.BigInteger", new String[] {
+				"writeBigInteger", "readBigInteger" });
+		METHODS.put("java.util.List<java.lang.String>", new String[] {
+				"writeStringList", "readStringList" });
+		METHODS.put("java.util.Map<java.lang.String,java.lang.String>",
+				new String[] { "writeStringMap", "readStringMap" });
+		METHODS.put("org.messagepax.MessagePaxValue", new String[] {
+				"writeValue", "readValue" });
+	}
+
+	/**
+	 * Returns the supported annotation
+	 * 
+	 * @return Name of {@link MessagePax}
+	 */
+	public Set<String> getSupportedAnnotationTypes() {
+		return Collections.singleton(MessagePax.class.getName());
+	}
+
+	/**
+	 * Returns the supported source version
+	 * 
+	 * @return Latest version supported by the compiler
+	 */
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	/**
+	 * Generates codecs for all annotated classes of a round
+	 * 
+	 * @param annotations
+	 *            Annotations of the round
+	 * @param roundEnv
+	 *            Environment of the round
+	 * @return true, the annotation is claimed by this processor
+	 */
+	public boolean process(Set<? extends TypeElement> annotations,
+			RoundEnvironment roundEnv) {
+		for (Element e : roundEnv.getElementsAnnotatedWith(MessagePax.class)) {
+			if (e.getKind() != ElementKind.CLASS) {
+				error(e, "@MessagePax is only allowed for classes");
+				continue;
+			}
+			TypeElement type = (TypeElement) e;
+			try {
+				List<Field> fields = fields(type);
+				if (fields != null) {
+					generate(type, fields);
+				}
+			} catch (IOException ex) {
+				error(e, "Codec could not be generated: " + ex.getMessage());
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Serialized field with its accessors
+	 */
+	private static class Field {
+
+		/** Field name, used as map key */
+		String name;
+
+		/** Expression reading the field from <code>value</code> */
+		String get;
+
+		/** Statement prefix setting the field, the value is appended */
+		String set;
+
+		/** Statement suffix setting the field */
+		String setEnd;
+
+		/** Write method called on the serializer, null for codecs */
+		String write;
+
+		/** Read method called on the deserializer, null for codecs */
+		String read;
+
+		/** Codec of nested annotated types */
+		String codec;
+	}
+
+	/**
+	 * Collects the serialized fields of a class
+	 * 
+	 * @param type
+	 *            Annotated class
+	 * @return Fields or null if the class is not supported
+	 */
+	private List<Field> fields(TypeElement type) {
+		boolean ok = true;
+		if (type.getModifiers().contains(Modifier.ABSTRACT)
+				|| !type.getTypeParameters().isEmpty()
+				|| (type.getNestingKind() == NestingKind.MEMBER && !type
+						.getModifiers().contains(Modifier.STATIC))) {
+			error(type, "@MessagePax classes must be concrete, static and "
+					+ "not generic");
+			ok = false;
+		}
+		boolean constructor = false;
+		for (ExecutableElement c : ElementFilter.constructorsIn(type
+				.getEnclosedElements())) {
+			if (c.getParameters().isEmpty()
+					&& !c.getModifiers().contains(Modifier.PRIVATE)) {
+				constructor = true;
+			}
+		}
+		if (!constructor) {
+			error(type, "@MessagePax classes need a constructor without "
+					+ "arguments");
+			ok = false;
+		}
+		List<ExecutableElement> methods = ElementFilter.methodsIn(type
+				.getEnclosedElements());
+		List<Field> fields = new ArrayList<Field>();
+		for (VariableElement v : ElementFilter.fieldsIn(type
+				.getEnclosedElements())) {
+			Set<Modifier> mod = v.getModifiers();
+			if (mod.contains(Modifier.STATIC)
+					|| mod.contains(Modifier.TRANSIENT)) {
+				continue;
+			}
+			Field f = new Field();
+			f.name = v.getSimpleName().toString();
+			if (!mod.contains(Modifier.PRIVATE)
+					&& !mod.contains(Modifier.FINAL)) {
+				f.get = "value." + f.name;
+				f.set = "value." + f.name + " = ";
+				f.setEnd = "";
+			} else {
+				String property = Character.toUpperCase(f.name.charAt(0))
+						+ f.name.substring(1);
+				String getter = null;
+				String setter = null;
+				for (ExecutableElement m : methods) {
+					if (m.getModifiers().contains(Modifier.PRIVATE)
+							|| m.getModifiers().contains(Modifier.STATIC)) {
+						continue;
+					}
+					String n = m.getSimpleName().toString();
+					if (m.getParameters().isEmpty()
+							&& (n.equals("get" + property) || n.equals("is"
+									+ property))) {
+						getter = n;
+					} else if (m.getParameters().size() == 1
+							&& n.equals("set" + property)) {
+						setter = n;
+					}
+				}
+				if (getter == null || setter == null) {
+					error(v, "Field " + f.name + " needs a getter and setter");
+					ok = false;
+					continue;
+				}
+				f.get = "value." + getter + "()";
+				f.set = "value." + setter + "(";
+				f.setEnd = ")";
+			}
+			TypeMirror t = v.asType();
+			String[] m = METHODS.get(t.toString());
+			if (m != null) {
+				f.write = m[0];
+				f.read = m[1];
+			} else if (t.getKind() == TypeKind.DECLARED
+					&& ((DeclaredType) t).asElement().getAnnotation(
+							MessagePax.class) != null) {
+				f.codec = codecName((TypeElement) ((DeclaredType) t)
+						.asElement());
+			} else {
+				error(v, "Type " + t + " of field " + f.name
+						+ " is not supported");
+				ok = false;
+				continue;
+			}
+			fields.add(f);
+		}
+		return ok ? fields : null;
+	}
+
+	/**
+	 * Returns the qualified name of the codec of a class
+	 * 
+	 * @param type
+	 *            Annotated class
+	 * @return Qualified name of the codec
+	 */
+	private String codecName(TypeElement type) {
+		String pkg = packageOf(type).getQualifiedName().toString();
+		String name = simpleCodecName(type);
+		return pkg.length() == 0 ? name : pkg + "." + name;
+	}
+
+	/**
+	 * Returns the simple name of the codec of a class. The names of
+	 * enclosing classes are joined with an underscore.
+	 * 
+	 * @param type
+	 *            Annotated class
+	 * @return Simple name of the codec
+	 */
+	private String simpleCodecName(TypeElement type) {
+		String name = type.getSimpleName().toString();
+		Element e = type.getEnclosingElement();
+		while (e.getKind() != ElementKind.PACKAGE) {
+			name = e.getSimpleName() + "_" + name;
+			e = e.getEnclosingElement();
+		}
+		return name + SUFFIX;
+	}
+
+	/**
+	 * Returns the package of a class
+	 * 
+	 * @param type
+	 *            Class
+	 * @return Package
+	 */
+	private PackageElement packageOf(TypeElement type) {
+		Element e = type;
+		while (e.getKind() != ElementKind.PACKAGE) {
+			e = e.getEnclosingElement();
+		}
+		return (PackageElement) e;
+	}
+
+	/**
+	 * Writes the source code of the codec
+	 * 
+	 * @param type
+	 *            Annotated class
+	 * @param fields
+	 *            Serialized fields
+	 * @throws IOException
+	 *             If source file could not be written
+	 */
+	private void generate(TypeElement type, List<Field> fields)
+			throws IOException {
+		String pkg = packageOf(type).getQualifiedName().toString();
+		String name = simpleCodecName(type);
+		String cls = type.getQualifiedName().toString();
+		JavaFileObject file = processingEnv.getFiler().createSourceFile(
+				codecName(type), type);
+		PrintWriter w = new PrintWriter(file.openWriter());
+		if (pkg.length() > 0) {
+			w.println("package " + pkg + ";");
+			w.println();
+		}
+		w.println("import java.io.IOException;");
+		w.println();
+		w.println("import org.messagepax.MessagePaxDeserializer;");
+		w.println("import org.messagepax.MessagePaxSerializer;");
+		w.println("import org.messagepax.MessagePaxSize;");
+		w.println("import org.messagepax.MessagePaxSizedCodec;");
+		w.println("import org.messagepax.MessagePaxSlice;");
+		w.println("import org.messagepax.MessagePaxType;");
+		w.println();
+		w.println("/**");
+		w.println(" * Codec of {@link " + cls + "}, generated by "
+				+ getClass().getSimpleName() + ". Do not edit.");
+		w.println(" */");
+		w.println("public final class " + name
+				+ " implements MessagePaxSizedCodec<" + cls + "> {");
+		w.println();
+		w.println("\t/** Shared instance */");
+		w.println("\tpublic static final " + name + " INSTANCE = new " + name
+				+ "();");
+		for (int i = 0; i < fields.size(); i++) {
+			byte[] utf8 = utf8(fields.get(i).name);
+			w.println();
+			w.println("\t/** Encoded key \"" + fields.get(i).name + "\" */");
+			w.println("\tprivate static final byte[] KEY_" + i + " = "
+					+ literal(header(utf8.length), utf8) + ";");
+			w.println();
+			w.println("\t/** UTF-8 bytes of key \"" + fields.get(i).name
+					+ "\" */");
+			w.println("\tprivate static final byte[] NAME_" + i + " = "
+					+ literal(new byte[0], utf8) + ";");
+		}
+		w.println();
+		w.println("\tpublic void write(MessagePaxSerializer s, " + cls
+				+ " value)");
+		w.println("\t\t\tthrows IOException {");
+		w.println("\t\tif (value == null) {");
+		w.println("\t\t\ts.writeNil();");
+		w.println("\t\t\treturn;");
+		w.println("\t\t}");
+		w.println("\t\ts.writeMapBegin(" + fields.size() + ");");
+		for (int i = 0; i < fields.size(); i++) {
+			Field f = fields.get(i);
+			w.println("\t\ts.writeEncoded(KEY_" + i + ");");
+			if (f.codec != null) {
+				w.println("\t\t" + f.codec + ".INSTANCE.write(s, " + f.get
+						+ ");");
+			} else {
+				w.println("\t\ts." + f.write + "(" + f.get + ");");
+			}
+		}
+		w.println("\t}");
+		w.println();
+		w.println("\tpublic " + cls + " read(MessagePaxDeserializer d)");
+		w.println("\t\t\tthrows IOException {");
+		w.println("\t\tif (d.tryReadNil()) {");
+		w.println("\t\t\treturn null;");
+		w.println("\t\t}");
+		w.println("\t\t" + cls + " value = new " + cls + "();");
+		w.println("\t\tint size = d.readMapSize();");
+		w.println("\t\tMessagePaxSlice key = new MessagePaxSlice();");
+		w.println("\t\tfor (int i = 0; i < size; i++) {");
+		w.println("\t\t\tif (d.nextFormat().getType() "
+				+ "!= MessagePaxType.STRING) {");
+		w.println("\t\t\t\td.skipValue();");
+		w.println("\t\t\t\td.skipValue();");
+		w.println("\t\t\t\tcontinue;");
+		w.println("\t\t\t}");
+		w.println("\t\t\td.readSlice(key);");
+		for (int i = 0; i < fields.size(); i++) {
+			Field f = fields.get(i);
+			w.println("\t\t\t" + (i > 0 ? "} else " : "")
+					+ "if (key.contentEquals(NAME_" + i + ")) {");
+			if (f.codec != null) {
+				w.println("\t\t\t\t" + f.set + f.codec + ".INSTANCE.read(d)"
+						+ f.setEnd + ";");
+			} else {
+				w.println("\t\t\t\t" + f.set + "d." + f.read + "()" + f.setEnd
+						+ ";");
+			}
+		}
+		if (fields.isEmpty()) {
+			w.println("\t\t\td.skipValue();");
+		} else {
+			w.println("\t\t\t} else {");
+			w.println("\t\t\t\td.skipValue();");
+			w.println("\t\t\t}");
+		}
+		w.println("\t\t}");
+		w.println("\t\treturn value;");
+		w.println("\t}");
+		w.println();
+		w.println("\tpublic int sizeOf(" + cls + " value) throws IOException {");
+		w.println("\t\tif (value == null) {");
+		w.println("\t\t\treturn MessagePaxSize.NIL;");
+		w.println("\t\t}");
+		w.print("\t\treturn MessagePaxSize.sizeOfMapBegin(" + fields.size()
+				+ ")");
+		for (int i = 0; i < fields.size(); i++) {
+			Field f = fields.get(i);
+			w.println();
+			w.print("\t\t\t\t+ KEY_" + i + ".length + ");
+			if (f.codec != null) {
+				w.print(f.codec + ".INSTANCE.sizeOf(" + f.get + ")");
+			} else {
+				w.print("MessagePaxSize.sizeOf" + f.write.substring(5) + "("
+						+ f.get + ")");
+			}
+		}
+		w.println(";");
+		w.println("\t}");
+		w.println("}");
+		w.close();
+	}
+
+	/**
+	 * Encodes a string to UTF-8
+	 * 
+	 * @param s
+	 *            String
+	 * @return UTF-8 bytes
+	 */
+	private static byte[] utf8(String s) {
+		try {
+			return s.getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e.getMessage());
+		}
+	}
+
+	/**
+	 * Returns the string header like MessagePaxSerializer.writeString
+	 * 
+	 * @param len
+	 *            Number of bytes of the string
+	 * @return Header bytes
+	 */
+	private static byte[] header(int len) {
+		if (len < 32) {
+			return new byte[] { (byte) (0xa0 | len) };
+		}
+		return new byte[] { (byte) 0xda, (byte) (len >>> 8), (byte) len };
+	}
+
+	/**
+	 * Returns a byte array literal
+	 * 
+	 * @param header
+	 *            First bytes
+	 * @param data
+	 *            Following bytes
+	 * @return Java source of the array
+	 */
+	private static String literal(byte[] header, byte[] data) {
+		StringBuilder sb = new StringBuilder("{");
+		for (int i = 0; i < header.length + data.length; i++) {
+			byte b = i < header.length ? header[i] : data[i - header.length];
+			if (i > 0) {
+				sb.append(", ");
+			}
+			sb.append("(byte) ").append(b & 0xff);
+		}
+		return sb.append(" }").toString();
+	}
+
+	/**
+	 * Reports an error at an element
+	 * 
+	 * @param e
+	 *            Element
+	 * @param message
+	 *            Message
+	 */
+	private void error(Element e, String message) {
+		processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+				message, e);
+	}
+}
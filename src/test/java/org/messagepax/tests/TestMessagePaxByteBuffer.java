@@ -0,0 +1,147 @@
+package org.messagepax.tests;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.messagepax.MessagePaxByteBufferDeserializer;
+import org.messagepax.MessagePaxByteBufferSerializer;
+import org.messagepax.MessagePaxSerializer;
+import org.messagepax.MessagePaxSlice;
+import org.messagepax.Utils;
+
+public class TestMessagePaxByteBuffer extends TestCase {
+
+	private void write(MessagePaxSerializer s) throws Exception {
+		List<String> list = new ArrayList<String>();
+		list.add("A");
+		list.add("B");
+		s.writeNil();
+		s.writeBoolean(true);
+		s.writeInteger(-1);
+		s.writeInteger(0xffff);
+		s.writeInteger(Integer.MIN_VALUE);
+		s.writeLong(0x8000000000L);
+		s.writeFloat(1.0f);
+		s.writeDouble(-1.0d);
+		s.writeString("Hello World");
+		s.writeString("\u00e4\u20ac\ud83d\ude00");
+		s.writeByteArray(new byte[] { 1, 2, 3 });
+		s.writeStringList(list);
+	}
+
+	private void read(MessagePaxByteBufferDeserializer d) throws Exception {
+		assertNull(d.readInteger());
+		assertTrue(d.readBoolean());
+		assertEquals(-1, d.readInteger().intValue());
+		assertEquals(0xffff, d.readInteger().intValue());
+		assertEquals(Integer.MIN_VALUE, d.readInteger().intValue());
+		assertEquals(0x8000000000L, d.readLong().longValue());
+		assertEquals(1.0f, d.readFloat().floatValue(), 0.0001f);
+		assertEquals(-1.0d, d.readDouble().doubleValue(), 0.0001d);
+		assertEquals("Hello World", d.readString());
+		assertEquals("\u00e4\u20ac\ud83d\ude00", d.readString());
+		assertEquals("010203", Utils.hex(d.readByteArray()));
+		assertEquals(2, d.readStringList().size());
+		assertFalse(d.hasRemaining());
+	}
+
+	private void roundtrip(ByteBuffer buf) throws Exception {
+		MessagePaxSerializer ref = new MessagePaxSerializer(new byte[256]);
+		write(ref);
+
+		buf.position(3);
+		MessagePaxByteBufferSerializer s = new MessagePaxByteBufferSerializer(
+				buf);
+		write(s);
+		assertEquals(3, buf.position());
+		assertEquals(ref.getLength(), s.getLength());
+		assertEquals(ref.toHexString(), s.toHexString());
+
+		MessagePaxByteBufferDeserializer d = new MessagePaxByteBufferDeserializer(
+				s.getByteBuffer());
+		read(d);
+	}
+
+	public void testHeapBuffer() throws Exception {
+		roundtrip(ByteBuffer.allocate(256));
+	}
+
+	public void testDirectBuffer() throws Exception {
+		roundtrip(ByteBuffer.allocateDirect(256));
+	}
+
+	public void testLongStringDirect() throws Exception {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			sb.append("\u00e4\u20ac\ud83d\ude00x");
+		}
+		String str = sb.toString();
+		MessagePaxByteBufferSerializer s = new MessagePaxByteBufferSerializer(
+				ByteBuffer.allocateDirect(2048));
+		s.writeString(str);
+		MessagePaxByteBufferDeserializer d = new MessagePaxByteBufferDeserializer(
+				s.getByteBuffer());
+		assertEquals(str, d.readString());
+	}
+
+	public void testSlices() throws Exception {
+		ByteBuffer[] buffers = new ByteBuffer[] { ByteBuffer.allocate(64),
+				ByteBuffer.allocateDirect(64) };
+		for (int i = 0; i < buffers.length; i++) {
+			MessagePaxByteBufferSerializer s = new MessagePaxByteBufferSerializer(
+					buffers[i]);
+			s.writeString("Hello");
+			s.writeByteArray(new byte[] { 1, 2, 3 });
+			MessagePaxByteBufferDeserializer d = new MessagePaxByteBufferDeserializer(
+					s.getByteBuffer());
+			MessagePaxSlice slice = new MessagePaxSlice();
+			assertTrue(d.readSlice(slice));
+			assertEquals("Hello", slice.toString());
+			ByteBuffer bb = d.readByteBuffer();
+			assertEquals(3, bb.remaining());
+			assertEquals(3, bb.get(2));
+			assertFalse(d.hasRemaining());
+		}
+	}
+
+	public void testReset() throws Exception {
+		MessagePaxByteBufferSerializer s = new MessagePaxByteBufferSerializer(
+				ByteBuffer.allocateDirect(16));
+		s.writeInteger(1);
+		s.reset();
+		s.writeInteger(2);
+		assertEquals("02", s.toHexString());
+	}
+
+	public void testOverflow() throws Exception {
+		MessagePaxByteBufferSerializer s = new MessagePaxByteBufferSerializer(
+				ByteBuffer.allocateDirect(4));
+		try {
+			s.writeString("Hello World");
+			fail("BufferOverflowException expected");
+		} catch (BufferOverflowException e) {
+			// OK
+		}
+	}
+
+	public void testOverflowMultiByte() throws Exception {
+		// 9 bytes of UTF-8 and the header fit exactly
+		MessagePaxByteBufferSerializer s = new MessagePaxByteBufferSerializer(
+				ByteBuffer.allocateDirect(10));
+		s.writeString("\u00e4\u20ac\ud83d\ude00");
+		assertEquals("A9C3A4E282ACF09F9880", s.toHexString());
+
+		// the ASCII prefix fits, the multi-byte characters do not
+		s = new MessagePaxByteBufferSerializer(ByteBuffer.allocateDirect(6));
+		try {
+			s.writeString("ab\u00e4\u20ac");
+			fail("BufferOverflowException expected");
+		} catch (BufferOverflowException e) {
+			// OK
+		}
+	}
+}
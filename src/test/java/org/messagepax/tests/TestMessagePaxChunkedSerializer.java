@@ -0,0 +1,102 @@
+package org.messagepax.tests;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+import org.messagepax.MessagePaxChunkedSerializer;
+import org.messagepax.MessagePaxDeserializer;
+import org.messagepax.MessagePaxSerializer;
+import org.messagepax.Utils;
+
+public class TestMessagePaxChunkedSerializer extends TestCase {
+
+	MessagePaxChunkedSerializer s = new MessagePaxChunkedSerializer(16);
+
+	public void testSingleChunk() throws Exception {
+		s.writeInteger(1);
+		s.writeString("Hello");
+		assertEquals(1, s.getChunkCount());
+		assertEquals("01A548656C6C6F", s.toHexString());
+	}
+
+	public void testGrow() throws Exception {
+		MessagePaxSerializer ref = new MessagePaxSerializer(new byte[2048]);
+		for (int i = 0; i < 50; i++) {
+			s.writeLong(0x8000000000L + i);
+			s.writeString("The quick brown fox");
+			ref.writeLong(0x8000000000L + i);
+			ref.writeString("The quick brown fox");
+		}
+		assertTrue(s.getChunkCount() > 1);
+		assertEquals(ref.getLength(), s.getLength());
+		assertEquals(ref.toHexString(), s.toHexString());
+		assertEquals(ref.toHexString(), Utils.hex(s.toByteArray()));
+
+		MessagePaxDeserializer d = new MessagePaxDeserializer(s.toByteArray());
+		for (int i = 0; i < 50; i++) {
+			assertEquals(0x8000000000L + i, d.readLong().longValue());
+			assertEquals("The quick brown fox", d.readString());
+		}
+	}
+
+	public void testLargeByteArray() throws Exception {
+		byte[] data = new byte[100];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) i;
+		}
+		s.writeInteger(1);
+		s.writeByteArray(data);
+		assertEquals(103, s.getLength());
+
+		ByteBuffer[] chunks = s.getChunks();
+		int total = 0;
+		for (int i = 0; i < chunks.length; i++) {
+			assertTrue(chunks[i].remaining() <= 16);
+			total += chunks[i].remaining();
+		}
+		assertEquals(103, total);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		s.writeTo(out);
+		assertEquals("01C464" + Utils.hex(data), Utils.hex(out.toByteArray()));
+	}
+
+	public void testReset() throws Exception {
+		for (int i = 0; i < 20; i++) {
+			s.writeString("0123456789");
+		}
+		assertTrue(s.getChunkCount() > 1);
+		s.reset();
+		assertEquals(1, s.getChunkCount());
+		assertEquals(0, s.getLength());
+		s.writeNil();
+		assertEquals("C0", s.toHexString());
+	}
+
+	public void testFixedBufferOverflow() throws Exception {
+		MessagePaxSerializer fixed = new MessagePaxSerializer(new byte[2]);
+		fixed.writeInteger(1);
+		try {
+			fixed.writeInteger(0xffff);
+			fail("ArrayIndexOutOfBoundsException expected");
+		} catch (ArrayIndexOutOfBoundsException e) {
+			// OK
+		}
+	}
+
+	public void testSplitString() throws Exception {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 20; i++) {
+			sb.append("\u00e4\u20ac\ud83d\ude00x");
+		}
+		String str = sb.toString();
+		s.writeInteger(1);
+		s.writeString(str);
+		assertTrue(s.getChunkCount() > 1);
+		MessagePaxDeserializer d = new MessagePaxDeserializer(s.toByteArray());
+		assertEquals(1, d.readInteger().intValue());
+		assertEquals(str, d.readString());
+	}
+}
@@ -0,0 +1,235 @@
+package org.messagepax.tests;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.messagepax.MessagePaxByteBufferSerializer;
+import org.messagepax.MessagePaxChunkedSerializer;
+import org.messagepax.MessagePaxSerializer;
+import org.messagepax.MessagePaxStreamSerializer;
+import org.messagepax.Utils;
+
+public class TestMessagePaxDeferredSize extends TestCase {
+
+	static final int[] SIZES = { 0, 1, 15, 16, 65535, 65536 };
+
+	private void writeDeferred(MessagePaxSerializer s, int size)
+			throws IOException {
+		s.beginMap();
+		s.writeString("list");
+		s.beginList();
+		for (int i = 0; i < size; i++) {
+			s.writeInteger(i);
+		}
+		s.endList();
+		s.writeString("empty");
+		s.beginMap();
+		s.endMap();
+		s.endMap();
+	}
+
+	private void writeKnown(MessagePaxSerializer s, int size)
+			throws IOException {
+		s.writeMapBegin(2);
+		s.writeString("list");
+		s.writeListBegin(size);
+		for (int i = 0; i < size; i++) {
+			s.writeInteger(i);
+		}
+		s.writeString("empty");
+		s.writeMapBegin(0);
+	}
+
+	private String expected(int size) throws IOException {
+		MessagePaxSerializer s = new MessagePaxSerializer(new byte[1 << 20]);
+		writeKnown(s, size);
+		return s.toHexString();
+	}
+
+	public void testSerializer() throws Exception {
+		for (int size : SIZES) {
+			MessagePaxSerializer s = new MessagePaxSerializer(
+					new byte[1 << 20]);
+			writeDeferred(s, size);
+			assertEquals("size " + size, expected(size), s.toHexString());
+		}
+	}
+
+	public void testChunked() throws Exception {
+		for (int size : SIZES) {
+			MessagePaxChunkedSerializer s = new MessagePaxChunkedSerializer(16);
+			s.writeString("before");
+			writeDeferred(s, size);
+			assertEquals("size " + size, "A66265666F7265" + expected(size), s
+					.toHexString());
+		}
+	}
+
+	public void testChunkedByteArray() throws Exception {
+		byte[] data = new byte[100];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) i;
+		}
+		MessagePaxChunkedSerializer s = new MessagePaxChunkedSerializer(16);
+		s.writeString("before");
+		s.beginList();
+		s.writeByteArray(data);
+		s.endList();
+		assertEquals("A66265666F7265" + "91C464" + Utils.hex(data), s
+				.toHexString());
+	}
+
+	public void testStream() throws Exception {
+		for (int size : SIZES) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			MessagePaxStreamSerializer s = new MessagePaxStreamSerializer(out,
+					16);
+			s.beginList();
+			s.writeByteArray(new byte[100]);
+			s.flush();
+			assertEquals(0, out.size());
+			s.endList();
+			writeDeferred(s, size);
+			s.flush();
+			assertEquals("size " + size, "9" + "1C464"
+					+ Utils.hex(new byte[100]) + expected(size), Utils.hex(out
+					.toByteArray()));
+			assertEquals(out.size(), s.getLength());
+		}
+	}
+
+	public void testByteBuffer() throws Exception {
+		for (int size : SIZES) {
+			ByteBuffer heap = ByteBuffer.allocate(1 << 20);
+			heap.position(3);
+			MessagePaxByteBufferSerializer s = new MessagePaxByteBufferSerializer(
+					heap.slice());
+			writeDeferred(s, size);
+			assertEquals("size " + size, expected(size), s.toHexString());
+		}
+
+		// direct buffers keep the reserved 32 bit headers
+		MessagePaxByteBufferSerializer s = new MessagePaxByteBufferSerializer(
+				ByteBuffer.allocateDirect(1024));
+		writeDeferred(s, 2);
+		assertEquals("DF00000002A46C697374DD000000020001A5656D707479DF00000000",
+				s.toHexString());
+	}
+
+	public void testNested() throws Exception {
+		MessagePaxSerializer s = new MessagePaxSerializer(new byte[256]);
+		MessagePaxSerializer ref = new MessagePaxSerializer(new byte[256]);
+		// deferred lists within deferred lists and within a list of known
+		// size
+		s.beginList();
+		ref.writeListBegin(7);
+		for (int i = 0; i < 3; i++) {
+			s.writeInteger(i);
+			ref.writeInteger(i);
+			s.beginList();
+			ref.writeListBegin(i);
+			for (int j = 0; j < i; j++) {
+				s.beginList();
+				s.endList();
+				ref.writeListBegin(0);
+			}
+			s.endList();
+			if (i == 1) {
+				s.writeListBegin(2);
+				ref.writeListBegin(2);
+				s.beginMap();
+				s.writeString("a");
+				s.writeInteger(1);
+				s.endMap();
+				ref.writeMapBegin(1);
+				ref.writeString("a");
+				ref.writeInteger(1);
+				s.writeNil();
+				ref.writeNil();
+			}
+		}
+		s.endList();
+		assertEquals(ref.toHexString(), s.toHexString());
+	}
+
+	public void testStaleBytes() throws Exception {
+		// bytes behind the written data must not be decoded
+		byte[] b = new byte[64];
+		Arrays.fill(b, (byte) 0xc1);
+		MessagePaxSerializer s = new MessagePaxSerializer(b);
+		ByteBuffer heap = ByteBuffer.wrap(b.clone());
+		MessagePaxByteBufferSerializer bs = new MessagePaxByteBufferSerializer(
+				heap);
+		for (MessagePaxSerializer x : new MessagePaxSerializer[] { s, bs }) {
+			x.beginList();
+			x.writeListBegin(1);
+			x.beginList();
+			x.writeString("a");
+			x.endList();
+			x.writeMapBegin(1);
+			x.writeString("b");
+			x.beginMap();
+			x.endMap();
+			x.endList();
+			assertEquals("929191A16181A16280", x.toHexString());
+		}
+	}
+
+	public void testIncomplete() throws Exception {
+		MessagePaxSerializer s = new MessagePaxSerializer(new byte[64]);
+		s.beginList();
+		s.writeListBegin(3);
+		s.writeInteger(1);
+		try {
+			s.endList();
+			fail();
+		} catch (IllegalStateException e) {
+			assertEquals("Last value of list is incomplete", e.getMessage());
+		}
+
+		MessagePaxByteBufferSerializer bs = new MessagePaxByteBufferSerializer(
+				ByteBuffer.allocate(64));
+		bs.beginMap();
+		bs.writeString("key");
+		bs.writeMapBegin(1);
+		try {
+			bs.endMap();
+			fail();
+		} catch (IllegalStateException e) {
+			assertEquals("Last value of map is incomplete", e.getMessage());
+		}
+	}
+
+	public void testIllegal() throws Exception {
+		MessagePaxSerializer s = new MessagePaxSerializer(new byte[64]);
+		try {
+			s.endList();
+			fail();
+		} catch (IllegalStateException e) {
+		}
+		s.beginList();
+		try {
+			s.endMap();
+			fail();
+		} catch (IllegalStateException e) {
+		}
+		s.reset();
+		s.beginMap();
+		s.writeString("key");
+		try {
+			s.endMap();
+			fail();
+		} catch (IllegalStateException e) {
+		}
+		s.reset();
+		try {
+			s.endMap();
+			fail();
+		} catch (IllegalStateException e) {
+		}
+	}
+}
@@ -2,12 +2,16 @@ package org.messagepax.tests;
 
 import java.io.IOException;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.Map;
 
 import junit.framework.TestCase;
 
 import org.messagepax.MessagePaxDeserializer;
+import org.messagepax.MessagePaxFormat;
+import org.messagepax.MessagePaxSlice;
+import org.messagepax.MessagePaxType;
 import org.messagepax.Utils;
 
 public class TestMessagePaxDeserializer extends TestCase {
@@ -221,4 +225,141 @@ public class TestMessagePaxDeserializer extends TestCase {
 		assertEquals(1, map.size());
 		assertEquals("1", map.get("0"));
 	}
+
+	public void testReadByteBuffer() throws IOException {
+		d.reset("C40301020382A130C0");
+		ByteBuffer bb = d.readByteBuffer();
+		assertTrue(bb.isReadOnly());
+		assertEquals(3, bb.remaining());
+		assertEquals(1, bb.get(0));
+		assertEquals(3, bb.get(2));
+		assertEquals(2, d.readMapBegin().intValue());
+		assertEquals("0", d.readString());
+		assertNull(d.readByteBuffer());
+	}
+
+	public void testReadSlice() throws IOException {
+		d.reset("A548656C6C6FA4C3A4C3B6C401FFC0");
+		MessagePaxSlice slice = new MessagePaxSlice();
+		assertTrue(d.readSlice(slice));
+		assertEquals(1, slice.getOffset());
+		assertEquals(5, slice.getLength());
+		assertEquals(5, slice.length());
+		assertEquals('H', slice.charAt(0));
+		assertEquals("ell", slice.subSequence(1, 4).toString());
+		assertTrue(slice.contentEquals("Hello".getBytes("UTF-8")));
+
+		assertTrue(d.readSlice(slice));
+		assertEquals(4, slice.getLength());
+		assertEquals(2, slice.length());
+		assertEquals("\u00e4\u00f6", slice.toString());
+		assertEquals('\u00f6', slice.charAt(1));
+
+		assertTrue(d.readSlice(slice));
+		assertEquals("FF", Utils.hex(slice.toByteArray()));
+		assertEquals(1, slice.toByteBuffer().remaining());
+
+		assertFalse(d.readSlice(slice));
+	}
+
+	public void testPrimitiveReaders() throws IOException {
+		d.reset("C3CCFFCE80000000CF0000008000000000CA3F800000CB3FF0000000000000"
+				+ "92C00181A130C0");
+		assertTrue(d.readBooleanValue());
+		assertEquals(255, d.readInt());
+		assertEquals(0x80000000L, d.readLongValue());
+		assertEquals(0x8000000000L, d.readLongValue());
+		assertEquals(1.0f, d.readFloatValue(), 0.0001f);
+		assertEquals(1.0d, d.readDoubleValue(), 0.0001d);
+		assertEquals(2, d.readListSize());
+		assertTrue(d.isNextNil());
+		assertTrue(d.tryReadNil());
+		assertFalse(d.isNextNil());
+		assertFalse(d.tryReadNil());
+		assertEquals(1, d.readInt());
+		assertEquals(1, d.readMapSize());
+		assertEquals("0", d.readString());
+		try {
+			d.readInt();
+			fail("IOException expected");
+		} catch (IOException e) {
+			// OK
+		}
+	}
+
+	public void testFloatDoubleConversion() throws IOException {
+		d.reset("CB3FF0000000000000CA3F800000");
+		assertEquals(1.0f, d.readFloatValue(), 0.0001f);
+		assertEquals(1.0d, d.readDouble().doubleValue(), 0.0001d);
+	}
+
+	public void testSkipValue() throws IOException {
+		// map {"a": [1, -1, 1.0, "xy", bin(2), fixext1, nil, true], "b": {}}
+		// followed by uint 16, str 8, array 16, map 32 and 5
+		d.reset("82A16198" + "01FFCA3F800000A27879C4020102D40105C0C3"
+				+ "A16280" + "CD0100" + "D903616263" + "DC0002CC10C0"
+				+ "DF00000001A16BCB3FF0000000000000" + "05");
+		d.skipValue();
+		d.skipValue();
+		d.skipValue();
+		d.skipValue();
+		d.skipValue();
+		assertEquals(5, d.readInt());
+
+		d.reset("C1");
+		try {
+			d.skipValue();
+			fail();
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	public void testPeekType() throws IOException {
+		d.reset("C0C3FFCCFFCA3F800000A161C40161910180D40105");
+		MessagePaxType[] types = new MessagePaxType[] { MessagePaxType.NIL,
+				MessagePaxType.BOOLEAN, MessagePaxType.INTEGER,
+				MessagePaxType.INTEGER, MessagePaxType.FLOAT,
+				MessagePaxType.STRING, MessagePaxType.BINARY,
+				MessagePaxType.LIST, MessagePaxType.MAP,
+				MessagePaxType.EXTENSION };
+		for (int i = 0; i < types.length; i++) {
+			assertEquals(types[i], d.peekType());
+			d.skipValue();
+		}
+		d.reset("CDDC03");
+		assertEquals(MessagePaxFormat.UINT16, d.nextFormat());
+		assertEquals(0xdc03, d.readInt());
+		d.reset("C1");
+		try {
+			d.peekType();
+			fail();
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	public void testFormatTable() {
+		for (int x = 0; x < 256; x++) {
+			assertNotNull(MessagePaxFormat.of(x));
+		}
+		assertEquals(MessagePaxFormat.NEGATIVE_FIXINT, MessagePaxFormat.of(-1));
+		assertEquals(15, MessagePaxFormat.getInlineLength(0x9f));
+		assertEquals(31, MessagePaxFormat.getInlineLength(0xbf));
+		assertEquals(16, MessagePaxFormat.getInlineLength(0xd8));
+		assertEquals(0, MessagePaxFormat.getInlineLength(0xd9));
+	}
+
+	public void testReadStr8() throws IOException {
+		d.reset("D903616263C403010203");
+		assertEquals("abc", d.readString());
+		assertEquals("010203", Utils.hex(d.readByteArray()));
+		d.reset("91");
+		try {
+			d.readString();
+			fail();
+		} catch (IOException e) {
+			// expected
+		}
+	}
 }
@@ -0,0 +1,126 @@
+package org.messagepax.tests;
+
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import org.messagepax.MessagePaxDocument;
+import org.messagepax.MessagePaxSerializer;
+import org.messagepax.MessagePaxSlice;
+import org.messagepax.MessagePaxType;
+import org.messagepax.Utils;
+
+public class TestMessagePaxDocument extends TestCase {
+
+	private byte[] data;
+
+	protected void setUp() throws Exception {
+		MessagePaxSerializer s = new MessagePaxSerializer(new byte[1024]);
+		s.writeMapBegin(5);
+		s.writeString("id");
+		s.writeLong(0x100000000L);
+		s.writeString("header");
+		s.writeMapBegin(2);
+		s.writeString("tenant");
+		s.writeString("acme");
+		s.writeString("ok");
+		s.writeBoolean(true);
+		s.writeString("items");
+		s.writeListBegin(3);
+		s.writeDouble(1.5d);
+		s.writeInteger(-200);
+		s.writeNil();
+		s.writeString("raw");
+		s.writeByteArray(new byte[] { 1, 2, 3 });
+		s.writeString("ext");
+		s.writeExtData(5, new byte[] { 9, 8 });
+		// trailing value, not part of the document
+		s.writeInteger(1);
+		data = new byte[s.getLength()];
+		System.arraycopy(s.getBuffer(), 0, data, 0, data.length);
+	}
+
+	public void testNavigate() throws Exception {
+		MessagePaxDocument doc = MessagePaxDocument.parse(data);
+		int root = doc.getRoot();
+		assertEquals(MessagePaxType.MAP, doc.getType(root));
+		assertEquals(5, doc.size(root));
+		assertEquals(data.length - 1, doc.getEnd());
+
+		assertEquals(0x100000000L, doc.getLong(doc.find(root, "id")));
+		int header = doc.find(root, "header");
+		assertEquals("acme", doc.getString(doc.find(header, "tenant")));
+		assertTrue(doc.getBoolean(doc.find(header, "ok")));
+		assertEquals(-1, doc.find(header, "missing"));
+
+		int items = doc.find(root, "items");
+		assertEquals(3, doc.size(items));
+		assertEquals(1.5d, doc.getDouble(doc.get(items, 0)), 0.0001d);
+		assertEquals(-200, doc.getInt(doc.get(items, 1)));
+		assertTrue(doc.isNil(doc.get(items, 2)));
+		assertNull(doc.getString(doc.get(items, 2)));
+
+		assertEquals("raw", doc.getString(doc.getKey(root, 3)));
+		assertEquals("010203", Utils.hex(doc.getBytes(doc.getValue(root, 3))));
+		MessagePaxSlice slice = new MessagePaxSlice();
+		assertTrue(doc.getSlice(doc.find(root, "raw"), slice));
+		assertEquals(3, slice.getLength());
+
+		int ext = doc.find(root, "ext");
+		assertEquals(5, doc.getExtType(ext));
+		assertEquals("0908", Utils.hex(doc.getBytes(ext)));
+	}
+
+	public void testErrors() throws Exception {
+		MessagePaxDocument doc = MessagePaxDocument.parse(data);
+		int items = doc.find(doc.getRoot(), "items");
+		try {
+			doc.getString(doc.get(items, 0));
+			fail();
+		} catch (IOException e) {
+			// expected
+		}
+		try {
+			doc.get(items, 3);
+			fail();
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+		try {
+			doc.find(items, "x");
+			fail();
+		} catch (IOException e) {
+			// expected
+		}
+		try {
+			MessagePaxDocument.parse(data, 0, 20);
+			fail();
+		} catch (IOException e) {
+			// expected
+		}
+		try {
+			MessagePaxDocument.parse(Utils.dehex("DDFFFFFFFF01"));
+			fail();
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	public void testDeepNesting() throws Exception {
+		MessagePaxSerializer s = new MessagePaxSerializer(new byte[1024]);
+		for (int i = 0; i < 100; i++) {
+			s.writeListBegin(2);
+			s.writeInteger(i);
+		}
+		s.writeListBegin(0);
+		MessagePaxDocument doc = MessagePaxDocument.parse(s.getBuffer(), 0,
+				s.getLength());
+		int node = doc.getRoot();
+		for (int i = 0; i < 100; i++) {
+			assertEquals(i, doc.getInt(doc.get(node, 0)));
+			node = doc.get(node, 1);
+		}
+		assertEquals(0, doc.size(node));
+		assertEquals(201, doc.getNodeCount());
+	}
+}
@@ -0,0 +1,157 @@
+package org.messagepax.tests;
+
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import org.messagepax.MessagePaxDeserializer;
+import org.messagepax.MessagePaxExtension;
+import org.messagepax.MessagePaxExtensionRegistry;
+import org.messagepax.MessagePaxSerializer;
+import org.messagepax.MessagePaxSlice;
+
+public class TestMessagePaxExtensionRegistry extends TestCase {
+
+	static final int POINT = 5;
+
+	static final int NAME = -100;
+
+	static class Point {
+		final int x;
+		final int y;
+
+		Point(int x, int y) {
+			this.x = x;
+			this.y = y;
+		}
+	}
+
+	static class PointExtension implements MessagePaxExtension<Point> {
+
+		public int getLength(Point value) {
+			return 8;
+		}
+
+		public void write(MessagePaxSerializer s, Point value)
+				throws IOException {
+			s.addInt32(value.x);
+			s.addInt32(value.y);
+		}
+
+		public Point read(MessagePaxSlice data) throws IOException {
+			return new Point(readInt(data, 0), readInt(data, 4));
+		}
+
+		private int readInt(MessagePaxSlice data, int i) {
+			return (data.getByte(i) << 24) | ((data.getByte(i + 1) & 0xff) << 16)
+					| ((data.getByte(i + 2) & 0xff) << 8)
+					| (data.getByte(i + 3) & 0xff);
+		}
+	}
+
+	static class NameExtension implements MessagePaxExtension<String> {
+
+		public int getLength(String value) {
+			return value.length();
+		}
+
+		public void write(MessagePaxSerializer s, String value)
+				throws IOException {
+			for (int i = 0; i < value.length(); i++) {
+				s.addByte(value.charAt(i));
+			}
+		}
+
+		public String read(MessagePaxSlice data) throws IOException {
+			return data.toString();
+		}
+	}
+
+	private MessagePaxExtensionRegistry registry() {
+		MessagePaxExtensionRegistry r = new MessagePaxExtensionRegistry();
+		r.register(POINT, new PointExtension());
+		r.register(NAME, new NameExtension());
+		return r;
+	}
+
+	public void testRoundTrip() throws Exception {
+		MessagePaxExtensionRegistry r = registry();
+		MessagePaxSerializer s = new MessagePaxSerializer(new byte[1024]);
+		r.write(s, POINT, new Point(1, -2));
+		r.write(s, NAME, "abc");
+		r.write(s, NAME, null);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 300; i++) {
+			sb.append('x');
+		}
+		r.write(s, NAME, sb.toString());
+		assertEquals("D70500000001FFFFFFFEC7039C616263C0C8012C9C", s
+				.toHexString().substring(0, 42));
+
+		MessagePaxDeserializer d = new MessagePaxDeserializer(s.getBuffer());
+		MessagePaxSlice slice = new MessagePaxSlice();
+		Point p = (Point) r.read(d, slice);
+		assertEquals(1, p.x);
+		assertEquals(-2, p.y);
+		assertEquals("abc", r.read(d, slice));
+		assertNull(r.read(d, slice));
+		assertEquals(sb.toString(), r.read(d));
+	}
+
+	public void testReadExt() throws Exception {
+		MessagePaxSerializer s = new MessagePaxSerializer(new byte[64]);
+		s.writeExtData(-3, new byte[] { 1, 2, 3, 4 });
+		s.writeExtData(3, new byte[] { 9 });
+		s.writeNil();
+		MessagePaxDeserializer d = new MessagePaxDeserializer(s.getBuffer());
+		MessagePaxSlice slice = new MessagePaxSlice();
+		assertEquals(Integer.valueOf(-3), d.readExt(slice));
+		assertEquals(4, slice.getLength());
+		assertEquals(4, slice.getByte(3));
+		assertEquals(Integer.valueOf(3), d.readExt(slice));
+		assertEquals(9, slice.getByte(0));
+		assertNull(d.readExt(slice));
+	}
+
+	public void testWrongLength() throws Exception {
+		MessagePaxExtension<String> shorter = new NameExtension() {
+			public int getLength(String value) {
+				return value.length() - 1;
+			}
+		};
+		MessagePaxSerializer s = new MessagePaxSerializer(new byte[64]);
+		try {
+			s.writeExt(NAME, shorter, "abc");
+			fail();
+		} catch (IOException e) {
+			assertEquals("Extension wrote 3 bytes instead of 2", e
+					.getMessage());
+		}
+		s.reset();
+		s.writeExt(NAME, new NameExtension(), "abc");
+		assertEquals("C7039C616263", s.toHexString());
+	}
+
+	public void testUnregistered() throws Exception {
+		MessagePaxExtensionRegistry r = registry();
+		MessagePaxSerializer s = new MessagePaxSerializer(new byte[64]);
+		try {
+			r.write(s, 7, "x");
+			fail();
+		} catch (IOException e) {
+		}
+		s.writeExtData(7, new byte[] { 1 });
+		try {
+			r.read(new MessagePaxDeserializer(s.getBuffer()));
+			fail();
+		} catch (IOException e) {
+		}
+		try {
+			r.register(128, new NameExtension());
+			fail();
+		} catch (IllegalArgumentException e) {
+		}
+		assertNotNull(r.get(NAME));
+		assertNull(r.get(7));
+	}
+}
@@ -0,0 +1,186 @@
+package org.messagepax.tests;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.messagepax.MessagePaxFeedDecoder;
+import org.messagepax.MessagePaxSerializer;
+import org.messagepax.Utils;
+
+public class TestMessagePaxFeedDecoder extends TestCase {
+
+	static class LogHandler implements MessagePaxFeedDecoder.Handler {
+
+		StringBuilder log = new StringBuilder();
+
+		public void onNil() {
+			log.append("nil ");
+		}
+
+		public void onBoolean(boolean v) {
+			log.append(v).append(' ');
+		}
+
+		public void onInteger(long v) {
+			log.append(v).append(' ');
+		}
+
+		public void onFloat(float v) {
+			log.append(v).append("f ");
+		}
+
+		public void onDouble(double v) {
+			log.append(v).append("d ");
+		}
+
+		public void onString(byte[] b, int off, int len) throws IOException {
+			log.append('"').append(new String(b, off, len, "UTF-8"))
+					.append("\" ");
+		}
+
+		public void onByteArray(byte[] b, int off, int len) {
+			log.append(Utils.hex(b, off, len)).append(' ');
+		}
+
+		public void onExtData(int type, byte[] b, int off, int len) {
+			log.append("ext").append(type).append(':')
+					.append(Utils.hex(b, off, len)).append(' ');
+		}
+
+		public void onListBegin(int size) {
+			log.append('[');
+		}
+
+		public void onListEnd() {
+			log.append("] ");
+		}
+
+		public void onMapBegin(int size) {
+			log.append('{');
+		}
+
+		public void onMapEnd() {
+			log.append("} ");
+		}
+
+		public void onValue() {
+			log.append("| ");
+		}
+	}
+
+	private byte[] message() throws Exception {
+		MessagePaxSerializer s = new MessagePaxSerializer(new byte[1024]);
+		s.writeMapBegin(2);
+		s.writeString("list");
+		s.writeListBegin(5);
+		s.writeInteger(-1);
+		s.writeLong(0x8000000000L);
+		s.writeDouble(1.5d);
+		s.writeListBegin(0);
+		s.writeByteArray(new byte[] { 1, 2 });
+		s.writeString("a somewhat longer string to be split over chunks");
+		s.writeExtData(5, new byte[] { 1, 2, 3, 4 });
+		s.writeNil();
+		s.writeBoolean(true);
+		s.writeFloat(2.0f);
+		s.writeInteger(0xffff);
+		byte[] ret = new byte[s.getLength()];
+		System.arraycopy(s.getBuffer(), 0, ret, 0, ret.length);
+		return ret;
+	}
+
+	private static final String EXPECTED = "{\"list\" [-1 549755813888 1.5d [] 0102 ] "
+			+ "\"a somewhat longer string to be split over chunks\" ext5:01020304 } | "
+			+ "nil | true | 2.0f | 65535 | ";
+
+	public void testComplete() throws Exception {
+		byte[] msg = message();
+		LogHandler h = new LogHandler();
+		MessagePaxFeedDecoder d = new MessagePaxFeedDecoder(h);
+		assertEquals(5, d.feed(msg, 0, msg.length));
+		assertTrue(d.isComplete());
+		assertEquals(EXPECTED, h.log.toString());
+	}
+
+	public void testChunks() throws Exception {
+		byte[] msg = message();
+		for (int chunk = 1; chunk < 20; chunk++) {
+			LogHandler h = new LogHandler();
+			MessagePaxFeedDecoder d = new MessagePaxFeedDecoder(h);
+			int values = 0;
+			for (int off = 0; off < msg.length; off += chunk) {
+				values += d.feed(msg, off, Math.min(chunk, msg.length - off));
+			}
+			assertEquals(5, values);
+			assertTrue(d.isComplete());
+			assertEquals(EXPECTED, h.log.toString());
+		}
+	}
+
+	public void testIncomplete() throws Exception {
+		LogHandler h = new LogHandler();
+		MessagePaxFeedDecoder d = new MessagePaxFeedDecoder(h);
+		byte[] msg = Utils.dehex("9201CD01");
+		assertEquals(0, d.feed(msg, 0, msg.length));
+		assertFalse(d.isComplete());
+		msg = Utils.dehex("00");
+		assertEquals(1, d.feed(msg, 0, msg.length));
+		assertEquals("[1 256 ] | ", h.log.toString());
+	}
+
+	public void testStr8() throws Exception {
+		LogHandler h = new LogHandler();
+		MessagePaxFeedDecoder d = new MessagePaxFeedDecoder(h);
+		byte[] msg = Utils.dehex("D90130");
+		d.feed(msg, 0, msg.length);
+		assertEquals("\"0\" | ", h.log.toString());
+	}
+
+	public void testMaxPayloadLength() throws Exception {
+		MessagePaxFeedDecoder d = new MessagePaxFeedDecoder(new LogHandler(),
+				100000);
+		// bin 32 header claiming 2 GB
+		byte[] msg = Utils.dehex("C67FFFFFFF00");
+		try {
+			d.feed(msg, 0, msg.length);
+			fail();
+		} catch (IOException e) {
+			assertEquals("Payload length 2147483647 exceeds maximum 100000", e
+					.getMessage());
+		}
+
+		// split payloads up to the maximum are collected
+		byte[] data = new byte[100000];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) i;
+		}
+		MessagePaxSerializer s = new MessagePaxSerializer(new byte[100010]);
+		s.writeByteArray(data);
+		s.writeByteArray(new byte[] { 7 });
+		final byte[][] received = new byte[2][];
+		d = new MessagePaxFeedDecoder(new LogHandler() {
+			public void onByteArray(byte[] b, int off, int len) {
+				byte[] copy = new byte[len];
+				System.arraycopy(b, off, copy, 0, len);
+				received[received[0] == null ? 0 : 1] = copy;
+			}
+		}, 100000);
+		for (int off = 0; off < s.getLength(); off += 999) {
+			d.feed(s.getBuffer(), off, Math.min(999, s.getLength() - off));
+		}
+		assertTrue(Arrays.equals(data, received[0]));
+		assertEquals("07", Utils.hex(received[1]));
+	}
+
+	public void testIllegal() throws Exception {
+		MessagePaxFeedDecoder d = new MessagePaxFeedDecoder(new LogHandler());
+		try {
+			d.feed(Utils.dehex("C1"), 0, 1);
+			fail("IOException expected");
+		} catch (IOException e) {
+			// OK
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package org.messagepax.tests;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.messagepax.MessagePaxDeserializer;
+import org.messagepax.MessagePaxKeyDictionary;
+import org.messagepax.MessagePaxMapper;
+import org.messagepax.MessagePaxSerializer;
+
+public class TestMessagePaxKeyDictionary extends TestCase {
+
+	static final MessagePaxKeyDictionary KEYS = new MessagePaxKeyDictionary(
+			3, "id", "name", "value");
+
+	static class Event {
+		private int id;
+		private String name;
+		private String comment;
+	}
+
+	public void testStringMap() throws Exception {
+		Map<String, String> map = new LinkedHashMap<String, String>();
+		map.put("name", "a");
+		map.put("other", "b");
+		MessagePaxSerializer s = new MessagePaxSerializer(new byte[64]);
+		s.writeStringMap(map, KEYS);
+		s.writeStringMap(null, KEYS);
+		assertEquals("8201A161A56F74686572A162C0", s.toHexString());
+
+		MessagePaxDeserializer d = new MessagePaxDeserializer(s.getBuffer());
+		assertEquals(map, d.readStringMap(KEYS));
+		assertNull(d.readStringMap(KEYS));
+	}
+
+	public void testUnknownIndex() throws Exception {
+		MessagePaxDeserializer d = new MessagePaxDeserializer(new byte[] { 5 });
+		try {
+			d.readKey(KEYS);
+			fail();
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("version 3"));
+		}
+	}
+
+	public void testDescriptor() throws Exception {
+		MessagePaxSerializer s = new MessagePaxSerializer(new byte[64]);
+		KEYS.write(s);
+		MessagePaxDeserializer d = new MessagePaxDeserializer(s.getBuffer());
+		MessagePaxKeyDictionary keys = MessagePaxKeyDictionary.read(d);
+		assertEquals(3, keys.getVersion());
+		assertEquals(3, keys.size());
+		assertEquals("value", keys.getKey(2));
+		assertEquals(1, keys.indexOf("name"));
+		assertEquals(-1, keys.indexOf("other"));
+		assertNull(keys.getKey(3));
+	}
+
+	public void testDuplicate() throws Exception {
+		try {
+			new MessagePaxKeyDictionary(1, "a", "a");
+			fail();
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	public void testMapper() throws Exception {
+		Event e = new Event();
+		e.id = 7;
+		e.name = "x";
+		e.comment = "c";
+		MessagePaxSerializer s = new MessagePaxSerializer(new byte[64]);
+		new MessagePaxMapper(KEYS).write(s, e);
+		assertEquals("83000701A178A7636F6D6D656E74A163", s.toHexString());
+
+		MessagePaxDeserializer d = new MessagePaxDeserializer(s.getBuffer());
+		Event r = new MessagePaxMapper(KEYS).read(d, Event.class);
+		assertEquals(7, r.id);
+		assertEquals("x", r.name);
+		assertEquals("c", r.comment);
+
+		// names are still accepted
+		s.reset();
+		new MessagePaxMapper().write(s, e);
+		d = new MessagePaxDeserializer(s.getBuffer());
+		assertEquals("x", new MessagePaxMapper(KEYS).read(d, Event.class).name);
+	}
+}
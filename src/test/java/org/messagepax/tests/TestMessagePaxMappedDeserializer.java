@@ -0,0 +1,105 @@
+package org.messagepax.tests;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+
+import junit.framework.TestCase;
+
+import org.messagepax.MessagePaxMappedDeserializer;
+import org.messagepax.MessagePaxSerializer;
+
+public class TestMessagePaxMappedDeserializer extends TestCase {
+
+	private File file;
+	private RandomAccessFile raf;
+
+	protected void setUp() throws Exception {
+		MessagePaxSerializer s = new MessagePaxSerializer(new byte[8192]);
+		for (int i = 0; i < 100; i++) {
+			s.writeString("Record " + i);
+			s.writeLong(0x8000000000L + i);
+			s.writeDouble(i);
+		}
+		file = File.createTempFile("messagepax", ".bin");
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(s.getBuffer(), 0, s.getLength());
+		out.close();
+		raf = new RandomAccessFile(file, "r");
+	}
+
+	protected void tearDown() throws Exception {
+		raf.close();
+		file.delete();
+	}
+
+	public void testWindows() throws Exception {
+		MessagePaxMappedDeserializer d = new MessagePaxMappedDeserializer(
+				raf.getChannel(), 32);
+		int i = 0;
+		while (d.hasRemaining()) {
+			assertEquals("Record " + i, d.readString());
+			assertEquals(0x8000000000L + i, d.readLong().longValue());
+			assertEquals((double) i, d.readDouble().doubleValue(), 0.0001d);
+			i++;
+		}
+		assertEquals(100, i);
+		assertEquals(d.getSize(), d.getFilePosition());
+		try {
+			d.readInteger();
+			fail("EOFException expected");
+		} catch (EOFException e) {
+			// OK
+		}
+	}
+
+	public void testIllegalWindow() throws Exception {
+		int[] sizes = { -1, 0, 15 };
+		for (int size : sizes) {
+			try {
+				new MessagePaxMappedDeserializer(raf.getChannel(), size);
+				fail("IllegalArgumentException expected");
+			} catch (IllegalArgumentException e) {
+				assertEquals("Window size too small " + size, e.getMessage());
+			}
+		}
+	}
+
+	public void testSeek() throws Exception {
+		MessagePaxMappedDeserializer d = new MessagePaxMappedDeserializer(
+				raf.getChannel(), 32);
+		assertEquals("Record 0", d.readString());
+		long second = d.getFilePosition();
+		d.seek(d.getSize() - 9);
+		assertEquals(99.0d, d.readDouble().doubleValue(), 0.0001d);
+		d.seek(second);
+		assertEquals(0x8000000000L, d.readLong().longValue());
+	}
+
+	public void testDefaultWindow() throws Exception {
+		MessagePaxMappedDeserializer d = new MessagePaxMappedDeserializer(
+				raf.getChannel());
+		assertEquals("Record 0", d.readString());
+	}
+
+	public void testSkipValue() throws Exception {
+		MessagePaxMappedDeserializer d = new MessagePaxMappedDeserializer(
+				raf.getChannel(), 32);
+		for (int i = 0; i < 99; i++) {
+			d.skipValue();
+			d.skipValue();
+			d.skipValue();
+		}
+		assertEquals("Record 99", d.readString());
+		d.skipValue();
+		d.skipValue();
+		assertFalse(d.hasRemaining());
+		try {
+			d.skipValue();
+			fail("EOFException expected");
+		} catch (EOFException e) {
+			// OK
+		}
+	}
+}
@@ -0,0 +1,225 @@
+package org.messagepax.tests;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.messagepax.MessagePaxCodec;
+import org.messagepax.MessagePaxDeserializer;
+import org.messagepax.MessagePaxMapper;
+import org.messagepax.MessagePaxSerializer;
+import org.messagepax.MessagePaxValue;
+
+public class TestMessagePaxMapper extends TestCase {
+
+	static class Base {
+		private long id;
+	}
+
+	static class Point {
+		private int x;
+		private Integer y;
+		transient int ignored;
+		static int counter;
+	}
+
+	static class Shape extends Base {
+		private String name;
+		private boolean closed;
+		private float scale;
+		private double area;
+		private Double weight;
+		private byte[] data;
+		private BigInteger big;
+		private List<String> tags;
+		private Map<String, String> attributes;
+		private MessagePaxValue extra;
+		private Point center;
+		private Shape next;
+	}
+
+	static class Ids {
+		private long id;
+		private Long ref;
+		private BigInteger big;
+	}
+
+	static class Hiding extends Base {
+		private String id;
+	}
+
+	static class Holder {
+		private Object any;
+	}
+
+	static class NoDefault {
+		NoDefault(int x) {
+		}
+	}
+
+	private Shape sample() {
+		Shape s = new Shape();
+		((Base) s).id = 1L << 40;
+		s.name = "circle";
+		s.closed = true;
+		s.scale = 0.5f;
+		s.area = 3.14;
+		s.data = new byte[] { 1, 2 };
+		s.big = BigInteger.ONE.shiftLeft(40);
+		s.tags = Arrays.asList("a", "b");
+		s.attributes = new HashMap<String, String>();
+		s.attributes.put("k", "v");
+		s.extra = MessagePaxValue.of(7);
+		s.center = new Point();
+		s.center.x = 1;
+		s.center.ignored = 5;
+		s.next = new Shape();
+		s.next.name = "inner";
+		return s;
+	}
+
+	public void testRoundTrip() throws Exception {
+		MessagePaxMapper mapper = new MessagePaxMapper();
+		MessagePaxSerializer s = new MessagePaxSerializer(new byte[1024]);
+		mapper.write(s, sample());
+
+		MessagePaxDeserializer d = new MessagePaxDeserializer(s.getBuffer());
+		Shape r = mapper.read(d, Shape.class);
+		assertEquals(1L << 40, ((Base) r).id);
+		assertEquals("circle", r.name);
+		assertTrue(r.closed);
+		assertEquals(0.5f, r.scale);
+		assertEquals(3.14, r.area);
+		assertNull(r.weight);
+		assertTrue(Arrays.equals(new byte[] { 1, 2 }, r.data));
+		assertEquals(BigInteger.ONE.shiftLeft(40), r.big);
+		assertEquals(Arrays.asList("a", "b"), r.tags);
+		assertEquals("v", r.attributes.get("k"));
+		assertEquals(MessagePaxValue.of(7), r.extra);
+		assertEquals(1, r.center.x);
+		assertNull(r.center.y);
+		assertEquals(0, r.center.ignored);
+		assertEquals("inner", r.next.name);
+		assertNull(r.next.next);
+	}
+
+	public void testFormat() throws Exception {
+		MessagePaxMapper mapper = new MessagePaxMapper();
+		Point p = new Point();
+		p.x = 1;
+		p.y = 2;
+		MessagePaxSerializer s = new MessagePaxSerializer(new byte[64]);
+		mapper.write(s, p);
+		assertEquals("82A17801A17902", s.toHexString());
+
+		mapper.write(s, null);
+		assertEquals("82A17801A17902C0", s.toHexString());
+	}
+
+	public void testHiddenField() throws Exception {
+		MessagePaxMapper mapper = new MessagePaxMapper();
+		Hiding h = new Hiding();
+		h.id = "x";
+		((Base) h).id = 5;
+		MessagePaxSerializer s = new MessagePaxSerializer(new byte[64]);
+		mapper.write(s, h);
+		assertEquals("81A26964A178", s.toHexString());
+
+		MessagePaxDeserializer d = new MessagePaxDeserializer(s.getBuffer());
+		Hiding r = mapper.read(d, Hiding.class);
+		assertEquals("x", r.id);
+		assertEquals(0, ((Base) r).id);
+	}
+
+	public void testUnsignedInt() throws Exception {
+		MessagePaxMapper mapper = new MessagePaxMapper();
+		MessagePaxSerializer s = new MessagePaxSerializer(new byte[64]);
+		Base b = new Base();
+		b.id = 4294967295L;
+		mapper.write(s, b);
+		assertEquals("81A26964CEFFFFFFFF", s.toHexString());
+
+		Ids ids = new Ids();
+		ids.id = 1L << 31;
+		ids.ref = Long.valueOf(3000000000L);
+		ids.big = BigInteger.valueOf(4294967295L);
+		mapper.write(s, ids);
+
+		MessagePaxDeserializer d = new MessagePaxDeserializer(s.getBuffer());
+		assertEquals(4294967295L, mapper.read(d, Base.class).id);
+		Ids r = mapper.read(d, Ids.class);
+		assertEquals(1L << 31, r.id);
+		assertEquals(Long.valueOf(3000000000L), r.ref);
+		assertEquals(BigInteger.valueOf(4294967295L), r.big);
+	}
+
+	public void testUnknownKeys() throws Exception {
+		MessagePaxSerializer s = new MessagePaxSerializer(new byte[64]);
+		s.writeMapBegin(4);
+		s.writeString("z");
+		s.writeStringList(Arrays.asList("skip"));
+		s.writeInteger(1);
+		s.writeInteger(2);
+		s.writeString("y");
+		s.writeInteger(3);
+		s.writeString("x");
+		s.writeInteger(4);
+		s.writeInteger(5);
+
+		MessagePaxDeserializer d = new MessagePaxDeserializer(s.getBuffer());
+		Point p = new MessagePaxMapper().read(d, Point.class);
+		assertEquals(4, p.x);
+		assertEquals(Integer.valueOf(3), p.y);
+		assertEquals(5, d.readInt());
+	}
+
+	public void testCodecCached() throws Exception {
+		MessagePaxMapper mapper = new MessagePaxMapper();
+		MessagePaxCodec<Point> codec = mapper.getCodec(Point.class);
+		assertSame(codec, mapper.getCodec(Point.class));
+	}
+
+	public void testRegister() throws Exception {
+		MessagePaxMapper mapper = new MessagePaxMapper();
+		mapper.register(Point.class, new MessagePaxCodec<Point>() {
+			public void write(MessagePaxSerializer s, Point value)
+					throws java.io.IOException {
+				s.writeInteger(value.x);
+			}
+
+			public Point read(MessagePaxDeserializer d)
+					throws java.io.IOException {
+				Point p = new Point();
+				p.x = d.readInt();
+				return p;
+			}
+		});
+		Shape shape = new Shape();
+		shape.center = new Point();
+		shape.center.x = 9;
+		MessagePaxSerializer s = new MessagePaxSerializer(new byte[1024]);
+		mapper.write(s, shape);
+		MessagePaxDeserializer d = new MessagePaxDeserializer(s.getBuffer());
+		assertEquals(9, mapper.read(d, Shape.class).center.x);
+	}
+
+	public void testUnsupported() throws Exception {
+		MessagePaxMapper mapper = new MessagePaxMapper();
+		try {
+			mapper.getCodec(Holder.class);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage().contains("any"));
+		}
+		try {
+			mapper.getCodec(NoDefault.class);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage().contains("constructor"));
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package org.messagepax.tests;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+
+import org.messagepax.MessagePaxChunkedSerializer;
+import org.messagepax.MessagePaxCodec;
+import org.messagepax.MessagePaxDeserializer;
+import org.messagepax.MessagePaxParallelEncoder;
+import org.messagepax.MessagePaxSerializer;
+
+public class TestMessagePaxParallelEncoder extends TestCase {
+
+	static final MessagePaxCodec<String> CODEC = new MessagePaxCodec<String>() {
+		public void write(MessagePaxSerializer s, String value)
+				throws IOException {
+			if ("fail".equals(value)) {
+				throw new IOException("Failed");
+			}
+			s.writeString(value);
+		}
+
+		public String read(MessagePaxDeserializer d) throws IOException {
+			return d.readString();
+		}
+	};
+
+	private ExecutorService executor;
+
+	private MessagePaxParallelEncoder encoder;
+
+	protected void setUp() throws Exception {
+		executor = Executors.newFixedThreadPool(4);
+		encoder = new MessagePaxParallelEncoder(executor, 4);
+	}
+
+	protected void tearDown() throws Exception {
+		executor.shutdown();
+	}
+
+	private String sequential(List<String> list) throws IOException {
+		MessagePaxChunkedSerializer s = new MessagePaxChunkedSerializer(4096);
+		s.writeListBegin(list.size());
+		for (String e : list) {
+			CODEC.write(s, e);
+		}
+		return s.toHexString();
+	}
+
+	private List<String> list(int count) {
+		List<String> l = new ArrayList<String>();
+		for (int i = 0; i < count; i++) {
+			l.add("Element " + i);
+		}
+		return l;
+	}
+
+	public void testLarge() throws Exception {
+		List<String> l = list(100000);
+		for (int i = 0; i < 2; i++) {
+			// second run reuses the buffers
+			MessagePaxChunkedSerializer s = new MessagePaxChunkedSerializer(
+					4096);
+			encoder.writeList(s, l, CODEC);
+			assertEquals(sequential(l), s.toHexString());
+		}
+	}
+
+	public void testSmall() throws Exception {
+		List<String> l = new LinkedList<String>(list(10));
+		MessagePaxSerializer s = new MessagePaxSerializer(new byte[1024]);
+		encoder.writeList(s, l, CODEC);
+		encoder.writeList(s, null, CODEC);
+		assertEquals(sequential(l) + "C0", s.toHexString());
+	}
+
+	public void testFailure() throws Exception {
+		List<String> l = list(10000);
+		l.set(5000, "fail");
+		MessagePaxChunkedSerializer s = new MessagePaxChunkedSerializer(4096);
+		try {
+			encoder.writeList(s, l, CODEC);
+			fail();
+		} catch (IOException e) {
+			assertEquals("Failed", e.getMessage());
+		}
+		assertEquals(0, s.getLength());
+	}
+}
@@ -0,0 +1,95 @@
+package org.messagepax.tests;
+
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+import org.messagepax.MessagePaxByteBufferDeserializer;
+import org.messagepax.MessagePaxDeserializer;
+import org.messagepax.MessagePaxPath;
+import org.messagepax.MessagePaxSerializer;
+
+public class TestMessagePaxPath extends TestCase {
+
+	private byte[] data;
+
+	protected void setUp() throws Exception {
+		// {"id": 1, 7: "x", "header": {"tenant": "acme", "tags": ["a"]},
+		// "items": [{"price": 0}, ..., {"price": 4}]}
+		MessagePaxSerializer s = new MessagePaxSerializer(new byte[1024]);
+		s.writeMapBegin(4);
+		s.writeString("id");
+		s.writeInteger(1);
+		s.writeInteger(7);
+		s.writeString("x");
+		s.writeString("header");
+		s.writeMapBegin(2);
+		s.writeString("tags");
+		s.writeListBegin(1);
+		s.writeString("a");
+		s.writeString("tenant");
+		s.writeString("acme");
+		s.writeString("items");
+		s.writeListBegin(5);
+		for (int i = 0; i < 5; i++) {
+			s.writeMapBegin(1);
+			s.writeString("price");
+			s.writeDouble(i);
+		}
+		data = new byte[s.getLength()];
+		System.arraycopy(s.getBuffer(), 0, data, 0, data.length);
+	}
+
+	public void testSelect() throws Exception {
+		MessagePaxPath tenant = MessagePaxPath.compile("$.header.tenant");
+		MessagePaxDeserializer d = new MessagePaxDeserializer(data);
+		assertTrue(tenant.select(d));
+		assertEquals("acme", d.readString());
+
+		MessagePaxPath price = MessagePaxPath.compile("items[3].price");
+		d = new MessagePaxDeserializer(data);
+		assertTrue(price.select(d));
+		assertEquals(3.0d, d.readDoubleValue(), 0.0001d);
+
+		d = new MessagePaxDeserializer(data);
+		assertTrue(MessagePaxPath.compile("$.header.tags[0]").select(d));
+		assertEquals("a", d.readString());
+
+		d = new MessagePaxDeserializer(data);
+		assertTrue(MessagePaxPath.compile("$").select(d));
+		assertEquals(4, d.readMapSize());
+	}
+
+	public void testNotFound() throws Exception {
+		String[] paths = new String[] { "$.missing", "$.items[5]",
+				"$.id.x", "$[0]", "$.header.tenantx" };
+		for (int i = 0; i < paths.length; i++) {
+			MessagePaxDeserializer d = new MessagePaxDeserializer(data);
+			assertFalse(paths[i], MessagePaxPath.compile(paths[i]).select(d));
+		}
+	}
+
+	public void testByteBuffer() throws Exception {
+		ByteBuffer buf = ByteBuffer.allocateDirect(data.length);
+		buf.put(data);
+		buf.flip();
+		MessagePaxByteBufferDeserializer d = new MessagePaxByteBufferDeserializer(
+				buf);
+		assertTrue(MessagePaxPath.compile("$.items[4].price").select(d));
+		assertEquals(4.0d, d.readDoubleValue(), 0.0001d);
+	}
+
+	public void testCompile() {
+		assertEquals("$.a[1]", MessagePaxPath.compile("$.a[1]").toString());
+		String[] illegal = new String[] { "$.a[", "$.a[x]", "$..a", "$a",
+				"$.a[-1]" };
+		for (int i = 0; i < illegal.length; i++) {
+			try {
+				MessagePaxPath.compile(illegal[i]);
+				fail(illegal[i]);
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package org.messagepax.tests;
+
+import junit.framework.TestCase;
+
+import org.messagepax.MessagePaxChunkedSerializer;
+import org.messagepax.MessagePaxDeserializer;
+import org.messagepax.MessagePaxPool;
+import org.messagepax.MessagePaxSerializer;
+
+public class TestMessagePaxPool extends TestCase {
+
+	public void testThreadLocal() throws Exception {
+		MessagePaxPool pool = new MessagePaxPool(4);
+		MessagePaxChunkedSerializer s = pool.acquireSerializer();
+		s.writeString("abc");
+		pool.release(s);
+		MessagePaxChunkedSerializer s2 = pool.acquireSerializer();
+		assertSame(s, s2);
+		assertEquals(0, s2.getLength());
+		// slot is empty while in use, a new one is created
+		assertNotSame(s2, pool.acquireSerializer());
+	}
+
+	public void testShared() throws Exception {
+		MessagePaxPool pool = new MessagePaxPool(1, false);
+		MessagePaxChunkedSerializer s1 = pool.acquireSerializer();
+		MessagePaxChunkedSerializer s2 = pool.acquireSerializer();
+		pool.release(s1);
+		// capacity exceeded, dropped
+		pool.release(s2);
+		assertSame(s1, pool.acquireSerializer());
+		assertNotSame(s2, pool.acquireSerializer());
+	}
+
+	public void testDeserializer() throws Exception {
+		MessagePaxSerializer s = new MessagePaxSerializer(new byte[16]);
+		s.writeInteger(1);
+		s.writeInteger(2);
+		MessagePaxPool pool = new MessagePaxPool(4, false);
+		MessagePaxDeserializer d = pool.acquireDeserializer(s.getBuffer());
+		assertEquals(1, d.readInt());
+		pool.release(d);
+		MessagePaxDeserializer d2 = pool.acquireDeserializer(s.getBuffer());
+		assertSame(d, d2);
+		assertEquals(1, d2.readInt());
+		assertEquals(2, d2.readInt());
+	}
+
+	public void testAdaptive() throws Exception {
+		MessagePaxPool pool = new MessagePaxPool(4, false);
+		assertEquals(4096, pool.getChunkSize());
+		byte[] data = new byte[20000];
+		for (int i = 0; i < 2048; i++) {
+			MessagePaxChunkedSerializer s = pool.acquireSerializer();
+			// few outliers do not count
+			s.writeByteArray(data, 0, i % 20 == 0 ? 20000 : 1000);
+			pool.release(s);
+		}
+		assertEquals(1024, pool.getChunkSize());
+		MessagePaxChunkedSerializer s = pool.acquireSerializer();
+		assertEquals(1024, s.getChunkSize());
+
+		for (int i = 0; i < 4096; i++) {
+			s = pool.acquireSerializer();
+			s.writeByteArray(data, 0, 5000);
+			pool.release(s);
+		}
+		assertEquals(8192, pool.getChunkSize());
+	}
+}
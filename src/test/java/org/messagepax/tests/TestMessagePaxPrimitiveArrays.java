@@ -0,0 +1,141 @@
+package org.messagepax.tests;
+
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+import org.messagepax.MessagePaxByteBufferSerializer;
+import org.messagepax.MessagePaxChunkedSerializer;
+import org.messagepax.MessagePaxDeserializer;
+import org.messagepax.MessagePaxSerializer;
+
+public class TestMessagePaxPrimitiveArrays extends TestCase {
+
+	static final int[] INTS = { 0, 1, -1, 127, 128, -32, -33, 255, 256, -128,
+			-129, 65535, 65536, -32768, -32769, Integer.MAX_VALUE,
+			Integer.MIN_VALUE };
+
+	static final long[] LONGS = { 0, 1, -1, 200, -200, 70000, -70000,
+			Integer.MIN_VALUE, Integer.MAX_VALUE, 0x80000000L, 3000000000L,
+			0xffffffffL, 0x100000000L, 0x100000001L, Long.MAX_VALUE,
+			Long.MIN_VALUE };
+
+	static final float[] FLOATS = { 0f, 1.5f, -2.25f, Float.MAX_VALUE,
+			Float.MIN_VALUE, Float.NaN };
+
+	static final double[] DOUBLES = { 0d, 1.5d, -2.25d, Double.MAX_VALUE,
+			Double.MIN_VALUE, Double.NEGATIVE_INFINITY };
+
+	public void testIntArray() throws Exception {
+		MessagePaxSerializer s = new MessagePaxSerializer(new byte[256]);
+		MessagePaxSerializer ref = new MessagePaxSerializer(new byte[256]);
+		s.writeIntArray(INTS, 0, INTS.length);
+		ref.writeListBegin(INTS.length);
+		for (int i = 0; i < INTS.length; i++) {
+			ref.writeInteger(INTS[i]);
+		}
+		assertEquals(ref.toHexString(), s.toHexString());
+
+		MessagePaxDeserializer d = new MessagePaxDeserializer(s.getBuffer());
+		int[] dst = new int[INTS.length + 2];
+		assertEquals(INTS.length, d.readIntArray(dst, 2, INTS.length));
+		for (int i = 0; i < INTS.length; i++) {
+			assertEquals(INTS[i], dst[i + 2]);
+		}
+	}
+
+	public void testLongArray() throws Exception {
+		MessagePaxSerializer s = new MessagePaxSerializer(new byte[256]);
+		MessagePaxSerializer ref = new MessagePaxSerializer(new byte[256]);
+		s.writeLongArray(LONGS, 0, LONGS.length);
+		ref.writeListBegin(LONGS.length);
+		for (int i = 0; i < LONGS.length; i++) {
+			ref.writeLong(LONGS[i]);
+		}
+		assertEquals(ref.toHexString(), s.toHexString());
+
+		MessagePaxDeserializer d = new MessagePaxDeserializer(s.getBuffer());
+		long[] dst = new long[LONGS.length];
+		assertEquals(LONGS.length, d.readLongArray(dst, 0, dst.length));
+		for (int i = 0; i < LONGS.length; i++) {
+			assertEquals(LONGS[i], dst[i]);
+		}
+
+		// values between 2^31 and 2^32 are written as uint 32
+		s.reset();
+		s.writeLongArray(new long[] { 0x80000000L }, 0, 1);
+		s.writeLong(0x80000000L);
+		assertEquals("91CE80000000CE80000000", s.toHexString());
+	}
+
+	public void testFloatDoubleArray() throws Exception {
+		MessagePaxSerializer s = new MessagePaxSerializer(new byte[256]);
+		MessagePaxSerializer ref = new MessagePaxSerializer(new byte[256]);
+		s.writeFloatArray(FLOATS, 0, FLOATS.length);
+		s.writeDoubleArray(DOUBLES, 1, DOUBLES.length - 1);
+		ref.writeListBegin(FLOATS.length);
+		for (int i = 0; i < FLOATS.length; i++) {
+			ref.writeFloat(FLOATS[i]);
+		}
+		ref.writeListBegin(DOUBLES.length - 1);
+		for (int i = 1; i < DOUBLES.length; i++) {
+			ref.writeDouble(DOUBLES[i]);
+		}
+		assertEquals(ref.toHexString(), s.toHexString());
+
+		MessagePaxDeserializer d = new MessagePaxDeserializer(s.getBuffer());
+		float[] f = new float[10];
+		double[] g = new double[10];
+		assertEquals(FLOATS.length, d.readFloatArray(f, 0, f.length));
+		assertEquals(DOUBLES.length - 1, d.readDoubleArray(g, 0, g.length));
+		for (int i = 0; i < FLOATS.length; i++) {
+			assertEquals(FLOATS[i], f[i]);
+		}
+		for (int i = 1; i < DOUBLES.length; i++) {
+			assertEquals(DOUBLES[i], g[i - 1]);
+		}
+	}
+
+	public void testBlocksAcrossChunks() throws Exception {
+		int[] a = new int[1000];
+		for (int i = 0; i < a.length; i++) {
+			a[i] = i * 1000 - 300000;
+		}
+		MessagePaxChunkedSerializer s = new MessagePaxChunkedSerializer(64);
+		s.writeIntArray(a, 0, a.length);
+		MessagePaxSerializer ref = new MessagePaxSerializer(new byte[8192]);
+		ref.writeIntArray(a, 0, a.length);
+		assertTrue(s.getChunkCount() > 1);
+		assertEquals(ref.toHexString(), s.toHexString());
+
+		// no backing array, written element by element
+		MessagePaxByteBufferSerializer bs = new MessagePaxByteBufferSerializer(
+				ByteBuffer.allocateDirect(8192));
+		bs.writeIntArray(a, 0, a.length);
+		assertEquals(ref.toHexString(), bs.toHexString());
+	}
+
+	public void testNilAndTooLong() throws Exception {
+		MessagePaxDeserializer d = new MessagePaxDeserializer(new byte[64]);
+		d.reset("C0");
+		assertEquals(-1, d.readIntArray(new int[1], 0, 1));
+		d.reset("93010203");
+		try {
+			d.readIntArray(new int[2], 0, 2);
+			fail();
+		} catch (java.io.IOException e) {
+			// expected
+		}
+	}
+
+	public void testWriteNull() throws Exception {
+		MessagePaxSerializer s = new MessagePaxSerializer(new byte[16]);
+		s.writeIntArray(null, 0, 0);
+		s.writeLongArray(null, 0, 0);
+		s.writeFloatArray(null, 0, 0);
+		s.writeDoubleArray(null, 0, 0);
+		assertEquals("C0C0C0C0", s.toHexString());
+		MessagePaxDeserializer d = new MessagePaxDeserializer(s.getBuffer());
+		assertEquals(-1, d.readLongArray(new long[1], 0, 1));
+	}
+}
@@ -0,0 +1,181 @@
+package org.messagepax.tests;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.lang.reflect.Field;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import junit.framework.TestCase;
+
+import org.messagepax.MessagePaxCodec;
+import org.messagepax.MessagePaxDeserializer;
+import org.messagepax.MessagePaxSerializer;
+import org.messagepax.MessagePaxSize;
+import org.messagepax.MessagePaxSizedCodec;
+import org.messagepax.MessagePaxValue;
+
+public class TestMessagePaxProcessor extends TestCase {
+
+	static final String POINT = "package sample;\n"
+			+ "@org.messagepax.MessagePax\n"
+			+ "public class Point {\n"
+			+ "	int x;\n"
+			+ "	private Integer y;\n"
+			+ "	transient int ignored;\n"
+			+ "	public Integer getY() { return y; }\n"
+			+ "	public void setY(Integer y) { this.y = y; }\n"
+			+ "	public static Point of(int x, Integer y) {\n"
+			+ "		Point p = new Point(); p.x = x; p.y = y; return p;\n"
+			+ "	}\n"
+			+ "	public String toString() { return x + \",\" + y; }\n"
+			+ "}\n";
+
+	static final String SHAPE = "package sample;\n"
+			+ "import java.util.*;\n"
+			+ "@org.messagepax.MessagePax\n"
+			+ "public class Shape {\n"
+			+ "	String name;\n"
+			+ "	boolean closed;\n"
+			+ "	long id;\n"
+			+ "	Long count;\n"
+			+ "	double area;\n"
+			+ "	byte[] data;\n"
+			+ "	List<String> tags;\n"
+			+ "	Point center;\n"
+			+ "	public static Shape sample() {\n"
+			+ "		Shape s = new Shape(); s.name = \"circle\"; s.closed = true;\n"
+			+ "		s.id = 3000000000L; s.count = 4294967295L;\n"
+			+ "		s.area = 3.14; s.data = new byte[] { 1 };\n"
+			+ "		s.tags = Arrays.asList(\"a\", \"b\");\n"
+			+ "		s.center = Point.of(1, null); return s;\n"
+			+ "	}\n"
+			+ "	public String toString() { return name + closed + id + count + area\n"
+			+ "		+ Arrays.toString(data) + tags + center; }\n"
+			+ "}\n";
+
+	private File dir;
+
+	protected void setUp() throws Exception {
+		dir = File.createTempFile("messagepax", "");
+		dir.delete();
+		new File(dir, "sample").mkdirs();
+	}
+
+	protected void tearDown() throws Exception {
+		delete(dir);
+	}
+
+	private void delete(File f) {
+		File[] files = f.listFiles();
+		if (files != null) {
+			for (int i = 0; i < files.length; i++) {
+				delete(files[i]);
+			}
+		}
+		f.delete();
+	}
+
+	private boolean compile(DiagnosticCollector<JavaFileObject> diagnostics,
+			String... sources) throws Exception {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		List<File> files = new ArrayList<File>();
+		for (int i = 0; i < sources.length; i += 2) {
+			File f = new File(dir, "sample/" + sources[i] + ".java");
+			FileWriter w = new FileWriter(f);
+			w.write(sources[i + 1]);
+			w.close();
+			files.add(f);
+		}
+		StandardJavaFileManager fm = compiler.getStandardFileManager(
+				diagnostics, null, null);
+		List<String> options = Arrays.asList("-classpath",
+				System.getProperty("java.class.path"), "-processor",
+				"org.messagepax.processor.MessagePaxProcessor", "-d",
+				dir.getPath(), "-s", dir.getPath());
+		boolean ok = compiler.getTask(null, fm, diagnostics, options, null,
+				fm.getJavaFileObjectsFromFiles(files)).call();
+		fm.close();
+		return ok;
+	}
+
+	@SuppressWarnings("unchecked")
+	public void testGeneratedCodec() throws Exception {
+		if (ToolProvider.getSystemJavaCompiler() == null) {
+			// no compiler available, running on a JRE
+			return;
+		}
+		DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+		assertTrue(diagnostics.getDiagnostics().toString(), compile(
+				diagnostics, "Point", POINT, "Shape", SHAPE));
+
+		ClassLoader loader = new URLClassLoader(new URL[] { dir.toURI()
+				.toURL() }, getClass().getClassLoader());
+		MessagePaxCodec<Object> points = (MessagePaxCodec<Object>) loader
+				.loadClass("sample.PointMessagePaxCodec").getField("INSTANCE")
+				.get(null);
+		MessagePaxCodec<Object> shapes = (MessagePaxCodec<Object>) loader
+				.loadClass("sample.ShapeMessagePaxCodec").getField("INSTANCE")
+				.get(null);
+		Object point = loader.loadClass("sample.Point").getMethod("of",
+				int.class, Integer.class).invoke(null, 5, 6);
+		Object shape = loader.loadClass("sample.Shape").getMethod("sample")
+				.invoke(null);
+
+		MessagePaxSerializer s = new MessagePaxSerializer(new byte[1024]);
+		points.write(s, point);
+		// {"x": 5, "y": 6}
+		assertEquals("82A17805A17906", s.toHexString());
+		points.write(s, null);
+		shapes.write(s, shape);
+		assertEquals(s.getLength(), MessagePaxSize.sizeOf(points, point)
+				+ MessagePaxSize.sizeOf(points, null)
+				+ MessagePaxSize.sizeOf(shapes, shape));
+		assertTrue(shapes instanceof MessagePaxSizedCodec<?>);
+
+		MessagePaxDeserializer d = new MessagePaxDeserializer(s.getBuffer());
+		assertEquals("5,6", points.read(d).toString());
+		assertNull(points.read(d));
+		Object read = shapes.read(d);
+		assertEquals(shape.toString(), read.toString());
+		// longs between 2^31 and 2^32 keep their value
+		Field id = read.getClass().getDeclaredField("id");
+		Field count = read.getClass().getDeclaredField("count");
+		id.setAccessible(true);
+		count.setAccessible(true);
+		assertEquals(3000000000L, id.getLong(read));
+		assertEquals(Long.valueOf(4294967295L), count.get(read));
+
+		// unknown keys are skipped, missing keys keep their default
+		s.reset();
+		s.writeValue(MessagePaxValue.map(MessagePaxValue.of("z"),
+				MessagePaxValue.list(MessagePaxValue.of(1)), MessagePaxValue
+						.of(1), MessagePaxValue.of(2), MessagePaxValue
+						.of("y"), MessagePaxValue.of(3)));
+		d = new MessagePaxDeserializer(s.getBuffer());
+		assertEquals("0,3", points.read(d).toString());
+	}
+
+	public void testUnsupportedField() throws Exception {
+		if (ToolProvider.getSystemJavaCompiler() == null) {
+			return;
+		}
+		DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+		assertFalse(compile(diagnostics, "Bad", "package sample;\n"
+				+ "@org.messagepax.MessagePax\n" + "public class Bad {\n"
+				+ "	java.util.Date date;\n" + "	private int hidden;\n"
+				+ "}\n"));
+		String messages = diagnostics.getDiagnostics().toString();
+		assertTrue(messages, messages.contains("java.util.Date"));
+		assertTrue(messages, messages.contains("hidden"));
+	}
+}
@@ -0,0 +1,136 @@
+package org.messagepax.tests;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+
+import org.messagepax.MessagePaxChunkedSerializer;
+import org.messagepax.MessagePaxCodec;
+import org.messagepax.MessagePaxDeserializer;
+import org.messagepax.MessagePaxParallelDecoder;
+import org.messagepax.MessagePaxRecordIndex;
+import org.messagepax.MessagePaxSerializer;
+
+public class TestMessagePaxRecordIndex extends TestCase {
+
+	static final MessagePaxCodec<String> CODEC = new MessagePaxCodec<String>() {
+		public void write(MessagePaxSerializer s, String value)
+				throws IOException {
+			s.writeMapBegin(2);
+			s.writeString("name");
+			s.writeString(value);
+			s.writeString("data");
+			s.writeByteArray(new byte[value.length()]);
+		}
+
+		public String read(MessagePaxDeserializer d) throws IOException {
+			d.readMapSize();
+			d.readString();
+			String name = d.readString();
+			d.readString();
+			d.readByteArray();
+			return name;
+		}
+	};
+
+	private byte[] records(int count) throws IOException {
+		MessagePaxChunkedSerializer s = new MessagePaxChunkedSerializer(4096);
+		for (int i = 0; i < count; i++) {
+			CODEC.write(s, "Record " + i);
+		}
+		return s.toByteArray();
+	}
+
+	public void testScan() throws Exception {
+		MessagePaxSerializer s = new MessagePaxSerializer(new byte[64]);
+		s.writeInteger(1);
+		s.writeString("abc");
+		s.writeListBegin(2);
+		s.writeNil();
+		s.writeBoolean(true);
+		MessagePaxRecordIndex index = MessagePaxRecordIndex.scan(
+				s.getBuffer(), 0, s.getLength());
+		assertEquals(3, index.size());
+		assertEquals(0, index.getOffset(0));
+		assertEquals(1, index.getOffset(1));
+		assertEquals(4, index.getLength(1));
+		assertEquals(3, index.getLength(2));
+		assertEquals("abc", index.getDeserializer(1).readString());
+		try {
+			index.getOffset(3);
+			fail();
+		} catch (IndexOutOfBoundsException e) {
+		}
+	}
+
+	public void testTruncated() throws Exception {
+		MessagePaxSerializer s = new MessagePaxSerializer(new byte[64]);
+		s.writeInteger(1);
+		s.writeString("abc");
+		try {
+			MessagePaxRecordIndex.scan(s.getBuffer(), 0, s.getLength() - 1);
+			fail();
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("offset 1"));
+		}
+		try {
+			MessagePaxRecordIndex.scan(new byte[] { 1, (byte) 0xa3, 1 });
+			fail();
+		} catch (IOException e) {
+		}
+	}
+
+	public void testDecode() throws Exception {
+		MessagePaxRecordIndex index = MessagePaxRecordIndex.scan(records(10));
+		List<String> l = index.decode(CODEC);
+		assertEquals(10, l.size());
+		assertEquals("Record 9", l.get(9));
+	}
+
+	public void testParallelDecode() throws Exception {
+		MessagePaxRecordIndex index = MessagePaxRecordIndex
+				.scan(records(20000));
+		assertEquals(20000, index.size());
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			MessagePaxParallelDecoder decoder = new MessagePaxParallelDecoder(
+					executor, 4);
+			List<String> l = decoder.decode(index, CODEC);
+			assertEquals(20000, l.size());
+			for (int i = 0; i < l.size(); i++) {
+				assertEquals("Record " + i, l.get(i));
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	public void testParallelError() throws Exception {
+		MessagePaxRecordIndex index = MessagePaxRecordIndex
+				.scan(records(5000));
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			MessagePaxParallelDecoder decoder = new MessagePaxParallelDecoder(
+					executor, 2);
+			decoder.decode(index, new MessagePaxCodec<String>() {
+				public void write(MessagePaxSerializer s, String value) {
+				}
+
+				public String read(MessagePaxDeserializer d)
+						throws IOException {
+					// reads the record partly
+					d.readMapSize();
+					return null;
+				}
+			});
+			fail();
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("not read completely"));
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
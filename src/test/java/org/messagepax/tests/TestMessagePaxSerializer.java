@@ -106,7 +106,13 @@ public class TestMessagePaxSerializer extends TestCase {
 		assertEquals("D3FFFFFFFF7FFFFFFF", s.toHexString());
 		s.reset();
 		s.writeLong(Long.valueOf(0x80000000L));
-		assertEquals("D280000000", s.toHexString());
+		assertEquals("CE80000000", s.toHexString());
+		s.reset();
+		s.writeLong(0xffffffffL);
+		assertEquals("CEFFFFFFFF", s.toHexString());
+		s.reset();
+		s.writeLong(0x100000000L);
+		assertEquals("CF0000000100000000", s.toHexString());
 		s.reset();
 		s.writeLong(Long.valueOf(0x8000000000L));
 		assertEquals("CF0000008000000000", s.toHexString());
@@ -325,4 +331,20 @@ public class TestMessagePaxSerializer extends TestCase {
 			assertEquals(0, s.getBuffer()[4 + i] & 0xff);
 		}
 	}
+
+	public void testWriteStringUtf8() throws Exception {
+		String[] strings = new String[] { "\u00e4\u00f6\u00fc\u00df",
+				"\u20ac 100", "\ud83d\ude00 smile", "lone \ud83d surrogate",
+				"end \ude00", "\u00e41234567890123456789012345678901234567890" };
+		for (int i = 0; i < strings.length; i++) {
+			byte[] expected = strings[i].getBytes("UTF-8");
+			assertEquals(expected.length, Utils.utf8Length(strings[i]));
+			s.reset();
+			s.writeString(strings[i]);
+			String header = expected.length < 32 ? Utils
+					.hex(new byte[] { (byte) (0xa0 | expected.length) })
+					: "DA00" + Utils.hex(new byte[] { (byte) expected.length });
+			assertEquals(header + Utils.hex(expected), s.toHexString());
+		}
+	}
 }
@@ -0,0 +1,157 @@
+package org.messagepax.tests;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import junit.framework.TestCase;
+
+import org.messagepax.MessagePaxCodec;
+import org.messagepax.MessagePaxDeserializer;
+import org.messagepax.MessagePaxKeyDictionary;
+import org.messagepax.MessagePaxMapper;
+import org.messagepax.MessagePaxSerializer;
+import org.messagepax.MessagePaxSize;
+import org.messagepax.MessagePaxValue;
+
+public class TestMessagePaxSize extends TestCase {
+
+	static final long[] LONGS = { 0, 1, 31, 32, 127, 128, 255, 256, 65535,
+			65536, -1, -32, -33, -128, -129, -32768, -32769,
+			Integer.MAX_VALUE, Integer.MIN_VALUE, 1L << 31, (1L << 32) - 1,
+			1L << 32, Long.MAX_VALUE, Long.MIN_VALUE, -(1L << 31) - 1 };
+
+	static class Item {
+		private String name;
+		private long id;
+		private List<String> tags;
+		private Item child;
+	}
+
+	private MessagePaxSerializer s = new MessagePaxSerializer(
+			new byte[256 * 1024]);
+
+	private int written() {
+		int n = s.getLength();
+		s.reset();
+		return n;
+	}
+
+	public void testNumbers() throws Exception {
+		for (long l : LONGS) {
+			s.writeLong(l);
+			assertEquals("long " + l, written(), MessagePaxSize.sizeOfLong(l));
+			s.writeValue(MessagePaxValue.of(l));
+			assertEquals("value " + l, written(), MessagePaxSize
+					.sizeOfValue(MessagePaxValue.of(l)));
+			int i = (int) l;
+			s.writeInteger(i);
+			assertEquals("int " + i, written(), MessagePaxSize.sizeOfInteger(i));
+		}
+		assertEquals(5, MessagePaxSize.sizeOfLong(1L << 31));
+		assertEquals(5, MessagePaxSize.sizeOfLong((1L << 32) - 1));
+		s.writeInteger((Integer) null);
+		assertEquals(written(), MessagePaxSize.sizeOfInteger((Integer) null));
+		s.writeFloat(1.5f);
+		assertEquals(written(), MessagePaxSize.sizeOfFloat(1.5f));
+		s.writeDouble(1.5);
+		assertEquals(written(), MessagePaxSize.sizeOfDouble(1.5));
+		s.writeBigInteger(BigInteger.TEN);
+		assertEquals(written(), MessagePaxSize.sizeOfBigInteger(BigInteger.TEN));
+	}
+
+	private String string(int len, char c) {
+		char[] chars = new char[len];
+		Arrays.fill(chars, c);
+		return new String(chars);
+	}
+
+	public void testStrings() throws Exception {
+		int[] lengths = { 0, 31, 32, 255, 256, 65535, 65536 };
+		for (int len : lengths) {
+			String a = string(len, 'a');
+			s.writeString(a);
+			assertEquals(written(), MessagePaxSize.sizeOfString(a));
+			String u = string(len / 3, '\u20ac');
+			s.writeString(u);
+			assertEquals(written(), MessagePaxSize.sizeOfString(u));
+			byte[] b = new byte[len];
+			s.writeByteArray(b);
+			assertEquals(written(), MessagePaxSize.sizeOfByteArray(b));
+			s.writeExtData(1, b);
+			assertEquals(written(), MessagePaxSize.sizeOfExtData(b));
+		}
+		s.writeString("\ud83d\ude00");
+		assertEquals(written(), MessagePaxSize.sizeOfString("\ud83d\ude00"));
+	}
+
+	public void testContainers() throws Exception {
+		int[] sizes = { 0, 15, 16, 65535, 65536 };
+		for (int size : sizes) {
+			s.writeListBegin(size);
+			assertEquals(written(), MessagePaxSize.sizeOfListBegin(size));
+			s.writeMapBegin(size);
+			assertEquals(written(), MessagePaxSize.sizeOfMapBegin(size));
+		}
+		List<String> list = Arrays.asList("a", null, "bc");
+		s.writeStringList(list);
+		assertEquals(written(), MessagePaxSize.sizeOfStringList(list));
+		Map<String, String> map = new HashMap<String, String>();
+		map.put("name", "x");
+		map.put("other", null);
+		s.writeStringMap(map);
+		assertEquals(written(), MessagePaxSize.sizeOfStringMap(map));
+		MessagePaxKeyDictionary keys = new MessagePaxKeyDictionary(1, "name");
+		s.writeStringMap(map, keys);
+		assertEquals(written(), MessagePaxSize.sizeOfStringMap(map, keys));
+
+		MessagePaxValue v = MessagePaxValue.map(MessagePaxValue.of("a"),
+				MessagePaxValue.list(MessagePaxValue.of(1.5f), MessagePaxValue
+						.of(2.5), MessagePaxValue.NIL, MessagePaxValue.TRUE),
+				MessagePaxValue.of("b"), MessagePaxValue.ext(3, new byte[3]));
+		s.writeValue(v);
+		assertEquals(written(), MessagePaxSize.sizeOfValue(v));
+	}
+
+	public void testExtensions() throws Exception {
+		long[][] timestamps = { { 1, 0 }, { 1L << 32, 0 }, { 1, 1 },
+				{ -1, 0 }, { 1L << 34, 0 } };
+		for (long[] t : timestamps) {
+			s.writeTimestamp(t[0], (int) t[1]);
+			assertEquals(written(), MessagePaxSize.sizeOfTimestamp(t[0],
+					(int) t[1]));
+		}
+		UUID uuid = UUID.randomUUID();
+		s.writeUuid(1, uuid);
+		assertEquals(written(), MessagePaxSize.sizeOfUuid(uuid));
+	}
+
+	public void testCodecs() throws Exception {
+		Item item = new Item();
+		item.name = "parent";
+		item.id = 1L << 40;
+		item.tags = Arrays.asList("a", "b");
+		item.child = new Item();
+		MessagePaxMapper mapper = new MessagePaxMapper();
+		MessagePaxCodec<Item> codec = mapper.getCodec(Item.class);
+		mapper.write(s, item);
+		assertEquals(written(), MessagePaxSize.sizeOf(codec, item));
+
+		// codecs which do not know their size are encoded
+		MessagePaxCodec<String> plain = new MessagePaxCodec<String>() {
+			public void write(MessagePaxSerializer s, String value)
+					throws IOException {
+				s.writeString(value);
+			}
+
+			public String read(MessagePaxDeserializer d) throws IOException {
+				return d.readString();
+			}
+		};
+		assertEquals(4, MessagePaxSize.sizeOf(plain, "abc"));
+	}
+}
@@ -0,0 +1,92 @@
+package org.messagepax.tests;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+
+import junit.framework.TestCase;
+
+import org.messagepax.MessagePaxSerializer;
+import org.messagepax.MessagePaxStreamSerializer;
+import org.messagepax.Utils;
+
+public class TestMessagePaxStreamSerializer extends TestCase {
+
+	private void write(MessagePaxSerializer s) throws Exception {
+		byte[] data = new byte[100];
+		s.writeListBegin(200);
+		for (int i = 0; i < 100; i++) {
+			s.writeLong(0x8000000000L + i);
+			s.writeString("Row " + i);
+		}
+		s.writeByteArray(data);
+	}
+
+	public void testOutputStream() throws Exception {
+		MessagePaxSerializer ref = new MessagePaxSerializer(new byte[4096]);
+		write(ref);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		MessagePaxStreamSerializer s = new MessagePaxStreamSerializer(out, 16);
+		write(s);
+		assertTrue(out.size() > 0);
+		assertEquals(ref.getLength(), s.getLength());
+		s.flush();
+		assertEquals(ref.toHexString(), Utils.hex(out.toByteArray()));
+	}
+
+	public void testChannel() throws Exception {
+		MessagePaxSerializer ref = new MessagePaxSerializer(new byte[4096]);
+		write(ref);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		MessagePaxStreamSerializer s = new MessagePaxStreamSerializer(
+				Channels.newChannel(out), 32);
+		write(s);
+		s.flush();
+		assertEquals(ref.getLength(), s.getTotalLength());
+		assertEquals(ref.toHexString(), Utils.hex(out.toByteArray()));
+	}
+
+	public void testReset() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		MessagePaxStreamSerializer s = new MessagePaxStreamSerializer(out);
+		s.writeInteger(1);
+		s.reset();
+		s.writeInteger(2);
+		s.flush();
+		assertEquals(1, s.getLength());
+		assertEquals("02", Utils.hex(out.toByteArray()));
+	}
+
+	public void testSinkFailure() throws Exception {
+		OutputStream broken = new OutputStream() {
+			public void write(int b) throws IOException {
+				throw new IOException("broken");
+			}
+		};
+		MessagePaxStreamSerializer s = new MessagePaxStreamSerializer(broken,
+				16);
+		for (int i = 0; i < 16; i++) {
+			s.addByte(i);
+		}
+		// the failure is kept until the next checked write
+		s.addInt32(1);
+		s.writeInteger(2);
+		try {
+			s.writeString("a string which does not fit");
+			fail();
+		} catch (IOException e) {
+			assertEquals("broken", e.getMessage());
+		}
+		try {
+			s.flush();
+			fail();
+		} catch (IOException e) {
+			assertEquals("broken", e.getMessage());
+		}
+		s.reset();
+		s.flush();
+	}
+}
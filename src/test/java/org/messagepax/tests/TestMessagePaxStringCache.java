@@ -0,0 +1,92 @@
+package org.messagepax.tests;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.messagepax.MessagePaxByteBufferDeserializer;
+import org.messagepax.MessagePaxDeserializer;
+import org.messagepax.MessagePaxSerializer;
+import org.messagepax.MessagePaxStringCache;
+
+public class TestMessagePaxStringCache extends TestCase {
+
+	MessagePaxStringCache cache = new MessagePaxStringCache(64, 16);
+
+	private byte[] maps() throws Exception {
+		Map<String, String> map = new LinkedHashMap<String, String>();
+		map.put("id", "1");
+		map.put("name", "a value which is longer than 16 bytes");
+		map.put("\u00e4\u00f6\u00fc", "x");
+		MessagePaxSerializer s = new MessagePaxSerializer(new byte[1024]);
+		s.writeStringMap(map);
+		s.writeStringMap(map);
+		return s.getBuffer();
+	}
+
+	public void testSameInstance() throws Exception {
+		MessagePaxDeserializer d = new MessagePaxDeserializer(maps());
+		d.setStringCache(cache);
+		Map<String, String> first = d.readStringMap();
+		Map<String, String> second = d.readStringMap();
+		assertEquals(first, second);
+		for (String key : first.keySet()) {
+			String other = null;
+			for (String k : second.keySet()) {
+				if (k.equals(key)) {
+					other = k;
+				}
+			}
+			assertSame(key, other);
+			if (first.get(key).length() > 16) {
+				assertNotSame(first.get(key), second.get(key));
+			} else {
+				assertSame(first.get(key), second.get(key));
+			}
+		}
+	}
+
+	public void testShared() throws Exception {
+		byte[] data = maps();
+		MessagePaxDeserializer d1 = new MessagePaxDeserializer(data);
+		d1.setStringCache(cache);
+		MessagePaxByteBufferDeserializer d2 = new MessagePaxByteBufferDeserializer(
+				(ByteBuffer) ByteBuffer.allocateDirect(data.length).put(data)
+						.flip());
+		d2.setStringCache(cache);
+		assertEquals(3, d1.readMapBegin().intValue());
+		assertEquals(3, d2.readMapBegin().intValue());
+		assertSame(d1.readString(), d2.readString());
+	}
+
+	public void testByteBuffer() throws Exception {
+		byte[] data = "xxa value which is longer than 16 bytes \u20ac"
+				.getBytes("UTF-8");
+		int len = data.length - 2;
+		ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+		direct.put(data).flip();
+		ByteBuffer heap = ByteBuffer.wrap(data, 1, data.length - 1).slice();
+		String direct1 = cache.get(direct, 2, len);
+		assertEquals("a value which is longer than 16 bytes \u20ac", direct1);
+		assertEquals(direct1, cache.get(heap, 1, len));
+		assertEquals(0, direct.position());
+
+		// short strings are cached for both kinds of buffers
+		String a = cache.get(direct, 2, 7);
+		assertSame(a, cache.get(heap, 1, 7));
+	}
+
+	public void testCollision() throws Exception {
+		MessagePaxStringCache small = new MessagePaxStringCache(1, 16);
+		byte[] a = "a".getBytes("UTF-8");
+		byte[] b = "b".getBytes("UTF-8");
+		String a1 = small.get(a, 0, 1);
+		assertSame(a1, small.get(a, 0, 1));
+		assertEquals("b", small.get(b, 0, 1));
+		assertEquals("a", small.get(a, 0, 1));
+		small.clear();
+		assertNotSame(a1, small.get(a, 0, 1));
+	}
+}
@@ -0,0 +1,124 @@
+package org.messagepax.tests;
+
+import java.io.IOException;
+import java.util.UUID;
+
+import junit.framework.TestCase;
+
+import org.messagepax.MessagePaxDeserializer;
+import org.messagepax.MessagePaxSerializer;
+import org.messagepax.MessagePaxTimestamp;
+import org.messagepax.MessagePaxValue;
+
+public class TestMessagePaxTimestamp extends TestCase {
+
+	private void check(long seconds, int nanos, String hex) throws Exception {
+		MessagePaxSerializer s = new MessagePaxSerializer(new byte[32]);
+		s.writeTimestamp(seconds, nanos);
+		assertEquals(hex, s.toHexString());
+
+		MessagePaxDeserializer d = new MessagePaxDeserializer(s.getBuffer());
+		MessagePaxTimestamp t = new MessagePaxTimestamp();
+		assertTrue(d.readTimestamp(t));
+		assertEquals(seconds, t.getSeconds());
+		assertEquals(nanos, t.getNanos());
+	}
+
+	public void testFormats() throws Exception {
+		check(1, 0, "D6FF00000001");
+		check(0xffffffffL, 0, "D6FFFFFFFFFF");
+		check(1, 5, "D7FF0000001400000001");
+		check(0x100000000L, 0, "D7FF0000000100000000");
+		check(999999999, 999999999, "D7FFEE6B27FC3B9AC9FF");
+		check(-1, 0, "C70CFF00000000FFFFFFFFFFFFFFFF");
+		check(1L << 34, 1, "C70CFF000000010000000400000000");
+	}
+
+	public void testNil() throws Exception {
+		MessagePaxSerializer s = new MessagePaxSerializer(new byte[32]);
+		s.writeTimestamp(null);
+		MessagePaxDeserializer d = new MessagePaxDeserializer(s.getBuffer());
+		assertNull(d.readTimestamp());
+	}
+
+	public void testReadAsValue() throws Exception {
+		MessagePaxSerializer s = new MessagePaxSerializer(new byte[32]);
+		s.writeTimestamp(new MessagePaxTimestamp(1, 0));
+		MessagePaxDeserializer d = new MessagePaxDeserializer(s.getBuffer());
+		MessagePaxValue v = d.readValue();
+		assertEquals(-1, v.getExtType());
+	}
+
+	public void testIllegal() throws Exception {
+		MessagePaxSerializer s = new MessagePaxSerializer(new byte[32]);
+		try {
+			s.writeTimestamp(0, 1000000000);
+			fail();
+		} catch (IllegalArgumentException e) {
+		}
+		s.writeExtData(5, new byte[4]);
+		s.writeInteger(1);
+		MessagePaxDeserializer d = new MessagePaxDeserializer(s.getBuffer());
+		try {
+			d.readTimestamp();
+			fail();
+		} catch (IOException e) {
+		}
+		d = new MessagePaxDeserializer(s.getBuffer());
+		d.skipValue();
+		try {
+			d.readTimestamp();
+			fail();
+		} catch (IOException e) {
+		}
+	}
+
+	public void testIllegalNanos() throws Exception {
+		MessagePaxSerializer s = new MessagePaxSerializer(new byte[64]);
+		// timestamp 64 with 1000000000 nanoseconds
+		s.writeExtData(-1, new byte[] { (byte) 0xee, 0x6b, 0x28, 0, 0, 0, 0,
+				0 });
+		// timestamp 96 with 2^31 nanoseconds
+		s.writeExtData(-1, new byte[] { (byte) 0x80, 0, 0, 0, 0, 0, 0, 0, 0,
+				0, 0, 1 });
+		MessagePaxDeserializer d = new MessagePaxDeserializer(s.getBuffer());
+		for (int i = 0; i < 2; i++) {
+			try {
+				d.readTimestamp();
+				fail();
+			} catch (IOException e) {
+				assertTrue(e.getMessage().startsWith(
+						"Illegal timestamp nanoseconds"));
+			}
+		}
+	}
+
+	public void testMillis() throws Exception {
+		MessagePaxTimestamp t = new MessagePaxTimestamp();
+		t.setMillis(-1);
+		assertEquals(-1, t.getSeconds());
+		assertEquals(999000000, t.getNanos());
+		assertEquals(-1, t.getMillis());
+		assertEquals("-1.999000000", t.toString());
+		assertEquals(new MessagePaxTimestamp(-1, 999000000), t);
+	}
+
+	public void testUuid() throws Exception {
+		UUID uuid = new UUID(0x0123456789abcdefL, 0xfedcba9876543210L);
+		MessagePaxSerializer s = new MessagePaxSerializer(new byte[64]);
+		s.writeUuid(2, uuid);
+		s.writeUuid(2, null);
+		assertEquals("D8020123456789ABCDEFFEDCBA9876543210C0", s.toHexString());
+
+		MessagePaxDeserializer d = new MessagePaxDeserializer(s.getBuffer());
+		assertEquals(uuid, d.readUuid(2));
+		assertNull(d.readUuid(2));
+
+		d = new MessagePaxDeserializer(s.getBuffer());
+		try {
+			d.readUuid(3);
+			fail();
+		} catch (IOException e) {
+		}
+	}
+}
@@ -0,0 +1,140 @@
+package org.messagepax.tests;
+
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import org.messagepax.MessagePaxDeserializer;
+import org.messagepax.MessagePaxSerializer;
+import org.messagepax.MessagePaxType;
+import org.messagepax.MessagePaxValue;
+import org.messagepax.Utils;
+
+public class TestMessagePaxValue extends TestCase {
+
+	MessagePaxSerializer s = new MessagePaxSerializer(new byte[1024]);
+	MessagePaxDeserializer d = new MessagePaxDeserializer(new byte[1024]);
+
+	public void testReadValue() throws Exception {
+		// {"a": [1, -200, 4294967295, 1.5f, 2.5d], "b": true, "c": nil,
+		// "d": bin(0102), 7: fixext1(5, 09)}
+		String hex = "85A1619501D1FF38CEFFFFFFFFCA3FC00000CB4004000000000000"
+				+ "A162C3A163C0A164C4020102" + "07D40509";
+		d.reset(hex);
+		MessagePaxValue v = d.readValue();
+		assertEquals(MessagePaxType.MAP, v.getType());
+		assertEquals(5, v.size());
+		MessagePaxValue a = v.get("a");
+		assertEquals(1, a.get(0).asInt());
+		assertEquals(-200, a.get(1).asLong());
+		assertEquals(4294967295L, a.get(2).asLong());
+		assertEquals(1.5d, a.get(3).asDouble(), 0.0001d);
+		assertEquals(2.5d, a.get(4).asDouble(), 0.0001d);
+		assertTrue(v.get("b").asBoolean());
+		assertTrue(v.get("c").isNil());
+		assertEquals(2, v.get("d").asBytes().length);
+		assertNull(v.get("x"));
+		assertEquals(7, v.getKey(4).asInt());
+		assertEquals(5, v.getValue(4).getExtType());
+
+		// written back unchanged
+		s.writeValue(v);
+		assertEquals(hex, s.toHexString());
+	}
+
+	public void testBuildAndRoundTrip() throws Exception {
+		MessagePaxValue v = MessagePaxValue.map(MessagePaxValue.of("name"),
+				MessagePaxValue.of("Hello \u00e4"), MessagePaxValue.of("list"),
+				MessagePaxValue.list(MessagePaxValue.of(100000L),
+						MessagePaxValue.of(Long.MIN_VALUE),
+						MessagePaxValue.of(0.25f), MessagePaxValue.NIL),
+				MessagePaxValue.of("ext"), MessagePaxValue.ext(-1,
+						new byte[] { 1, 2, 3, 4 }));
+		s.writeValue(v);
+		d = new MessagePaxDeserializer(s.getBuffer());
+		MessagePaxValue read = d.readValue();
+		assertEquals(v, read);
+		assertEquals(v.hashCode(), read.hashCode());
+		assertEquals(v.toString(), read.toString());
+	}
+
+	public void testBigMap() {
+		MessagePaxValue[] kv = new MessagePaxValue[42];
+		for (int i = 0; i < 40; i += 2) {
+			kv[i] = MessagePaxValue.of("k" + i / 2);
+			kv[i + 1] = MessagePaxValue.of(i / 2);
+		}
+		// duplicate key, the first entry wins like in small maps
+		kv[40] = MessagePaxValue.of("k3");
+		kv[41] = MessagePaxValue.of(99);
+		MessagePaxValue v = MessagePaxValue.map(kv);
+		for (int i = 0; i < 20; i++) {
+			assertEquals(i, v.get("k" + i).asInt());
+		}
+		assertEquals(3, v.get("k3").asInt());
+		assertNull(v.get("x"));
+
+		// non string keys are not indexed
+		kv = new MessagePaxValue[2000];
+		for (int i = 0; i < kv.length; i += 2) {
+			kv[i] = i % 4 == 0 ? MessagePaxValue.of("k" + i) : MessagePaxValue
+					.of(i);
+			kv[i + 1] = MessagePaxValue.of(i);
+		}
+		v = MessagePaxValue.map(kv);
+		for (int i = 0; i < kv.length; i += 2) {
+			MessagePaxValue found = v.get("k" + i);
+			if (i % 4 == 0) {
+				assertEquals(i, found.asInt());
+			} else {
+				assertNull(found);
+			}
+		}
+	}
+
+	public void testPrecision() {
+		assertTrue(MessagePaxValue.of(0.25f).isSinglePrecision());
+		assertFalse(MessagePaxValue.of(0.25d).isSinglePrecision());
+		try {
+			MessagePaxValue.of(1).isSinglePrecision();
+			fail();
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	public void testSharedValues() {
+		assertSame(MessagePaxValue.of(5), MessagePaxValue.of(5L));
+		assertSame(MessagePaxValue.TRUE, MessagePaxValue.of(true));
+		assertSame(MessagePaxValue.NIL, MessagePaxValue.of((String) null));
+	}
+
+	public void testCorruptSize() throws Exception {
+		// map 32 of 2^30 entries, list 32 and bin 32 larger than the data
+		String[] corrupt = { "DF40000000", "DD0000000301", "C600000005010203" };
+		for (String hex : corrupt) {
+			d = new MessagePaxDeserializer(Utils.dehex(hex));
+			try {
+				d.readValue();
+				fail(hex);
+			} catch (IOException e) {
+				assertTrue(e.getMessage().startsWith("Size "));
+			}
+		}
+	}
+
+	public void testIllegalType() {
+		try {
+			MessagePaxValue.of("x").asLong();
+			fail();
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		try {
+			MessagePaxValue.of(1L << 40).asInt();
+			fail();
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+}